@@ -1,14 +1,33 @@
 package com.uberclone.backend.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+
 @Configuration
 public class RestTemplateConfig {
 
+    /**
+     * Shared HTTP client; it keeps persistent connections per host, so every RestTemplate built on it is pooled
+     */
+    @Bean
+    public HttpClient httpClient(@Value("${ml.client.connect-timeout-ms:200}") long connectTimeoutMs) {
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+            .build();
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(HttpClient httpClient,
+                                     @Value("${ml.client.default-read-timeout-ms:2000}") long readTimeoutMs) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        return new RestTemplate(requestFactory);
     }
 }
@@ -5,12 +5,13 @@ import com.uberclone.backend.model.Ride;
 import com.uberclone.backend.model.User;
 import com.uberclone.backend.service.DriverMatchingService;
 import com.uberclone.backend.service.RideService;
+import com.uberclone.backend.service.RideStateConflictException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -148,13 +149,17 @@ public class DriverController {
         
         String newStatus = (String) request.get("status");
         String additionalInfo = (String) request.get("additionalInfo");
+        Long expectedVersion = request.get("version") == null ? null : ((Number) request.get("version")).longValue();
         
         log.info("Driver {} updating ride {} status to: {}", driverId, rideId, newStatus);
         
         try {
             Ride.Status status = Ride.Status.valueOf(newStatus.toUpperCase());
-            Ride updatedRide = rideService.updateRideStatus(rideId, status, additionalInfo);
+            Ride updatedRide = rideService.updateRideStatus(rideId, status, additionalInfo, expectedVersion);
             return ResponseEntity.ok(updatedRide);
+        } catch (RideStateConflictException e) {
+            log.warn("Rejected ride status change: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             log.error("Error updating ride status", e);
             return ResponseEntity.badRequest().build();
@@ -182,11 +187,12 @@ public class DriverController {
      * Get driver's ride history
      */
     @GetMapping("/{driverId}/rides/history")
-    public ResponseEntity<List<Ride>> getRideHistory(@PathVariable Long driverId) {
+    public ResponseEntity<RideService.RideHistoryPage> getRideHistory(@PathVariable Long driverId,
+            @RequestParam(required = false) String cursor, @RequestParam(defaultValue = "20") int limit) {
         log.info("Getting ride history for driver: {}", driverId);
         
         try {
-            List<Ride> rideHistory = rideService.getDriverRideHistory(driverId);
+            RideService.RideHistoryPage rideHistory = rideService.getDriverRideHistory(driverId, cursor, limit);
             return ResponseEntity.ok(rideHistory);
         } catch (Exception e) {
             log.error("Error getting driver ride history", e);
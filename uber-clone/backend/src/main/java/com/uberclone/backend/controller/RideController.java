@@ -3,16 +3,19 @@ package com.uberclone.backend.controller;
 import com.uberclone.backend.model.Ride;
 import com.uberclone.backend.model.RideRequest;
 import com.uberclone.backend.service.DriverMatchingService;
+import com.uberclone.backend.service.FareQuoteCache;
 import com.uberclone.backend.service.PricingService;
 import com.uberclone.backend.service.RideService;
+import com.uberclone.backend.service.RideStateConflictException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalTime;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
@@ -25,6 +28,7 @@ public class RideController {
     private final RideService rideService;
     private final DriverMatchingService driverMatchingService;
     private final PricingService pricingService;
+    private final FareQuoteCache fareQuoteCache;
 
     /**
      * Create a new ride request
@@ -81,13 +85,17 @@ public class RideController {
         
         String newStatus = (String) request.get("status");
         String additionalInfo = (String) request.get("additionalInfo");
+        Long expectedVersion = request.get("version") == null ? null : ((Number) request.get("version")).longValue();
         
         log.info("Updating ride {} status to: {}", rideId, newStatus);
         
         try {
             Ride.Status status = Ride.Status.valueOf(newStatus.toUpperCase());
-            Ride updatedRide = rideService.updateRideStatus(rideId, status, additionalInfo);
+            Ride updatedRide = rideService.updateRideStatus(rideId, status, additionalInfo, expectedVersion);
             return ResponseEntity.ok(updatedRide);
+        } catch (RideStateConflictException e) {
+            log.warn("Rejected ride status change: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             log.error("Error updating ride status", e);
             return ResponseEntity.badRequest().build();
@@ -133,6 +141,9 @@ public class RideController {
         try {
             Ride cancelledRide = rideService.cancelRide(rideId, reason, cancelledByUser);
             return ResponseEntity.ok(cancelledRide);
+        } catch (RideStateConflictException e) {
+            log.warn("Rejected ride cancellation: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             log.error("Error cancelling ride", e);
             return ResponseEntity.badRequest().build();
@@ -143,11 +154,12 @@ public class RideController {
      * Get user's ride history
      */
     @GetMapping("/user/{userId}/history")
-    public ResponseEntity<List<Ride>> getUserRideHistory(@PathVariable Long userId) {
+    public ResponseEntity<RideService.RideHistoryPage> getUserRideHistory(@PathVariable Long userId,
+            @RequestParam(required = false) String cursor, @RequestParam(defaultValue = "20") int limit) {
         log.info("Getting ride history for user: {}", userId);
         
         try {
-            List<Ride> rideHistory = rideService.getUserRideHistory(userId);
+            RideService.RideHistoryPage rideHistory = rideService.getUserRideHistory(userId, cursor, limit);
             return ResponseEntity.ok(rideHistory);
         } catch (Exception e) {
             log.error("Error getting user ride history", e);
@@ -159,11 +171,12 @@ public class RideController {
      * Get driver's ride history
      */
     @GetMapping("/driver/{driverId}/history")
-    public ResponseEntity<List<Ride>> getDriverRideHistory(@PathVariable Long driverId) {
+    public ResponseEntity<RideService.RideHistoryPage> getDriverRideHistory(@PathVariable Long driverId,
+            @RequestParam(required = false) String cursor, @RequestParam(defaultValue = "20") int limit) {
         log.info("Getting ride history for driver: {}", driverId);
         
         try {
-            List<Ride> rideHistory = rideService.getDriverRideHistory(driverId);
+            RideService.RideHistoryPage rideHistory = rideService.getDriverRideHistory(driverId, cursor, limit);
             return ResponseEntity.ok(rideHistory);
         } catch (Exception e) {
             log.error("Error getting driver ride history", e);
@@ -172,7 +185,7 @@ public class RideController {
     }
 
     /**
-     * Calculate estimated fare
+     * Calculate estimated fare from the quote cache; the ride request carries the exact fare charged
      */
     @PostMapping("/fare/estimate")
     public ResponseEntity<Map<String, Object>> estimateFare(
@@ -182,7 +195,7 @@ public class RideController {
             request.getPickupLocation(), request.getDropoffLocation());
         
         try {
-            PricingService.FareBreakdown fareBreakdown = pricingService.calculateFareBreakdown(
+            PricingService.FareBreakdown fareBreakdown = fareQuoteCache.getQuote(
                 request.getPickupLatitude(), request.getPickupLongitude(),
                 request.getDropoffLatitude(), request.getDropoffLongitude(),
                 request.getVehicleType(), LocalTime.now()
@@ -207,6 +220,48 @@ public class RideController {
         }
     }
 
+    /**
+     * Calculate estimated fares for every vehicle type in one call
+     */
+    @PostMapping("/fare/estimate/all")
+    public ResponseEntity<Map<String, Object>> estimateFares(
+            @RequestBody FareEstimateRequest request) {
+        
+        log.info("Estimating fares for all vehicle types: {} to {}", 
+            request.getPickupLocation(), request.getDropoffLocation());
+        
+        try {
+            Map<String, PricingService.FareBreakdown> fareBreakdowns = fareQuoteCache.getQuotes(
+                request.getPickupLatitude(), request.getPickupLongitude(),
+                request.getDropoffLatitude(), request.getDropoffLongitude(),
+                LocalTime.now()
+            );
+            
+            Map<String, Object> fares = new LinkedHashMap<>();
+            fareBreakdowns.forEach((vehicleType, fareBreakdown) -> fares.put(vehicleType, Map.of(
+                "estimatedFare", fareBreakdown.getTotalFare(),
+                "distanceFare", fareBreakdown.getDistanceFare(),
+                "timeFare", fareBreakdown.getTimeFare(),
+                "vehicleMultiplier", fareBreakdown.getVehicleMultiplier()
+            )));
+            
+            PricingService.FareBreakdown shared = fareBreakdowns.values().iterator().next();
+            Map<String, Object> response = Map.of(
+                "estimatedDistance", shared.getEstimatedDistance(),
+                "estimatedDuration", shared.getEstimatedDuration(),
+                "baseFare", shared.getBaseFare(),
+                "peakHourMultiplier", shared.getPeakHourMultiplier(),
+                "surgeMultiplier", shared.getSurgeMultiplier(),
+                "fares", fares
+            );
+            
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Error estimating fares", e);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Get available drivers in area
      */
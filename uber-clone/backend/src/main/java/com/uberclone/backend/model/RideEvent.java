@@ -0,0 +1,53 @@
+package com.uberclone.backend.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+/**
+ * Outbox entry for a ride status change, delivered after commit by the ride event relay
+ */
+@Entity
+@Table(name = "ride_events")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RideEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long rideId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Ride.Status status;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime availableAt;
+
+    @Column
+    private LocalDateTime publishedAt;
+
+    @Column(nullable = false)
+    private Integer attempts;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    public static RideEvent of(Long rideId, Ride.Status status) {
+        LocalDateTime now = LocalDateTime.now();
+        return RideEvent.builder()
+            .rideId(rideId)
+            .status(status)
+            .createdAt(now)
+            .availableAt(now)
+            .attempts(0)
+            .build();
+    }
+}
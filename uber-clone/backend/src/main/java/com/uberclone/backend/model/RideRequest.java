@@ -85,6 +85,9 @@ public class RideRequest {
     protected void onCreate() {
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
+        if (requestedAt == null) {
+            requestedAt = createdAt;
+        }
         expiresAt = LocalDateTime.now().plusMinutes(5); // 5 minutes expiry
     }
 
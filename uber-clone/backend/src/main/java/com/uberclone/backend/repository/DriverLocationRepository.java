@@ -1,36 +1,81 @@
 package com.uberclone.backend.repository;
 
 import com.uberclone.backend.model.DriverLocation;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface DriverLocationRepository extends JpaRepository<DriverLocation, Long> {
     
+    @EntityGraph(attributePaths = "driver")
     Optional<DriverLocation> findByDriverId(Long driverId);
     
+    @EntityGraph(attributePaths = "driver")
     List<DriverLocation> findByGeohashStartingWithAndIsOnlineTrueAndIsAvailableTrue(String geohashPrefix);
     
+    @EntityGraph(attributePaths = "driver")
     List<DriverLocation> findByGeohashStartingWithAndIsOnlineTrueAndIsAvailableTrueAndVehicleType(
         String geohashPrefix, String vehicleType);
     
+    @EntityGraph(attributePaths = "driver")
     List<DriverLocation> findByIsOnlineTrueAndIsAvailableTrue();
     
-    @Query("SELECT dl FROM DriverLocation dl WHERE dl.isOnline = true AND dl.isAvailable = true " +
-           "AND FUNCTION('ST_DWithin', FUNCTION('ST_MakePoint', dl.longitude, dl.latitude), " +
-           "FUNCTION('ST_MakePoint', :longitude, :latitude), :radiusKm * 1000) = true")
-    List<DriverLocation> findDriversWithinRadius(
-        @Param("latitude") double latitude, 
-        @Param("longitude") double longitude, 
-        @Param("radiusKm") double radiusKm);
+    @EntityGraph(attributePaths = "driver")
+    List<DriverLocation> findByIsOnlineTrue();
+
+    /**
+     * Scoring features of every online driver as flat rows, in one query
+     */
+    @Query("SELECT u.id AS driverId, u.rating AS rating, u.ratingCount AS ratingCount " +
+           "FROM DriverLocation dl JOIN dl.driver u WHERE dl.isOnline = true")
+    List<DriverFeatures> findOnlineDriverFeatures();
     
+    /**
+     * Ids of the nearest online, available drivers within the radius, nearest first.
+     * Both the radius filter and the KNN ordering run on the partial GiST index of the location column.
+     */
+    @Query(value = "SELECT dl.id FROM driver_locations dl " +
+                   "WHERE dl.is_online = TRUE AND dl.is_available = TRUE " +
+                   "AND ST_DWithin(dl.location, CAST(ST_SetSRID(ST_MakePoint(:longitude, :latitude), 4326) AS geography), :radiusMeters) " +
+                   "ORDER BY dl.location <-> CAST(ST_SetSRID(ST_MakePoint(:longitude, :latitude), 4326) AS geography) " +
+                   "LIMIT :limit",
+           nativeQuery = true)
+    List<Long> findNearestAvailableIds(@Param("latitude") double latitude,
+                                       @Param("longitude") double longitude,
+                                       @Param("radiusMeters") double radiusMeters,
+                                       @Param("limit") int limit);
+
+    @EntityGraph(attributePaths = "driver")
+    List<DriverLocation> findByIdIn(Collection<Long> ids);
+
+    @EntityGraph(attributePaths = "driver")
     @Query("SELECT dl FROM DriverLocation dl WHERE dl.geohash LIKE :geohashPrefix% " +
            "AND dl.isOnline = true AND dl.isAvailable = true " +
            "ORDER BY dl.timestamp DESC")
     List<DriverLocation> findRecentDriversByGeohash(@Param("geohashPrefix") String geohashPrefix);
+    
+    /**
+     * Conditionally take a driver: succeeds (returns 1) only if the row is still online and available.
+     * The claimed flag keeps write-behind upserts from making the row available until it is released.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE driver_locations SET is_available = FALSE, claimed = TRUE, updated_at = now() " +
+           "WHERE driver_id = :driverId AND is_available = TRUE AND is_online = TRUE", nativeQuery = true)
+    int claimAvailableDriver(@Param("driverId") Long driverId);
+
+    interface DriverFeatures {
+        Long getDriverId();
+        Double getRating();
+        Integer getRatingCount();
+    }
 }
@@ -0,0 +1,34 @@
+package com.uberclone.backend.repository;
+
+import com.uberclone.backend.model.RideEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RideEventRepository extends JpaRepository<RideEvent, Long> {
+
+    /**
+     * Lock the oldest undelivered event of each ride, skipping rides another relay holds.
+     * An event is only eligible once every earlier event of its ride is delivered or given up on,
+     * so a ride's events go out in order even with several relays running.
+     */
+    @Query(value = "SELECT * FROM ride_events e " +
+                   "WHERE e.published_at IS NULL AND e.attempts < :maxAttempts AND e.available_at <= :now " +
+                   "AND NOT EXISTS (SELECT 1 FROM ride_events p WHERE p.ride_id = e.ride_id " +
+                   "AND p.published_at IS NULL AND p.attempts < :maxAttempts AND p.id < e.id) " +
+                   "ORDER BY e.id LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<RideEvent> lockDeliverable(@Param("maxAttempts") int maxAttempts,
+                                    @Param("now") LocalDateTime now,
+                                    @Param("limit") int limit);
+
+    @Modifying
+    @Query("DELETE FROM RideEvent e WHERE e.publishedAt < :before")
+    int deletePublishedBefore(@Param("before") LocalDateTime before);
+}
@@ -2,14 +2,157 @@ package com.uberclone.backend.repository;
 
 import com.uberclone.backend.model.Ride;
 import com.uberclone.backend.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 public interface RideRepository extends JpaRepository<Ride, Long> {
     List<Ride> findByUser(User user);
     List<Ride> findByDriver(User driver);
     List<Ride> findByStatus(Ride.Status status);
     
-    List<Ride> findByUserIdOrderByCreatedAtDesc(Long userId);
-    List<Ride> findByDriverIdOrderByCreatedAtDesc(Long driverId);
-} 
\ No newline at end of file
+    /**
+     * Newest rides of a user, as history rows
+     */
+    @Query("SELECT r.id AS id, r.user.id AS userId, r.driver.id AS driverId, r.status AS status, " +
+           "r.pickupLocation AS pickupLocation, r.dropoffLocation AS dropoffLocation, r.totalFare AS totalFare, " +
+           "r.distance AS distance, r.actualDuration AS actualDuration, r.paymentMethod AS paymentMethod, " +
+           "r.paymentStatus AS paymentStatus, r.userRating AS userRating, r.driverRating AS driverRating, " +
+           "r.requestedAt AS requestedAt, r.completedAt AS completedAt, r.cancelledAt AS cancelledAt, " +
+           "r.createdAt AS createdAt FROM Ride r " +
+           "WHERE r.user.id = :userId " +
+           "ORDER BY r.createdAt DESC, r.id DESC")
+    List<RideHistoryRow> findUserHistory(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * Rides of a user older than a (createdAt, id) cursor, newest first
+     */
+    @Query("SELECT r.id AS id, r.user.id AS userId, r.driver.id AS driverId, r.status AS status, " +
+           "r.pickupLocation AS pickupLocation, r.dropoffLocation AS dropoffLocation, r.totalFare AS totalFare, " +
+           "r.distance AS distance, r.actualDuration AS actualDuration, r.paymentMethod AS paymentMethod, " +
+           "r.paymentStatus AS paymentStatus, r.userRating AS userRating, r.driverRating AS driverRating, " +
+           "r.requestedAt AS requestedAt, r.completedAt AS completedAt, r.cancelledAt AS cancelledAt, " +
+           "r.createdAt AS createdAt FROM Ride r " +
+           "WHERE r.user.id = :userId " +
+           "AND (r.createdAt < :beforeCreatedAt OR (r.createdAt = :beforeCreatedAt AND r.id < :beforeId)) " +
+           "ORDER BY r.createdAt DESC, r.id DESC")
+    List<RideHistoryRow> findUserHistoryBefore(@Param("userId") Long userId,
+                                               @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+                                               @Param("beforeId") Long beforeId,
+                                               Pageable pageable);
+
+    /**
+     * Newest rides of a driver, as history rows
+     */
+    @Query("SELECT r.id AS id, r.user.id AS userId, r.driver.id AS driverId, r.status AS status, " +
+           "r.pickupLocation AS pickupLocation, r.dropoffLocation AS dropoffLocation, r.totalFare AS totalFare, " +
+           "r.distance AS distance, r.actualDuration AS actualDuration, r.paymentMethod AS paymentMethod, " +
+           "r.paymentStatus AS paymentStatus, r.userRating AS userRating, r.driverRating AS driverRating, " +
+           "r.requestedAt AS requestedAt, r.completedAt AS completedAt, r.cancelledAt AS cancelledAt, " +
+           "r.createdAt AS createdAt FROM Ride r " +
+           "WHERE r.driver.id = :driverId " +
+           "ORDER BY r.createdAt DESC, r.id DESC")
+    List<RideHistoryRow> findDriverHistory(@Param("driverId") Long driverId, Pageable pageable);
+
+    /**
+     * Rides of a driver older than a (createdAt, id) cursor, newest first
+     */
+    @Query("SELECT r.id AS id, r.user.id AS userId, r.driver.id AS driverId, r.status AS status, " +
+           "r.pickupLocation AS pickupLocation, r.dropoffLocation AS dropoffLocation, r.totalFare AS totalFare, " +
+           "r.distance AS distance, r.actualDuration AS actualDuration, r.paymentMethod AS paymentMethod, " +
+           "r.paymentStatus AS paymentStatus, r.userRating AS userRating, r.driverRating AS driverRating, " +
+           "r.requestedAt AS requestedAt, r.completedAt AS completedAt, r.cancelledAt AS cancelledAt, " +
+           "r.createdAt AS createdAt FROM Ride r " +
+           "WHERE r.driver.id = :driverId " +
+           "AND (r.createdAt < :beforeCreatedAt OR (r.createdAt = :beforeCreatedAt AND r.id < :beforeId)) " +
+           "ORDER BY r.createdAt DESC, r.id DESC")
+    List<RideHistoryRow> findDriverHistoryBefore(@Param("driverId") Long driverId,
+                                                 @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+                                                 @Param("beforeId") Long beforeId,
+                                                 Pageable pageable);
+
+    /**
+     * Next page of completed rides after a (completedAt, id) cursor, as flat training rows
+     */
+    @Query("SELECT r.id AS id, r.completedAt AS completedAt, COALESCE(r.requestedAt, r.createdAt) AS requestedAt, " +
+           "r.pickupLatitude AS pickupLatitude, r.pickupLongitude AS pickupLongitude, " +
+           "r.dropoffLatitude AS dropoffLatitude, r.dropoffLongitude AS dropoffLongitude, " +
+           "r.distance AS distance, r.actualDuration AS actualDuration, r.totalFare AS totalFare " +
+           "FROM Ride r WHERE r.status = :status AND r.completedAt IS NOT NULL " +
+           "AND (r.completedAt > :afterCompletedAt OR (r.completedAt = :afterCompletedAt AND r.id > :afterId)) " +
+           "AND r.completedAt < :completedBefore " +
+           "ORDER BY r.completedAt ASC, r.id ASC")
+    List<TrainingRow> findTrainingRowsAfter(@Param("status") Ride.Status status,
+                                            @Param("afterCompletedAt") LocalDateTime afterCompletedAt,
+                                            @Param("afterId") Long afterId,
+                                            @Param("completedBefore") LocalDateTime completedBefore,
+                                            Pageable pageable);
+
+    /**
+     * Move a ride to a new status in one statement if it is in one of the given statuses and,
+     * when an expected version is given, still at that version. Stamps the timestamps that go
+     * with the new status and returns the updated ride, or empty if nothing matched.
+     */
+    @Transactional
+    @Query(value = "UPDATE rides SET status = :to, version = version + 1, updated_at = :now, " +
+           "started_at = CASE WHEN :to = 'DRIVER_ARRIVED' THEN :now " +
+           "    WHEN :to = 'IN_PROGRESS' THEN COALESCE(started_at, :now) ELSE started_at END, " +
+           "completed_at = CASE WHEN :to = 'COMPLETED' THEN :now ELSE completed_at END, " +
+           "actual_duration = CASE WHEN :to = 'COMPLETED' AND started_at IS NOT NULL " +
+           "    THEN CAST(FLOOR(EXTRACT(EPOCH FROM (:now - started_at)) / 60) AS INTEGER) ELSE actual_duration END, " +
+           "cancelled_at = CASE WHEN :to = 'CANCELLED' THEN :now ELSE cancelled_at END, " +
+           "cancellation_reason = CASE WHEN :to = 'CANCELLED' " +
+           "    THEN COALESCE(CAST(:reason AS TEXT), cancellation_reason) ELSE cancellation_reason END, " +
+           "cancelled_by = CASE WHEN :to = 'CANCELLED' " +
+           "    THEN COALESCE(CAST(:cancelledBy AS VARCHAR), cancelled_by) ELSE cancelled_by END " +
+           "WHERE id = :id AND status IN (:from) " +
+           "AND (CAST(:expectedVersion AS BIGINT) IS NULL OR version = CAST(:expectedVersion AS BIGINT)) " +
+           "RETURNING *", nativeQuery = true)
+    Optional<Ride> transitionStatus(@Param("id") Long id,
+                                    @Param("from") List<String> from,
+                                    @Param("to") String to,
+                                    @Param("expectedVersion") Long expectedVersion,
+                                    @Param("now") LocalDateTime now,
+                                    @Param("reason") String reason,
+                                    @Param("cancelledBy") String cancelledBy);
+
+    interface RideHistoryRow {
+        Long getId();
+        Long getUserId();
+        Long getDriverId();
+        Ride.Status getStatus();
+        String getPickupLocation();
+        String getDropoffLocation();
+        BigDecimal getTotalFare();
+        BigDecimal getDistance();
+        Integer getActualDuration();
+        String getPaymentMethod();
+        String getPaymentStatus();
+        Integer getUserRating();
+        Integer getDriverRating();
+        LocalDateTime getRequestedAt();
+        LocalDateTime getCompletedAt();
+        LocalDateTime getCancelledAt();
+        LocalDateTime getCreatedAt();
+    }
+
+    interface TrainingRow {
+        Long getId();
+        LocalDateTime getCompletedAt();
+        LocalDateTime getRequestedAt();
+        Double getPickupLatitude();
+        Double getPickupLongitude();
+        Double getDropoffLatitude();
+        Double getDropoffLongitude();
+        BigDecimal getDistance();
+        Integer getActualDuration();
+        BigDecimal getTotalFare();
+    }
+}
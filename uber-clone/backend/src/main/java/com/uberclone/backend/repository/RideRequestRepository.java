@@ -2,9 +2,11 @@ package com.uberclone.backend.repository;
 
 import com.uberclone.backend.model.RideRequest;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -19,8 +21,17 @@ public interface RideRequestRepository extends JpaRepository<RideRequest, Long>
     
     List<RideRequest> findByStatusAndCreatedAtBefore(RideRequest.Status status, LocalDateTime before);
     
-    @Query("SELECT rr FROM RideRequest rr WHERE rr.status = 'PENDING' AND rr.expiresAt < :now")
-    List<RideRequest> findExpiredRequests(@Param("now") LocalDateTime now);
+    List<RideRequest> findByStatusIn(List<RideRequest.Status> statuses);
+
+    /**
+     * Expire a request that is still waiting for a driver; returns 0 if it was assigned or closed meanwhile
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE RideRequest rr SET rr.status = com.uberclone.backend.model.RideRequest.Status.EXPIRED, " +
+           "rr.updatedAt = :now WHERE rr.id = :id AND rr.status IN " +
+           "(com.uberclone.backend.model.RideRequest.Status.PENDING, com.uberclone.backend.model.RideRequest.Status.SEARCHING_DRIVER)")
+    int expireIfOpen(@Param("id") Long id, @Param("now") LocalDateTime now);
     
     @Query("SELECT rr FROM RideRequest rr WHERE rr.pickupGeohash LIKE :geohashPrefix% " +
            "AND rr.status = 'PENDING' ORDER BY rr.createdAt ASC")
@@ -31,4 +42,9 @@ public interface RideRequestRepository extends JpaRepository<RideRequest, Long>
     @Query("SELECT COUNT(rr) FROM RideRequest rr WHERE rr.status = 'PENDING' " +
            "AND rr.pickupGeohash LIKE :geohashPrefix%")
     long countPendingRequestsByGeohash(@Param("geohashPrefix") String geohashPrefix);
+    
+    @Query("SELECT SUBSTRING(rr.pickupGeohash, 1, 5), COUNT(rr) FROM RideRequest rr " +
+           "WHERE rr.status IN ('PENDING', 'SEARCHING_DRIVER') " +
+           "GROUP BY SUBSTRING(rr.pickupGeohash, 1, 5)")
+    List<Object[]> countOpenRequestsByPickupCell();
 }
@@ -0,0 +1,97 @@
+package com.uberclone.backend.service;
+
+import java.util.Arrays;
+
+/**
+ * Minimum-cost assignment of rows (ride requests) to columns (drivers).
+ * Hungarian method with row/column potentials, O(n^2 m) for n rows and m columns, over a flat
+ * row-major cost matrix. Pairs that must not be matched carry {@link #INFEASIBLE}.
+ */
+final class AssignmentSolver {
+
+    /**
+     * Cost of a forbidden pair; finite so potentials stay well defined
+     */
+    static final double INFEASIBLE = 1.0e9;
+
+    private AssignmentSolver() {
+    }
+
+    /**
+     * Solve a rows x cols problem. Returns, for every row, the assigned column or -1 when the
+     * row could only be matched through an infeasible pair.
+     */
+    static int[] solve(double[] cost, int rows, int cols) {
+        int[] assignment = new int[rows];
+        Arrays.fill(assignment, -1);
+        if (rows == 0 || cols == 0) {
+            return assignment;
+        }
+
+        // Pad with infeasible columns so every row can be placed
+        int m = Math.max(rows, cols);
+        double[] u = new double[rows + 1];
+        double[] v = new double[m + 1];
+        double[] minv = new double[m + 1];
+        int[] p = new int[m + 1];
+        int[] way = new int[m + 1];
+        boolean[] used = new boolean[m + 1];
+
+        for (int i = 1; i <= rows; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+
+            // Grow an alternating tree from row i until it reaches a free column
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                int rowOffset = (i0 - 1) * cols;
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+
+                for (int j = 1; j <= m; j++) {
+                    if (used[j]) {
+                        continue;
+                    }
+                    double c = j <= cols ? cost[rowOffset + j - 1] : INFEASIBLE;
+                    double reduced = c - u[i0] - v[j];
+                    if (reduced < minv[j]) {
+                        minv[j] = reduced;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+
+            // Flip the augmenting path
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        for (int j = 1; j <= cols; j++) {
+            int row = p[j] - 1;
+            if (row >= 0 && cost[row * cols + j - 1] < INFEASIBLE) {
+                assignment[row] = j - 1;
+            }
+        }
+        return assignment;
+    }
+}
@@ -0,0 +1,137 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.RideRequest;
+import com.uberclone.backend.model.User;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Windowed batch dispatch.
+ * In regions where it is enabled, ride requests are held for a short window and then matched
+ * together as one assignment problem instead of greedily one by one. Regions are geohash
+ * prefixes listed in dispatch.batch.regions; every other request keeps the greedy path.
+ */
+@Service
+@Slf4j
+public class BatchDispatchService {
+
+    private final DriverMatchingService driverMatchingService;
+    private final List<String> regions;
+    private final Map<String, ConcurrentLinkedQueue<PendingRequest>> pending = new ConcurrentHashMap<>();
+
+    private final Timer solveTimer;
+    private final DistributionSummary batchSize;
+
+    @Value("${dispatch.batch.max-size:500}")
+    private int maxBatchSize;
+
+    @Value("${dispatch.batch.radius-km:5.0}")
+    private double searchRadiusKm;
+
+    public BatchDispatchService(DriverMatchingService driverMatchingService,
+                                @Value("${dispatch.batch.regions:}") String regions,
+                                MeterRegistry meterRegistry) {
+        this.driverMatchingService = driverMatchingService;
+        this.regions = Arrays.stream(regions.split(","))
+            .map(String::trim)
+            .filter(region -> !region.isEmpty())
+            .toList();
+
+        this.solveTimer = Timer.builder("dispatch.batch.solve")
+            .description("Time to match one batch of ride requests")
+            .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("dispatch.batch.size")
+            .description("Ride requests matched per batch")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Whether requests picked up at this geohash are matched in batches
+     */
+    public boolean isBatchRegion(String pickupGeohash) {
+        return regionOf(pickupGeohash) != null;
+    }
+
+    /**
+     * Queue a request for the next window of its region. The callback receives the
+     * assigned driver, or empty if none could be found.
+     */
+    public void submit(RideRequest rideRequest, Consumer<Optional<User>> onMatched) {
+        String region = regionOf(rideRequest.getPickupGeohash());
+        if (region == null) {
+            throw new RuntimeException("Batch dispatch is not enabled for this region");
+        }
+        pending.computeIfAbsent(region, key -> new ConcurrentLinkedQueue<>())
+            .add(new PendingRequest(rideRequest, onMatched));
+    }
+
+    /**
+     * Close the current window and match each region's requests
+     */
+    @Scheduled(fixedDelayString = "${dispatch.batch.window-ms:1500}")
+    public void dispatchWindow() {
+        for (Map.Entry<String, ConcurrentLinkedQueue<PendingRequest>> region : pending.entrySet()) {
+            ConcurrentLinkedQueue<PendingRequest> queue = region.getValue();
+            while (!queue.isEmpty()) {
+                List<PendingRequest> batch = new ArrayList<>(Math.min(queue.size(), maxBatchSize));
+                PendingRequest next;
+                while (batch.size() < maxBatchSize && (next = queue.poll()) != null) {
+                    batch.add(next);
+                }
+                dispatchBatch(region.getKey(), batch);
+            }
+        }
+    }
+
+    private void dispatchBatch(String region, List<PendingRequest> batch) {
+        List<RideRequest> rideRequests = batch.stream().map(PendingRequest::rideRequest).toList();
+
+        List<Optional<User>> drivers;
+        try {
+            drivers = solveTimer.record(() -> driverMatchingService.assignDriversToRides(rideRequests, searchRadiusKm));
+        } catch (Exception e) {
+            log.error("Error matching batch of {} ride requests in region {}", batch.size(), region, e);
+            drivers = rideRequests.stream().map(request -> Optional.<User>empty()).toList();
+        }
+        batchSize.record(batch.size());
+        log.info("Matched batch of {} ride requests in region {}", batch.size(), region);
+
+        for (int i = 0; i < batch.size(); i++) {
+            PendingRequest request = batch.get(i);
+            try {
+                request.onMatched().accept(drivers.get(i));
+            } catch (Exception e) {
+                log.error("Error completing batch match for ride request: {}", request.rideRequest().getId(), e);
+            }
+        }
+    }
+
+    private String regionOf(String pickupGeohash) {
+        if (pickupGeohash == null) {
+            return null;
+        }
+        for (String region : regions) {
+            if (pickupGeohash.startsWith(region)) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    private record PendingRequest(RideRequest rideRequest, Consumer<Optional<User>> onMatched) {
+    }
+}
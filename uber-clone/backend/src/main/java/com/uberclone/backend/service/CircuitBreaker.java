@@ -0,0 +1,65 @@
+package com.uberclone.backend.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Consecutive-failure circuit breaker.
+ * After {@code failureThreshold} failures in a row the circuit opens and calls are refused for the
+ * open period; the first call after that goes through as a trial, and its outcome closes the circuit
+ * or opens it again.
+ */
+final class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    CircuitBreaker(int failureThreshold, long openMillis, LongSupplier nanoClock) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openMillis * 1_000_000L;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Whether a call may go out now; every permitted call must be followed by onSuccess or onFailure
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nanoClock.getAsLong() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                // A trial call is already in flight
+                return false;
+        }
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = nanoClock.getAsLong();
+            consecutiveFailures = 0;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
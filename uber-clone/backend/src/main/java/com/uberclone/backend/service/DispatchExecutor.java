@@ -0,0 +1,260 @@
+package com.uberclone.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dedicated executor for driver searches.
+ * Work is queued per pickup region and served round-robin across regions, so a surge in one
+ * area cannot starve the others. The queue is bounded; when it is full a task is either
+ * rejected straight away or deferred and retried a few times before being rejected.
+ */
+@Component
+@Slf4j
+public class DispatchExecutor {
+
+    public enum SaturationPolicy {
+        REJECT,
+        DEFER
+    }
+
+    private final int capacity;
+    private final int regionPrecision;
+    private final SaturationPolicy saturationPolicy;
+    private final long deferDelayMs;
+    private final int maxDeferrals;
+
+    // Guarded by lock; shutdown is also read without it
+    private final Map<String, ArrayDeque<Task>> queues = new HashMap<>();
+    private final ArrayDeque<String> activeRegions = new ArrayDeque<>();
+    private int depth;
+    private volatile boolean shutdown;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private final List<Thread> workers = new ArrayList<>();
+    private final ScheduledExecutorService deferrals;
+
+    private final Timer waitTimer;
+    private final Counter rejected;
+    private final Counter deferred;
+
+    public DispatchExecutor(@Value("${dispatch.executor.concurrency:8}") int concurrency,
+                            @Value("${dispatch.executor.queue-capacity:1000}") int capacity,
+                            @Value("${dispatch.executor.region-precision:4}") int regionPrecision,
+                            @Value("${dispatch.executor.saturation-policy:DEFER}") SaturationPolicy saturationPolicy,
+                            @Value("${dispatch.executor.defer-delay-ms:500}") long deferDelayMs,
+                            @Value("${dispatch.executor.max-deferrals:3}") int maxDeferrals,
+                            @Value("${dispatch.executor.virtual-threads:false}") boolean virtualThreads,
+                            MeterRegistry meterRegistry) {
+        this.capacity = capacity;
+        this.regionPrecision = regionPrecision;
+        this.saturationPolicy = saturationPolicy;
+        this.deferDelayMs = deferDelayMs;
+        this.maxDeferrals = maxDeferrals;
+
+        this.deferrals = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dispatch-deferral");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.waitTimer = Timer.builder("dispatch.queue.wait")
+            .description("Time a driver search waits in the dispatch queue")
+            .register(meterRegistry);
+        this.rejected = Counter.builder("dispatch.rejected")
+            .description("Driver searches rejected because the dispatch queue was full")
+            .register(meterRegistry);
+        this.deferred = Counter.builder("dispatch.deferred")
+            .description("Driver searches deferred because the dispatch queue was full")
+            .register(meterRegistry);
+        Gauge.builder("dispatch.queue.depth", this, DispatchExecutor::getDepth)
+            .description("Driver searches waiting in the dispatch queue")
+            .register(meterRegistry);
+
+        ThreadFactory threadFactory = virtualThreads ? virtualThreadFactory() : null;
+        if (threadFactory == null) {
+            threadFactory = platformThreadFactory();
+        }
+        for (int i = 0; i < concurrency; i++) {
+            Thread worker = threadFactory.newThread(this::runWorker);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Region key for a pickup geohash, used for fairness
+     */
+    public String regionOf(String pickupGeohash) {
+        if (pickupGeohash == null) {
+            return "";
+        }
+        return pickupGeohash.length() > regionPrecision ? pickupGeohash.substring(0, regionPrecision) : pickupGeohash;
+    }
+
+    /**
+     * Queue a task for its region. If the queue stays saturated the task is not run and
+     * onRejected is called instead. Returns false if the task was rejected immediately.
+     */
+    public boolean submit(String region, Runnable task, Runnable onRejected) {
+        return offer(new Task(region, task, onRejected, System.nanoTime()), 0);
+    }
+
+    /**
+     * Number of queued tasks
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean offer(Task task, int attempt) {
+        lock.lock();
+        try {
+            if (!shutdown && depth < capacity) {
+                ArrayDeque<Task> queue = queues.computeIfAbsent(task.region(), key -> new ArrayDeque<>());
+                if (queue.isEmpty()) {
+                    activeRegions.addLast(task.region());
+                }
+                queue.addLast(task);
+                depth++;
+                notEmpty.signal();
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (saturationPolicy == SaturationPolicy.DEFER && attempt < maxDeferrals && !shutdown) {
+            deferred.increment();
+            deferrals.schedule(() -> offer(task, attempt + 1), deferDelayMs, TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        rejected.increment();
+        log.warn("Dispatch queue saturated, rejecting task for region {}", task.region());
+        try {
+            task.onRejected().run();
+        } catch (Exception e) {
+            log.error("Error handling rejected dispatch task for region {}", task.region(), e);
+        }
+        return false;
+    }
+
+    /**
+     * Take the next task, rotating through regions that have work
+     */
+    private Task take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (depth == 0) {
+                if (shutdown) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+            String region = activeRegions.pollFirst();
+            ArrayDeque<Task> queue = queues.get(region);
+            Task task = queue.pollFirst();
+            if (queue.isEmpty()) {
+                queues.remove(region);
+            } else {
+                activeRegions.addLast(region);
+            }
+            depth--;
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runWorker() {
+        while (true) {
+            Task task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == null) {
+                return;
+            }
+
+            waitTimer.record(System.nanoTime() - task.enqueuedAt(), TimeUnit.NANOSECONDS);
+            try {
+                task.task().run();
+            } catch (Exception e) {
+                log.error("Error running dispatch task for region {}", task.region(), e);
+            }
+        }
+    }
+
+    /**
+     * Virtual-thread factory when the runtime supports it (JDK 21+), looked up reflectively
+     * so the build stays on Java 17
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "dispatch-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads are not available on this runtime, using platform threads for dispatch");
+            return null;
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "dispatch-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        deferrals.shutdownNow();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private record Task(String region, Runnable task, Runnable onRejected, long enqueuedAt) {
+    }
+}
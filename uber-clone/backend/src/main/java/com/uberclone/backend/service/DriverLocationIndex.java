@@ -0,0 +1,221 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.User;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-memory spatial index of drivers, sharded into concurrent buckets by geohash cell.
+ * Matching and area queries are answered from here; the driver_locations table is
+ * only written behind it.
+ */
+@Component
+public class DriverLocationIndex {
+
+    /**
+     * Bucket precision: a precision 6 cell is roughly 1.2km x 0.6km
+     */
+    public static final int CELL_PRECISION = 6;
+
+    private final ConcurrentHashMap<Long, IndexedDriver> drivers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<Long, IndexedDriver>> cells = new ConcurrentHashMap<>();
+
+    /**
+     * Get the resident entry for a driver, or null if the driver is not indexed
+     */
+    public IndexedDriver get(long driverId) {
+        return drivers.get(driverId);
+    }
+
+    /**
+     * Add a driver to the index, or update it in place if already present.
+     * The geohash is the full-precision long form from {@link GeohashService#encodeBits}.
+     */
+    public IndexedDriver put(User driver, double latitude, double longitude, long geohash,
+                             boolean isOnline, boolean isAvailable, String vehicleType,
+                             LocalDateTime timestamp) {
+        IndexedDriver entry = drivers.computeIfAbsent(driver.getId(), id -> new IndexedDriver(driver, vehicleType));
+        if (vehicleType != null) {
+            entry.setVehicleType(vehicleType);
+        }
+        update(entry, latitude, longitude, geohash, isOnline, isAvailable, timestamp);
+        return entry;
+    }
+
+    /**
+     * Move a driver to its new position, re-bucketing only when the cell changes
+     */
+    public void update(IndexedDriver entry, double latitude, double longitude, long geohash,
+                       boolean isOnline, boolean isAvailable, LocalDateTime timestamp) {
+        synchronized (entry) {
+            boolean wasBucketed = entry.isBucketed();
+            long oldCell = wasBucketed ? cellOf(entry.getGeohashBits()) : 0L;
+
+            entry.setPosition(latitude, longitude, geohash, timestamp);
+            entry.declareAvailable(isAvailable);
+            entry.setOnline(isOnline);
+
+            boolean isBucketed = entry.isBucketed();
+            long newCell = cellOf(geohash);
+            if (wasBucketed && (!isBucketed || oldCell != newCell)) {
+                removeFromBucket(oldCell, entry);
+            }
+            if (isBucketed && (!wasBucketed || oldCell != newCell)) {
+                addToBucket(newCell, entry);
+            }
+        }
+    }
+
+    /**
+     * Atomically claim an available driver for dispatch; false if someone else got there first
+     */
+    public boolean tryClaim(IndexedDriver entry) {
+        return entry.isOnline() && entry.tryClaim();
+    }
+
+    /**
+     * Roll back a claim that could not be confirmed
+     */
+    public void abandonClaim(IndexedDriver entry) {
+        entry.abandonClaim();
+    }
+
+    /**
+     * Make a claimed (or idle) driver available again
+     */
+    public void release(IndexedDriver entry) {
+        entry.release();
+    }
+
+    /**
+     * Refresh the rating feature used for ranking
+     */
+    public void setRating(IndexedDriver entry, double rating) {
+        entry.setRating(rating);
+    }
+
+    /**
+     * Find online, available drivers inside the cells of a cover, in a single pass
+     */
+    public List<IndexedDriver> findAvailable(GeohashService.Cover cover, String vehicleType) {
+        List<IndexedDriver> result = new ArrayList<>();
+        forEachAvailable(cover, vehicleType, result::add);
+        return result;
+    }
+
+    /**
+     * Stream online, available drivers inside the cells of a cover to a consumer, without
+     * collecting them first
+     */
+    public void forEachAvailable(GeohashService.Cover cover, String vehicleType, Consumer<IndexedDriver> result) {
+        int precision = cover.getPrecision();
+
+        if (precision >= CELL_PRECISION) {
+            // Cells are sorted, so cells sharing a bucket are adjacent
+            long lastBucket = GeohashService.NO_CELL;
+            for (long cell : cover.getCells()) {
+                long bucket = GeohashService.truncate(cell, precision, CELL_PRECISION);
+                if (precision == CELL_PRECISION) {
+                    collect(cells.get(bucket), cell, precision, vehicleType, result);
+                } else if (bucket != lastBucket) {
+                    collectCovered(cells.get(bucket), cover, vehicleType, result);
+                    lastBucket = bucket;
+                }
+            }
+        } else {
+            // Cover is coarser than a bucket: visit every occupied bucket under it
+            for (Map.Entry<Long, ConcurrentHashMap<Long, IndexedDriver>> bucket : cells.entrySet()) {
+                long parent = GeohashService.truncate(bucket.getKey(), CELL_PRECISION, precision);
+                if (cover.contains(parent)) {
+                    collect(bucket.getValue(), parent, precision, vehicleType, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count online, available drivers per cell at a precision no finer than a bucket
+     */
+    public Map<Long, Integer> countAvailableByCell(int precision) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (Map.Entry<Long, ConcurrentHashMap<Long, IndexedDriver>> bucket : cells.entrySet()) {
+            int available = 0;
+            for (IndexedDriver driver : bucket.getValue().values()) {
+                if (isMatch(driver, null)) {
+                    available++;
+                }
+            }
+            if (available > 0) {
+                counts.merge(GeohashService.truncate(bucket.getKey(), CELL_PRECISION, precision), available, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Number of indexed drivers
+     */
+    public int size() {
+        return drivers.size();
+    }
+
+    private void collect(Map<Long, IndexedDriver> bucket, long prefix, int precision, String vehicleType,
+                         Consumer<IndexedDriver> result) {
+        if (bucket == null) {
+            return;
+        }
+        for (IndexedDriver driver : bucket.values()) {
+            if (isMatch(driver, vehicleType)
+                    && GeohashService.hasPrefix(driver.getGeohashBits(), GeohashService.MAX_PRECISION, prefix, precision)) {
+                result.accept(driver);
+            }
+        }
+    }
+
+    private void collectCovered(Map<Long, IndexedDriver> bucket, GeohashService.Cover cover, String vehicleType,
+                                Consumer<IndexedDriver> result) {
+        if (bucket == null) {
+            return;
+        }
+        for (IndexedDriver driver : bucket.values()) {
+            long cell = GeohashService.truncate(driver.getGeohashBits(), GeohashService.MAX_PRECISION,
+                cover.getPrecision());
+            if (isMatch(driver, vehicleType) && cover.contains(cell)) {
+                result.accept(driver);
+            }
+        }
+    }
+
+    private static boolean isMatch(IndexedDriver driver, String vehicleType) {
+        return driver.isOnline() && driver.isAvailable()
+            && (vehicleType == null || vehicleType.isEmpty() || vehicleType.equals(driver.getVehicleType()));
+    }
+
+    private static long cellOf(long geohash) {
+        return GeohashService.truncate(geohash, GeohashService.MAX_PRECISION, CELL_PRECISION);
+    }
+
+    private void addToBucket(long cell, IndexedDriver entry) {
+        cells.compute(cell, (key, bucket) -> {
+            if (bucket == null) {
+                bucket = new ConcurrentHashMap<>();
+            }
+            bucket.put(entry.getDriverId(), entry);
+            return bucket;
+        });
+    }
+
+    private void removeFromBucket(long cell, IndexedDriver entry) {
+        cells.computeIfPresent(cell, (key, bucket) -> {
+            bucket.remove(entry.getDriverId());
+            return bucket.isEmpty() ? null : bucket;
+        });
+    }
+}
@@ -0,0 +1,223 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.DriverLocation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind pipeline from the driver index to driver_locations.
+ * Each driver has one latest-value slot; pings overwrite it and return immediately, and a
+ * periodic flush writes the coalesced positions as a JDBC batch upsert. Drivers that have
+ * not moved beyond a threshold, changed cell or changed status are not written at all.
+ * A row claimed for a ride stays unavailable until the writer flushes that driver's release, so an
+ * upsert built from a snapshot taken just before the claim cannot reopen the driver.
+ */
+@Component
+@Slf4j
+public class DriverLocationWriter {
+
+    private static final String UPSERT_SQL =
+        "INSERT INTO driver_locations (driver_id, latitude, longitude, geohash, timestamp, " +
+        "is_online, is_available, vehicle_type, created_at, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, now(), now()) " +
+        "ON CONFLICT (driver_id) DO UPDATE SET latitude = EXCLUDED.latitude, " +
+        "longitude = EXCLUDED.longitude, geohash = EXCLUDED.geohash, timestamp = EXCLUDED.timestamp, " +
+        "is_online = EXCLUDED.is_online, " +
+        "is_available = CASE WHEN driver_locations.claimed AND NOT ? THEN FALSE ELSE EXCLUDED.is_available END, " +
+        "claimed = driver_locations.claimed AND NOT ?, " +
+        "vehicle_type = COALESCE(EXCLUDED.vehicle_type, driver_locations.vehicle_type), updated_at = now()";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DriverLocationIndex driverLocationIndex;
+    private final GeohashService geohashService;
+
+    // Latest-value slot per driver: driverId -> nanoTime of the first unflushed update
+    private final ConcurrentHashMap<Long, Long> pending = new ConcurrentHashMap<>();
+
+    // Drivers released from a claim since their last write; their next write clears the row's claim
+    private final Set<Long> released = ConcurrentHashMap.newKeySet();
+
+    // Last state written per online driver; written by the flush only
+    private final Map<Long, DriverLocation> lastWritten = new ConcurrentHashMap<>();
+
+    private final Timer flushLag;
+    private final DistributionSummary batchSize;
+    private final Counter superseded;
+    private final Counter skipped;
+
+    @Value("${driver.location.flush-batch-size:500}")
+    private int maxBatchSize;
+
+    @Value("${driver.location.min-move-meters:15}")
+    private double minMoveMeters;
+
+    public DriverLocationWriter(JdbcTemplate jdbcTemplate, DriverLocationIndex driverLocationIndex,
+                                GeohashService geohashService, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.driverLocationIndex = driverLocationIndex;
+        this.geohashService = geohashService;
+
+        this.flushLag = Timer.builder("driver.location.flush.lag")
+            .description("Time from a driver's first unflushed update to its flush")
+            .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("driver.location.flush.batch.size")
+            .description("Rows written per driver location flush batch")
+            .register(meterRegistry);
+        this.superseded = Counter.builder("driver.location.updates.superseded")
+            .description("Location updates overwritten in their slot before being flushed")
+            .register(meterRegistry);
+        this.skipped = Counter.builder("driver.location.updates.skipped")
+            .description("Flushed slots not written because the driver had not moved")
+            .register(meterRegistry);
+        Gauge.builder("driver.location.pending", pending, Map::size)
+            .description("Drivers with an unflushed location")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Mark the driver's indexed state as dirty. State is read at flush time, so a newer
+     * ping simply supersedes an older one.
+     */
+    public void persist(IndexedDriver driver) {
+        long driverId = driver.getDriverId();
+        if (pending.containsKey(driverId)) {
+            superseded.increment();
+        } else {
+            pending.putIfAbsent(driverId, System.nanoTime());
+        }
+    }
+
+    /**
+     * Mark a driver released from a claim as dirty. The next flush writes it even if it has not
+     * changed since the last write, since the claim flipped is_available in the row behind this
+     * writer, and clears the row's claim.
+     */
+    public void persistRelease(IndexedDriver driver) {
+        released.add(driver.getDriverId());
+        persist(driver);
+    }
+
+    /**
+     * Flush coalesced positions to the database
+     */
+    @Scheduled(fixedDelayString = "${driver.location.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<DriverLocation> batch = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+        Map<Long, Long> batchSince = new HashMap<>();
+        Set<Long> batchReleased = new HashSet<>();
+
+        for (Long driverId : pending.keySet()) {
+            Long since = pending.remove(driverId);
+            IndexedDriver driver = since != null ? driverLocationIndex.get(driverId) : null;
+            if (driver == null) {
+                lastWritten.remove(driverId);
+                continue;
+            }
+
+            // Take the release before the snapshot, so the snapshot reflects it
+            boolean release = released.remove(driverId);
+            DriverLocation snapshot = driver.toDriverLocation();
+            if (!release && !hasChanged(lastWritten.get(driverId), snapshot)) {
+                skipped.increment();
+                continue;
+            }
+
+            batch.add(snapshot);
+            batchSince.put(driverId, since);
+            if (release) {
+                batchReleased.add(driverId);
+            }
+            if (batch.size() >= maxBatchSize) {
+                write(batch, batchSince, batchReleased);
+                batch.clear();
+                batchSince.clear();
+                batchReleased.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            write(batch, batchSince, batchReleased);
+        }
+    }
+
+    private void write(List<DriverLocation> batch, Map<Long, Long> batchSince, Set<Long> batchReleased) {
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, batch, batch.size(), (ps, location) -> {
+                ps.setLong(1, location.getDriver().getId());
+                ps.setDouble(2, location.getLatitude());
+                ps.setDouble(3, location.getLongitude());
+                ps.setString(4, location.getGeohash());
+                ps.setTimestamp(5, Timestamp.valueOf(location.getTimestamp()));
+                ps.setBoolean(6, location.getIsOnline());
+                ps.setBoolean(7, location.getIsAvailable());
+                ps.setString(8, location.getVehicleType());
+                boolean release = batchReleased.contains(location.getDriver().getId());
+                ps.setBoolean(9, release);
+                ps.setBoolean(10, release);
+            });
+        } catch (Exception e) {
+            log.error("Error flushing {} driver locations, will retry", batch.size(), e);
+            // Put the slots back unless a newer update already reopened them
+            batchSince.forEach(pending::putIfAbsent);
+            released.addAll(batchReleased);
+            return;
+        }
+
+        long now = System.nanoTime();
+        for (DriverLocation location : batch) {
+            Long driverId = location.getDriver().getId();
+            if (location.getIsOnline()) {
+                lastWritten.put(driverId, location);
+            } else {
+                // Offline drivers are not tracked; coming back online is a status change anyway
+                lastWritten.remove(driverId);
+            }
+            flushLag.record(now - batchSince.get(driverId), TimeUnit.NANOSECONDS);
+        }
+        batchSize.record(batch.size());
+    }
+
+    /**
+     * Whether a snapshot differs enough from what was last written to be worth a row update
+     */
+    private boolean hasChanged(DriverLocation previous, DriverLocation current) {
+        if (previous == null
+                || !previous.getIsOnline().equals(current.getIsOnline())
+                || !previous.getIsAvailable().equals(current.getIsAvailable())
+                || !previous.getGeohash().regionMatches(0, current.getGeohash(), 0, DriverLocationIndex.CELL_PRECISION)) {
+            return true;
+        }
+
+        double movedKm = geohashService.calculateDistance(
+            previous.getLatitude(), previous.getLongitude(), current.getLatitude(), current.getLongitude());
+        return movedKm * 1000.0 >= minMoveMeters;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
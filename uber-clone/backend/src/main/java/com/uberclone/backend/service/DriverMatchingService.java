@@ -7,10 +7,13 @@ import com.uberclone.backend.repository.DriverLocationRepository;
 import com.uberclone.backend.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -18,9 +21,45 @@ import java.util.stream.Collectors;
 @Slf4j
 public class DriverMatchingService {
 
+    // Upper bound on cells per search; larger radii fall back to coarser cells
+    private static final int MAX_COVER_CELLS = 256;
+
+    // Return top 10 drivers
+    private static final int MAX_RANKED_DRIVERS = 10;
+
+    // Candidates per request in a batch, bounding the solver's matrix to rows x (rows * 4) columns
+    static final int MAX_BATCH_CANDIDATES = 4;
+
+    // Straight-line ETAs assume 30 km/h in city traffic
+    private static final double SECONDS_PER_KM = 120.0;
+
+    // Nearest drivers loaded from the database while the index is cold
+    private static final int DB_FALLBACK_CANDIDATES = 50;
+
+    // Score of a driver at zero distance with a perfect rating
+    private static final double MAX_DRIVER_SCORE = 10.0;
+
+    private static final ThreadLocal<DriverRanker> RANKERS =
+        ThreadLocal.withInitial(() -> new DriverRanker(MAX_RANKED_DRIVERS));
+
     private final DriverLocationRepository driverLocationRepository;
     private final UserRepository userRepository;
     private final GeohashService geohashService;
+    private final DriverLocationIndex driverLocationIndex;
+    private final DriverLocationWriter driverLocationWriter;
+    private final RoutingEngine routingEngine;
+
+    /**
+     * Load online drivers into the in-memory index once the application is up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmDriverIndex() {
+        List<DriverLocation> onlineDrivers = driverLocationRepository.findByIsOnlineTrue();
+        for (DriverLocation location : onlineDrivers) {
+            indexLocation(location);
+        }
+        log.info("Driver index warmed with {} online drivers", driverLocationIndex.size());
+    }
 
     /**
      * Find available drivers for a ride request using geohashing
@@ -28,81 +67,179 @@ public class DriverMatchingService {
     public List<DriverLocation> findAvailableDrivers(RideRequest rideRequest, double searchRadiusKm) {
         log.info("Finding drivers for ride request: {}", rideRequest.getId());
         
-        // Get geohash prefixes for the search radius
-        List<String> geohashPrefixes = geohashService.getGeohashPrefixes(
-            rideRequest.getPickupLatitude(), 
-            rideRequest.getPickupLongitude(), 
-            searchRadiusKm
-        );
-
-        // Find drivers in the geohash area
-        List<DriverLocation> nearbyDrivers = driverLocationRepository
-            .findByGeohashStartingWithAndIsOnlineTrueAndIsAvailableTrue(geohashPrefixes.get(0));
-
-        if (nearbyDrivers.isEmpty()) {
-            // Try with broader geohash prefixes
-            for (String prefix : geohashPrefixes) {
-                nearbyDrivers = driverLocationRepository
-                    .findByGeohashStartingWithAndIsOnlineTrueAndIsAvailableTrue(prefix);
-                if (!nearbyDrivers.isEmpty()) {
-                    break;
-                }
-            }
+        double pickupLat = rideRequest.getPickupLatitude();
+        double pickupLon = rideRequest.getPickupLongitude();
+
+        // A node whose index is still cold takes the nearest drivers from the database instead
+        if (driverLocationIndex.size() == 0) {
+            indexNearestFromDatabase(pickupLat, pickupLon, searchRadiusKm);
         }
 
+        // Query exactly the cells covering the search circle, in one pass
+        GeohashService.Cover cover = geohashService.cover(
+            pickupLat, pickupLon, searchRadiusKm, DriverLocationIndex.CELL_PRECISION, MAX_COVER_CELLS);
+
         // Filter and rank drivers based on distance and rating
-        return rankDriversByProximityAndRating(nearbyDrivers, rideRequest);
+        return rankDriversByProximityAndRating(cover, pickupLat, pickupLon, searchRadiusKm);
     }
 
     /**
-     * Rank drivers by proximity and rating
+     * Load the nearest available drivers by KNN on the spatial index and put them into the driver index
+     */
+    private void indexNearestFromDatabase(double pickupLat, double pickupLon, double searchRadiusKm) {
+        List<Long> ids = driverLocationRepository.findNearestAvailableIds(
+            pickupLat, pickupLon, searchRadiusKm * 1000, DB_FALLBACK_CANDIDATES);
+        if (ids.isEmpty()) {
+            return;
+        }
+        for (DriverLocation location : driverLocationRepository.findByIdIn(ids)) {
+            if (driverLocationIndex.get(location.getDriver().getId()) == null) {
+                indexLocation(location);
+            }
+        }
+        log.info("Driver index cold; loaded {} nearest drivers from the database", ids.size());
+    }
+
+    /**
+     * Rank drivers by proximity and rating.
+     * Candidates stream from the index into a per-thread bounded heap, so only the
+     * top drivers are kept and nothing is allocated per candidate.
      */
     private List<DriverLocation> rankDriversByProximityAndRating(
-            List<DriverLocation> drivers, RideRequest rideRequest) {
+            GeohashService.Cover cover, double pickupLat, double pickupLon, double searchRadiusKm) {
+        return rankCandidates(cover, pickupLat, pickupLon, searchRadiusKm).stream()
+            .map(IndexedDriver::toDriverLocation)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Best-scoring indexed drivers within the radius, best first
+     */
+    private List<IndexedDriver> rankCandidates(
+            GeohashService.Cover cover, double pickupLat, double pickupLon, double searchRadiusKm) {
+        return rankCandidates(cover, pickupLat, pickupLon, searchRadiusKm, null);
+    }
+
+    /**
+     * Best-scoring indexed drivers within the radius, best first, with their scores copied into
+     * scoresOut when given
+     */
+    private List<IndexedDriver> rankCandidates(GeohashService.Cover cover, double pickupLat, double pickupLon,
+                                               double searchRadiusKm, double[] scoresOut) {
         
-        return drivers.stream()
-            .map(driver -> {
-                double distance = geohashService.calculateDistance(
-                    driver.getLatitude(), driver.getLongitude(),
-                    rideRequest.getPickupLatitude(), rideRequest.getPickupLongitude()
-                );
-                
+        DriverRanker ranker = RANKERS.get();
+        ranker.reset();
+
+        if (routingEngine.isAvailable()) {
+            rankByTravelTime(ranker, cover, pickupLat, pickupLon, searchRadiusKm);
+            return ranker.drain(scoresOut);
+        }
+
+        driverLocationIndex.forEachAvailable(cover, null, driver -> {
+            double distance = geohashService.calculateDistance(
+                driver.getLatitude(), driver.getLongitude(), pickupLat, pickupLon);
+            
+            if (distance <= searchRadiusKm) {
                 // Calculate score based on distance and rating
-                double score = calculateDriverScore(driver, distance);
-                
-                return new AbstractMap.SimpleEntry<>(driver, score);
-            })
-            .sorted(Map.Entry.<DriverLocation, Double>comparingByValue().reversed())
-            .limit(10) // Return top 10 drivers
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toList());
+                ranker.offer(driver, calculateDriverScore(driver, distance));
+            }
+        });
+
+        return ranker.drain(scoresOut);
+    }
+
+    /**
+     * Score candidates by road travel time to the pickup, computed for all of them with one
+     * many-to-one search. Travel time is expressed as the distance it would take at the
+     * straight-line speed, so scores stay comparable with the distance-based ranking. Drivers
+     * off the graph are scored by straight-line distance; drivers that cannot reach the pickup
+     * by road within routing.max-eta-seconds are dropped.
+     */
+    private void rankByTravelTime(DriverRanker ranker, GeohashService.Cover cover,
+                                  double pickupLat, double pickupLon, double searchRadiusKm) {
+        List<IndexedDriver> candidates = new ArrayList<>();
+        driverLocationIndex.forEachAvailable(cover, null, driver -> {
+            if (geohashService.calculateDistance(driver.getLatitude(), driver.getLongitude(),
+                    pickupLat, pickupLon) <= searchRadiusKm) {
+                candidates.add(driver);
+            }
+        });
+
+        int count = candidates.size();
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = candidates.get(i).getLatitude();
+            longitudes[i] = candidates.get(i).getLongitude();
+        }
+        double[] etaSeconds = routingEngine.travelTimesSeconds(latitudes, longitudes, pickupLat, pickupLon);
+
+        for (int i = 0; i < count; i++) {
+            IndexedDriver driver = candidates.get(i);
+            if (Double.isInfinite(etaSeconds[i])) {
+                continue;
+            }
+            double equivalentKm = Double.isNaN(etaSeconds[i])
+                ? geohashService.calculateDistance(latitudes[i], longitudes[i], pickupLat, pickupLon)
+                : etaSeconds[i] / SECONDS_PER_KM;
+            ranker.offer(driver, calculateDriverScore(driver, equivalentKm));
+        }
     }
 
     /**
      * Calculate driver score based on distance and rating
      */
-    private double calculateDriverScore(DriverLocation driver, double distance) {
-        User driverUser = driver.getDriver();
-        double rating = driverUser.getRating() != null ? driverUser.getRating() : 0.0;
-        
+    private double calculateDriverScore(IndexedDriver driver, double distance) {
         // Distance penalty (closer is better)
         double distanceScore = Math.max(0, 10 - distance);
         
         // Rating score (0-5 scale)
-        double ratingScore = rating * 2;
+        double ratingScore = driver.getRating() * 2;
         
         // Combine scores with weights
         return (distanceScore * 0.7) + (ratingScore * 0.3);
     }
 
+    /**
+     * Re-read rating features of online drivers, picking up ratings recorded on other nodes
+     */
+    @Scheduled(fixedDelayString = "${driver.features.refresh-interval-ms:300000}")
+    public void refreshDriverFeatures() {
+        int refreshed = 0;
+        for (DriverLocationRepository.DriverFeatures features : driverLocationRepository.findOnlineDriverFeatures()) {
+            IndexedDriver indexed = driverLocationIndex.get(features.getDriverId());
+            if (indexed != null && features.getRating() != null) {
+                driverLocationIndex.setRating(indexed, features.getRating());
+                refreshed++;
+            }
+        }
+        log.debug("Refreshed scoring features of {} indexed drivers", refreshed);
+    }
+
+    /**
+     * Refresh a driver's rating feature after a new rating is recorded
+     */
+    public void updateDriverRating(Long driverId, double rating) {
+        IndexedDriver indexed = driverLocationIndex.get(driverId);
+        if (indexed != null) {
+            driverLocationIndex.setRating(indexed, rating);
+        }
+    }
+
     /**
      * Assign driver to ride request
      */
     public Optional<User> assignDriverToRide(RideRequest rideRequest) {
-        log.info("Assigning driver to ride request: {}", rideRequest.getId());
-        
-        // Find available drivers within 5km radius
-        List<DriverLocation> availableDrivers = findAvailableDrivers(rideRequest, 5.0);
+        return assignDriverToRide(rideRequest, 5.0);
+    }
+
+    /**
+     * Assign driver to ride request from drivers within the radius
+     */
+    public Optional<User> assignDriverToRide(RideRequest rideRequest, double searchRadiusKm) {
+        log.info("Assigning driver to ride request: {} within {} km", rideRequest.getId(), searchRadiusKm);
+
+        List<DriverLocation> availableDrivers = findAvailableDrivers(rideRequest, searchRadiusKm);
         
         if (availableDrivers.isEmpty()) {
             log.warn("No available drivers found for ride request: {}", rideRequest.getId());
@@ -122,24 +259,86 @@ public class DriverMatchingService {
         return Optional.empty();
     }
 
+    /**
+     * Assign drivers to a batch of ride requests at once.
+     * Each request's top candidates, ranked and scored as for single dispatch, become columns of
+     * a requests x drivers cost matrix, solved for the lowest total cost so that requests stop
+     * competing greedily for the same drivers. A request whose solved driver was taken in the
+     * meantime falls back to greedy assignment within the same radius.
+     * The result is aligned with the input list.
+     */
+    public List<Optional<User>> assignDriversToRides(List<RideRequest> rideRequests, double searchRadiusKm) {
+        int rows = rideRequests.size();
+        List<List<IndexedDriver>> candidates = new ArrayList<>(rows);
+        List<double[]> candidateScores = new ArrayList<>(rows);
+        Map<IndexedDriver, Integer> columns = new HashMap<>();
+        List<IndexedDriver> drivers = new ArrayList<>();
+
+        // A cold index takes each pickup's nearest drivers from the database, as single dispatch does
+        boolean coldIndex = driverLocationIndex.size() == 0;
+
+        for (RideRequest rideRequest : rideRequests) {
+            if (coldIndex) {
+                indexNearestFromDatabase(rideRequest.getPickupLatitude(), rideRequest.getPickupLongitude(), searchRadiusKm);
+            }
+            GeohashService.Cover cover = geohashService.cover(rideRequest.getPickupLatitude(),
+                rideRequest.getPickupLongitude(), searchRadiusKm, DriverLocationIndex.CELL_PRECISION, MAX_COVER_CELLS);
+            double[] scores = new double[MAX_RANKED_DRIVERS];
+            List<IndexedDriver> ranked = rankCandidates(cover,
+                rideRequest.getPickupLatitude(), rideRequest.getPickupLongitude(), searchRadiusKm, scores);
+            ranked = ranked.subList(0, Math.min(ranked.size(), MAX_BATCH_CANDIDATES));
+            for (IndexedDriver driver : ranked) {
+                if (columns.putIfAbsent(driver, drivers.size()) == null) {
+                    drivers.add(driver);
+                }
+            }
+            candidates.add(ranked);
+            candidateScores.add(scores);
+        }
+
+        // Cost is the score shortfall, so minimising cost maximises the batch's total score
+        int cols = drivers.size();
+        double[] cost = new double[rows * cols];
+        Arrays.fill(cost, AssignmentSolver.INFEASIBLE);
+        for (int row = 0; row < rows; row++) {
+            List<IndexedDriver> ranked = candidates.get(row);
+            double[] scores = candidateScores.get(row);
+            for (int i = 0; i < ranked.size(); i++) {
+                cost[row * cols + columns.get(ranked.get(i))] = MAX_DRIVER_SCORE - scores[i];
+            }
+        }
+
+        int[] assignment = AssignmentSolver.solve(cost, rows, cols);
+
+        List<Optional<User>> result = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            RideRequest rideRequest = rideRequests.get(row);
+            int col = assignment[row];
+            if (col >= 0 && tryAssignDriver(drivers.get(col).getDriver(), rideRequest)) {
+                result.add(Optional.of(drivers.get(col).getDriver()));
+            } else {
+                result.add(assignDriverToRide(rideRequest, searchRadiusKm));
+            }
+        }
+        return result;
+    }
+
     /**
      * Try to assign a specific driver to a ride request
      */
     private boolean tryAssignDriver(User driver, RideRequest rideRequest) {
-        // Check if driver is still available
-        Optional<DriverLocation> currentLocation = driverLocationRepository
-            .findByDriverId(driver.getId());
-        
-        if (currentLocation.isEmpty() || 
-            !currentLocation.get().getIsAvailable() || 
-            !currentLocation.get().getIsOnline()) {
+        IndexedDriver indexed = driverLocationIndex.get(driver.getId());
+
+        // CAS on the in-memory availability word: concurrent searches contend here, not in the DB
+        if (indexed == null || !driverLocationIndex.tryClaim(indexed)) {
             return false;
         }
 
-        // Update driver availability
-        DriverLocation location = currentLocation.get();
-        location.setIsAvailable(false);
-        driverLocationRepository.save(location);
+        // Confirm against the row so no other node can have taken the driver in the meantime
+        if (driverLocationRepository.claimAvailableDriver(driver.getId()) == 0) {
+            driverLocationIndex.abandonClaim(indexed);
+            return false;
+        }
 
         // Update ride request status
         rideRequest.setStatus(RideRequest.Status.DRIVER_FOUND);
@@ -154,54 +353,49 @@ public class DriverMatchingService {
     public void releaseDriver(User driver) {
         log.info("Releasing driver: {}", driver.getId());
         
-        Optional<DriverLocation> location = driverLocationRepository
-            .findByDriverId(driver.getId());
-        
-        if (location.isPresent()) {
-            DriverLocation driverLocation = location.get();
-            driverLocation.setIsAvailable(true);
-            driverLocationRepository.save(driverLocation);
+        IndexedDriver indexed = driverLocationIndex.get(driver.getId());
+        if (indexed == null) {
+            indexed = driverLocationRepository.findByDriverId(driver.getId())
+                .map(this::indexLocation)
+                .orElse(null);
+        }
+
+        if (indexed != null) {
+            driverLocationIndex.release(indexed);
+            // Clears the row's claim; until then no upsert can make the row available again
+            driverLocationWriter.persistRelease(indexed);
         }
     }
 
     /**
-     * Update driver location and availability
+     * Update driver location and availability.
+     * The index is updated in place and the row is written behind asynchronously.
      */
     public void updateDriverLocation(Long driverId, double latitude, double longitude, 
                                    boolean isOnline, boolean isAvailable) {
         log.debug("Updating driver location: driverId={}, lat={}, lon={}, online={}, available={}", 
             driverId, latitude, longitude, isOnline, isAvailable);
         
-        String geohash = geohashService.encode(latitude, longitude);
-        
-        Optional<DriverLocation> existingLocation = driverLocationRepository
-            .findByDriverId(driverId);
-        
-        if (existingLocation.isPresent()) {
-            DriverLocation location = existingLocation.get();
-            location.setLatitude(latitude);
-            location.setLongitude(longitude);
-            location.setGeohash(geohash);
-            location.setIsOnline(isOnline);
-            location.setIsAvailable(isAvailable);
-            location.setTimestamp(java.time.LocalDateTime.now());
-            driverLocationRepository.save(location);
+        long geohash = GeohashService.encodeBits(latitude, longitude, GeohashService.MAX_PRECISION);
+        LocalDateTime now = LocalDateTime.now();
+
+        IndexedDriver indexed = driverLocationIndex.get(driverId);
+        if (indexed != null) {
+            driverLocationIndex.update(indexed, latitude, longitude, geohash, isOnline, isAvailable, now);
         } else {
-            // Create new location record
-            User driver = userRepository.findById(driverId).orElse(null);
-            if (driver != null) {
-                DriverLocation newLocation = DriverLocation.builder()
-                    .driver(driver)
-                    .latitude(latitude)
-                    .longitude(longitude)
-                    .geohash(geohash)
-                    .isOnline(isOnline)
-                    .isAvailable(isAvailable)
-                    .timestamp(java.time.LocalDateTime.now())
-                    .build();
-                driverLocationRepository.save(newLocation);
+            // First sighting since startup: resolve the driver once, then stay in memory
+            User driver = driverLocationRepository.findByDriverId(driverId)
+                .map(DriverLocation::getDriver)
+                .or(() -> userRepository.findById(driverId))
+                .orElse(null);
+            if (driver == null) {
+                return;
             }
+            indexed = driverLocationIndex.put(driver, latitude, longitude, geohash,
+                isOnline, isAvailable, driver.getVehicleType(), now);
         }
+
+        driverLocationWriter.persist(indexed);
     }
 
     /**
@@ -209,32 +403,41 @@ public class DriverMatchingService {
      */
     public List<DriverLocation> getAvailableDriversInArea(double latitude, double longitude, 
                                                         double radiusKm, String vehicleType) {
-        List<String> geohashPrefixes = geohashService.getGeohashPrefixes(latitude, longitude, radiusKm);
-        
-        List<DriverLocation> drivers = new ArrayList<>();
-        
-        for (String prefix : geohashPrefixes) {
-            List<DriverLocation> prefixDrivers;
-            if (vehicleType != null && !vehicleType.isEmpty()) {
-                prefixDrivers = driverLocationRepository
-                    .findByGeohashStartingWithAndIsOnlineTrueAndIsAvailableTrueAndVehicleType(prefix, vehicleType);
-            } else {
-                prefixDrivers = driverLocationRepository
-                    .findByGeohashStartingWithAndIsOnlineTrueAndIsAvailableTrue(prefix);
-            }
-            drivers.addAll(prefixDrivers);
-        }
+        GeohashService.Cover cover = geohashService.cover(
+            latitude, longitude, radiusKm, DriverLocationIndex.CELL_PRECISION, MAX_COVER_CELLS);
         
-        return drivers.stream()
-            .distinct()
+        return driverLocationIndex.findAvailable(cover, vehicleType).stream()
+            .filter(driver -> geohashService.calculateDistance(
+                driver.getLatitude(), driver.getLongitude(), latitude, longitude) <= radiusKm)
+            .map(IndexedDriver::toDriverLocation)
             .collect(Collectors.toList());
     }
 
+    /**
+     * Put a persisted location into the index
+     */
+    private IndexedDriver indexLocation(DriverLocation location) {
+        User driver = location.getDriver();
+        long geohash = GeohashService.encodeBits(location.getLatitude(), location.getLongitude(),
+            GeohashService.MAX_PRECISION);
+        return driverLocationIndex.put(driver, location.getLatitude(), location.getLongitude(), geohash,
+            Boolean.TRUE.equals(location.getIsOnline()),
+            Boolean.TRUE.equals(location.getIsAvailable()),
+            location.getVehicleType() != null ? location.getVehicleType() : driver.getVehicleType(),
+            location.getTimestamp());
+    }
+
     /**
      * Calculate ETA for driver to reach pickup location
      */
     public int calculateETA(double driverLat, double driverLon, 
                            double pickupLat, double pickupLon) {
+        // Road travel time when a graph is loaded
+        double seconds = routingEngine.travelTimeSeconds(driverLat, driverLon, pickupLat, pickupLon);
+        if (!Double.isNaN(seconds)) {
+            return (int) Math.ceil(seconds / 60);
+        }
+        
         double distance = geohashService.calculateDistance(driverLat, driverLon, pickupLat, pickupLon);
         
         // Assume average speed of 30 km/h in city traffic
@@ -0,0 +1,114 @@
+package com.uberclone.backend.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bounded top-K selection of drivers by score.
+ * Keeps a fixed-size min-heap over primitive scores so ranking n candidates is O(n log k)
+ * with no allocation per candidate. Not thread-safe; hold one per thread and {@link #reset()} it.
+ */
+final class DriverRanker {
+
+    private final double[] scores;
+    private final IndexedDriver[] drivers;
+    private int size;
+
+    DriverRanker(int capacity) {
+        this.scores = new double[capacity];
+        this.drivers = new IndexedDriver[capacity];
+    }
+
+    /**
+     * Forget all candidates offered so far
+     */
+    void reset() {
+        Arrays.fill(drivers, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Offer a candidate; it is kept only if it beats the current k-th best
+     */
+    void offer(IndexedDriver driver, double score) {
+        if (size < scores.length) {
+            scores[size] = score;
+            drivers[size] = driver;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            scores[0] = score;
+            drivers[0] = driver;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Drain the kept candidates, best first, and reset the ranker
+     */
+    List<IndexedDriver> drain() {
+        return drain(null);
+    }
+
+    /**
+     * Drain the kept candidates, best first, copying their scores into scoresOut when given.
+     * scoresOut must hold at least the ranker's capacity.
+     */
+    List<IndexedDriver> drain(double[] scoresOut) {
+        // In-place heap sort: repeatedly move the minimum to the end, leaving scores descending
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+
+        List<IndexedDriver> ranked = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ranked.add(drivers[i]);
+        }
+        if (scoresOut != null) {
+            System.arraycopy(scores, 0, scoresOut, 0, size);
+        }
+        reset();
+        return ranked;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int limit) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < limit && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < limit && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+
+        IndexedDriver driver = drivers[a];
+        drivers[a] = drivers[b];
+        drivers[b] = driver;
+    }
+}
@@ -1,28 +1,26 @@
 package com.uberclone.backend.service;
 
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 @Service
+@RequiredArgsConstructor
 public class EtaPredictionService {
+    private final MLServiceClient mlServiceClient;
+
     @Value("${ml.eta.url:http://localhost:8001/predict-eta}")
     private String mlEtaUrl;
 
+    /**
+     * Predicted trip minutes, or -1 if the ETA model did not answer in time
+     */
     public double predictEta(double pickupLat, double pickupLng, double dropoffLat, double dropoffLng, int hourOfDay) {
-        RestTemplate restTemplate = new RestTemplate();
         EtaRequest req = new EtaRequest(pickupLat, pickupLng, dropoffLat, dropoffLng, hourOfDay);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<EtaRequest> entity = new HttpEntity<>(req, headers);
-        ResponseEntity<EtaResponse> response = restTemplate.postForEntity(mlEtaUrl, entity, EtaResponse.class);
-        EtaResponse body = response.getBody();
-        if (body == null) {
-            return -1;
-        }
-        return body.getEta_minutes();
+        return mlServiceClient.post(MLServiceClient.Endpoint.ETA, mlEtaUrl, req, EtaResponse.class)
+            .map(EtaResponse::getEta_minutes)
+            .orElse(-1.0);
     }
 
     @Data
@@ -0,0 +1,79 @@
+package com.uberclone.backend.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point fare arithmetic.
+ * Fares are computed in long micro-cents and multipliers in hundredths, giving the same
+ * HALF_UP cent result as the BigDecimal chain it replaces. The only inexact input is the
+ * distance, so when a result lands close enough to a half cent for that error to matter
+ * the quote is recomputed exactly with BigDecimal.
+ */
+final class FareEngine {
+
+    static final long MICROS_PER_CENT = 1_000_000L;
+    static final long MULTIPLIER_SCALE = 100L;
+
+    static final long BASE_FARE_MICROS = 250 * MICROS_PER_CENT;
+    static final long PER_KM_MICROS = 150 * MICROS_PER_CENT;
+    static final long PER_MINUTE_MICROS = 30 * MICROS_PER_CENT;
+
+    // Three multipliers in hundredths scale the product by 10^6, on top of micro-cents
+    private static final long PRODUCT_DIVISOR = MICROS_PER_CENT * MULTIPLIER_SCALE * MULTIPLIER_SCALE * MULTIPLIER_SCALE;
+    private static final long HALF_CENT = PRODUCT_DIVISOR / 2;
+
+    private static final BigDecimal BASE_FARE = BigDecimal.valueOf(250, 2);
+    private static final BigDecimal PER_KM_RATE = BigDecimal.valueOf(150, 2);
+    private static final BigDecimal PER_MINUTE_RATE = BigDecimal.valueOf(30, 2);
+
+    private FareEngine() {
+    }
+
+    /**
+     * Estimated trip minutes for a distance: 2 minutes per km, rounded up
+     */
+    static int estimatedMinutes(double distanceKm) {
+        return (int) Math.ceil(distanceKm * 2);
+    }
+
+    /**
+     * Total fare in cents, rounded HALF_UP. Multipliers are in hundredths (1.3x = 130).
+     */
+    static long totalCents(double distanceKm, int minutes, long vehicleMultiplier,
+                           long peakMultiplier, long surgeMultiplier) {
+        // Distance rounding contributes at most one micro-cent of error before scaling
+        long subtotal = BASE_FARE_MICROS + Math.round(distanceKm * PER_KM_MICROS) + PER_MINUTE_MICROS * minutes;
+        long product = vehicleMultiplier * peakMultiplier * surgeMultiplier;
+
+        long scaled;
+        try {
+            scaled = Math.multiplyExact(subtotal, product);
+        } catch (ArithmeticException e) {
+            return exactTotalCents(distanceKm, minutes, vehicleMultiplier, peakMultiplier, surgeMultiplier);
+        }
+
+        long cents = scaled / PRODUCT_DIVISOR;
+        long remainder = scaled % PRODUCT_DIVISOR;
+        if (Math.abs(remainder - HALF_CENT) <= 2 * product) {
+            return exactTotalCents(distanceKm, minutes, vehicleMultiplier, peakMultiplier, surgeMultiplier);
+        }
+        return remainder > HALF_CENT ? cents + 1 : cents;
+    }
+
+    /**
+     * Exact decimal evaluation, used only for near-ties
+     */
+    static long exactTotalCents(double distanceKm, int minutes, long vehicleMultiplier,
+                                long peakMultiplier, long surgeMultiplier) {
+        return BASE_FARE
+            .add(PER_KM_RATE.multiply(BigDecimal.valueOf(distanceKm)))
+            .add(PER_MINUTE_RATE.multiply(BigDecimal.valueOf(minutes)))
+            .multiply(BigDecimal.valueOf(vehicleMultiplier, 2))
+            .multiply(BigDecimal.valueOf(peakMultiplier, 2))
+            .multiply(BigDecimal.valueOf(surgeMultiplier, 2))
+            .setScale(2, RoundingMode.HALF_UP)
+            .unscaledValue()
+            .longValueExact();
+    }
+}
@@ -0,0 +1,146 @@
+package com.uberclone.backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded cache of fare estimates.
+ * Riders dragging the map pin ask for the same trip over and over, so quotes are keyed by
+ * pickup cell, dropoff cell, vehicle type, surge epoch and whether PricingService counts the
+ * request time as peak, and computed once per key from the cell centres. Time only enters a
+ * fare through the peak check, so keying on its result keeps the pricing boundaries exact.
+ * A new surge snapshot clears the cache.
+ * <p>
+ * Quotes are estimates for display. Pricing at the cell centres moves each endpoint by at most
+ * half a cell diagonal, about 110 m at precision 7, so a quote's distance is within about 0.22 km
+ * of the exact trip and its time fare within one minute. Surge cells are coarser than quote cells,
+ * so the multipliers match. The fare charged is priced from the exact coordinates when the ride
+ * is requested and returned as the request's estimatedFare.
+ */
+@Service
+public class FareQuoteCache {
+
+    private final PricingService pricingService;
+    private final SurgePricingEngine surgePricingEngine;
+    private final Cache<QuoteKey, PricingService.FareBreakdown> quotes;
+    private final Timer quoteTimer;
+    private final int cellPrecision;
+
+    private volatile long cachedEpoch;
+
+    public FareQuoteCache(PricingService pricingService, SurgePricingEngine surgePricingEngine,
+                          @Value("${fare.quote-cache.max-size:50000}") long maxSize,
+                          @Value("${fare.quote-cache.cell-precision:7}") int cellPrecision,
+                          MeterRegistry meterRegistry) {
+        this.pricingService = pricingService;
+        this.surgePricingEngine = surgePricingEngine;
+        this.cellPrecision = cellPrecision;
+        this.quotes = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .recordStats()
+            .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, quotes, "fareQuotes");
+        this.quoteTimer = Timer.builder("fare.quote.latency")
+            .description("Time to answer a fare estimate, cached or not")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Fare estimate for a trip requested at the given time
+     */
+    public PricingService.FareBreakdown getQuote(double pickupLat, double pickupLon,
+                                                 double dropoffLat, double dropoffLon,
+                                                 String vehicleType, LocalTime requestTime) {
+        return quoteTimer.record(() -> {
+            long epoch = currentEpoch();
+            QuoteKey key = new QuoteKey(
+                GeohashService.encodeBits(pickupLat, pickupLon, cellPrecision),
+                GeohashService.encodeBits(dropoffLat, dropoffLon, cellPrecision),
+                vehicleType == null ? "STANDARD" : vehicleType.toUpperCase(Locale.ROOT),
+                pricingService.isPeakHour(requestTime),
+                epoch);
+            return quotes.get(key, k -> computeQuote(k, requestTime));
+        });
+    }
+
+    /**
+     * Fare estimates for every vehicle type, computed together on a miss
+     */
+    public Map<String, PricingService.FareBreakdown> getQuotes(double pickupLat, double pickupLon,
+                                                               double dropoffLat, double dropoffLon,
+                                                               LocalTime requestTime) {
+        return quoteTimer.record(() -> {
+            long epoch = currentEpoch();
+            long pickupCell = GeohashService.encodeBits(pickupLat, pickupLon, cellPrecision);
+            long dropoffCell = GeohashService.encodeBits(dropoffLat, dropoffLon, cellPrecision);
+            boolean peakHour = pricingService.isPeakHour(requestTime);
+
+            Map<String, PricingService.FareBreakdown> result = new LinkedHashMap<>();
+            for (String vehicleType : PricingService.VEHICLE_TYPES) {
+                PricingService.FareBreakdown cached = quotes.getIfPresent(
+                    new QuoteKey(pickupCell, dropoffCell, vehicleType, peakHour, epoch));
+                if (cached == null) {
+                    break;
+                }
+                result.put(vehicleType, cached);
+            }
+            if (result.size() == PricingService.VEHICLE_TYPES.size()) {
+                return result;
+            }
+
+            Map<String, PricingService.FareBreakdown> computed = pricingService.calculateFareBreakdowns(
+                GeohashService.decodeLatitude(pickupCell, cellPrecision),
+                GeohashService.decodeLongitude(pickupCell, cellPrecision),
+                GeohashService.decodeLatitude(dropoffCell, cellPrecision),
+                GeohashService.decodeLongitude(dropoffCell, cellPrecision),
+                requestTime);
+            computed.forEach((vehicleType, breakdown) -> quotes.put(
+                new QuoteKey(pickupCell, dropoffCell, vehicleType, peakHour, epoch), materialise(breakdown)));
+            return computed;
+        });
+    }
+
+    private long currentEpoch() {
+        long epoch = surgePricingEngine.getSnapshot().getEpoch();
+        if (epoch != cachedEpoch) {
+            // Quotes under the old epoch can no longer be hit; drop them rather than wait for eviction
+            quotes.invalidateAll();
+            cachedEpoch = epoch;
+        }
+        return epoch;
+    }
+
+    private PricingService.FareBreakdown computeQuote(QuoteKey key, LocalTime requestTime) {
+        PricingService.FareBreakdown breakdown = pricingService.calculateFareBreakdown(
+            GeohashService.decodeLatitude(key.pickupCell(), cellPrecision),
+            GeohashService.decodeLongitude(key.pickupCell(), cellPrecision),
+            GeohashService.decodeLatitude(key.dropoffCell(), cellPrecision),
+            GeohashService.decodeLongitude(key.dropoffCell(), cellPrecision),
+            key.vehicleType(), requestTime);
+        return materialise(breakdown);
+    }
+
+    /**
+     * Materialise the lazy components before a breakdown is shared between threads
+     */
+    private static PricingService.FareBreakdown materialise(PricingService.FareBreakdown breakdown) {
+        breakdown.getDistanceFare();
+        breakdown.getTimeFare();
+        breakdown.getTotalFare();
+        return breakdown;
+    }
+
+    private record QuoteKey(long pickupCell, long dropoffCell, String vehicleType, boolean peakHour, long surgeEpoch) {
+    }
+}
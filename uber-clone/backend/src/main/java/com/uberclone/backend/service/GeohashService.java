@@ -7,133 +7,225 @@ import java.util.*;
 public class GeohashService {
 
     private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
-    private static final int PRECISION = 12;
+    /**
+     * Finest supported precision (characters)
+     */
+    public static final int MAX_PRECISION = 12;
+
+    /**
+     * Bits in a full-precision long geohash (12 characters x 5 bits)
+     */
+    public static final int MAX_BITS = MAX_PRECISION * 5;
+
+    /**
+     * Returned by {@link #neighbor} when the step leaves the globe
+     */
+    public static final long NO_CELL = -1L;
+
+    private static final int AXIS_BITS = MAX_BITS / 2;
+    private static final int DEFAULT_MAX_COVER_CELLS = 9;
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final byte[] BASE32_INDEX = new byte[128];
+
+    static {
+        Arrays.fill(BASE32_INDEX, (byte) -1);
+        for (int i = 0; i < BASE32.length(); i++) {
+            BASE32_INDEX[BASE32.charAt(i)] = (byte) i;
+        }
+    }
 
     /**
      * Encode latitude and longitude to geohash
      */
     public String encode(double latitude, double longitude) {
-        return encode(latitude, longitude, PRECISION);
+        return encode(latitude, longitude, MAX_PRECISION);
     }
 
     /**
      * Encode latitude and longitude to geohash with specified precision
      */
     public String encode(double latitude, double longitude, int precision) {
-        if (precision < 1 || precision > 12) {
-            throw new IllegalArgumentException("Precision must be between 1 and 12");
+        return toBase32(encodeBits(latitude, longitude, precision), precision);
+    }
+
+    /**
+     * Decode geohash to latitude and longitude; characters past MAX_PRECISION are validated but
+     * ignored, as they refine the point by less than a few centimetres
+     */
+    public double[] decode(String geohash) {
+        if (geohash == null || geohash.isEmpty()) {
+            throw new IllegalArgumentException("Geohash cannot be null or empty");
         }
 
-        double[] latRange = {-90.0, 90.0};
-        double[] lonRange = {-180.0, 180.0};
-        boolean isEven = true;
-        int bit = 0;
-        int ch = 0;
-        StringBuilder geohash = new StringBuilder();
-
-        while (geohash.length() < precision) {
-            if (isEven) {
-                double mid = (lonRange[0] + lonRange[1]) / 2.0;
-                if (longitude >= mid) {
-                    ch |= (1 << (4 - bit));
-                    lonRange[0] = mid;
-                } else {
-                    lonRange[1] = mid;
-                }
-            } else {
-                double mid = (latRange[0] + latRange[1]) / 2.0;
-                if (latitude >= mid) {
-                    ch |= (1 << (4 - bit));
-                    latRange[0] = mid;
-                } else {
-                    latRange[1] = mid;
-                }
+        int precision = Math.min(geohash.length(), MAX_PRECISION);
+        for (int i = precision; i < geohash.length(); i++) {
+            char c = geohash.charAt(i);
+            if (c >= 128 || BASE32_INDEX[c] == -1) {
+                throw new IllegalArgumentException("Invalid character in geohash: " + c);
             }
+        }
 
-            isEven = !isEven;
-            bit++;
+        long hash = fromBase32(geohash.substring(0, precision));
+        return new double[]{decodeLatitude(hash, precision), decodeLongitude(hash, precision)};
+    }
 
-            if (bit == 5) {
-                geohash.append(BASE32.charAt(ch));
-                bit = 0;
-                ch = 0;
-            }
+    /**
+     * Encode latitude and longitude to a bit-interleaved long holding 5 * precision bits,
+     * right-aligned. Bits are identical to the base32 form, so prefixes are bit shifts.
+     * Allocation-free; use this on hot paths and convert to base32 only at the edges.
+     */
+    public static long encodeBits(double latitude, double longitude, int precision) {
+        checkPrecision(precision);
+
+        long lonBits = bisect(longitude, -180.0, 180.0);
+        long latBits = bisect(latitude, -90.0, 90.0);
+        long hash = (spread(lonBits) << 1) | spread(latBits);
+
+        return hash >>> (MAX_BITS - precision * 5);
+    }
+
+    /**
+     * Truncate a long geohash to a coarser precision
+     */
+    public static long truncate(long hash, int precision, int targetPrecision) {
+        if (targetPrecision > precision) {
+            throw new IllegalArgumentException("Cannot truncate to a finer precision");
         }
+        return hash >>> ((precision - targetPrecision) * 5);
+    }
 
-        return geohash.toString();
+    /**
+     * Check whether a long geohash lies inside the cell of a coarser long geohash
+     */
+    public static boolean hasPrefix(long hash, int precision, long prefix, int prefixPrecision) {
+        return prefixPrecision <= precision && truncate(hash, precision, prefixPrecision) == prefix;
     }
 
     /**
-     * Decode geohash to latitude and longitude
+     * Latitude of the centre of a long geohash cell
      */
-    public double[] decode(String geohash) {
-        if (geohash == null || geohash.isEmpty()) {
-            throw new IllegalArgumentException("Geohash cannot be null or empty");
+    public static double decodeLatitude(long hash, int precision) {
+        int latBitCount = precision * 5 / 2;
+        long latBits = compact(align(hash, precision)) >>> (AXIS_BITS - latBitCount);
+        return cellCentre(latBits, latBitCount, -90.0, 180.0);
+    }
+
+    /**
+     * Longitude of the centre of a long geohash cell
+     */
+    public static double decodeLongitude(long hash, int precision) {
+        int lonBitCount = (precision * 5 + 1) / 2;
+        long lonBits = compact(align(hash, precision) >>> 1) >>> (AXIS_BITS - lonBitCount);
+        return cellCentre(lonBits, lonBitCount, -180.0, 360.0);
+    }
+
+    /**
+     * Render a long geohash in base32
+     */
+    public static String toBase32(long hash, int precision) {
+        checkPrecision(precision);
+
+        char[] chars = new char[precision];
+        for (int i = precision - 1; i >= 0; i--) {
+            chars[i] = BASE32.charAt((int) (hash & 31));
+            hash >>>= 5;
         }
+        return new String(chars);
+    }
 
-        double[] latRange = {-90.0, 90.0};
-        double[] lonRange = {-180.0, 180.0};
-        boolean isEven = true;
+    /**
+     * Parse a base32 geohash into its long form; precision is the string length
+     */
+    public static long fromBase32(String geohash) {
+        checkPrecision(geohash.length());
 
-        for (char c : geohash.toCharArray()) {
-            int cd = BASE32.indexOf(c);
+        long hash = 0;
+        for (int i = 0; i < geohash.length(); i++) {
+            char c = geohash.charAt(i);
+            int cd = c < 128 ? BASE32_INDEX[c] : -1;
             if (cd == -1) {
                 throw new IllegalArgumentException("Invalid character in geohash: " + c);
             }
+            hash = (hash << 5) | cd;
+        }
+        return hash;
+    }
 
-            for (int j = 4; j >= 0; j--) {
-                int mask = 1 << j;
-                if (isEven) {
-                    if ((cd & mask) != 0) {
-                        lonRange[0] = (lonRange[0] + lonRange[1]) / 2.0;
-                    } else {
-                        lonRange[1] = (lonRange[0] + lonRange[1]) / 2.0;
-                    }
-                } else {
-                    if ((cd & mask) != 0) {
-                        latRange[0] = (latRange[0] + latRange[1]) / 2.0;
-                    } else {
-                        latRange[1] = (latRange[0] + latRange[1]) / 2.0;
-                    }
-                }
-                isEven = !isEven;
+    private static void checkPrecision(int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between 1 and 12");
+        }
+    }
+
+    /**
+     * Binary-search a coordinate into AXIS_BITS bits, matching the reference bisection exactly
+     */
+    private static long bisect(double value, double min, double max) {
+        long bits = 0;
+        for (int i = 0; i < AXIS_BITS; i++) {
+            double mid = (min + max) / 2.0;
+            bits <<= 1;
+            if (value >= mid) {
+                bits |= 1;
+                min = mid;
+            } else {
+                max = mid;
             }
         }
+        return bits;
+    }
+
+    private static double cellCentre(long bits, int bitCount, double origin, double span) {
+        double cellSize = span / (1L << bitCount);
+        return origin + (bits + 0.5) * cellSize;
+    }
 
-        double latitude = (latRange[0] + latRange[1]) / 2.0;
-        double longitude = (lonRange[0] + lonRange[1]) / 2.0;
+    private static long align(long hash, int precision) {
+        return hash << (MAX_BITS - precision * 5);
+    }
 
-        return new double[]{latitude, longitude};
+    /**
+     * Spread the low 30 bits of x onto the even bit positions
+     */
+    private static long spread(long x) {
+        x &= 0x3FFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
     }
 
     /**
-     * Get neighboring geohashes
+     * Inverse of spread: gather the even bit positions into the low 30 bits
+     */
+    private static long compact(long x) {
+        x &= 0x5555555555555555L;
+        x = (x | (x >>> 1)) & 0x3333333333333333L;
+        x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+        return x;
+    }
+
+    /**
+     * Get neighboring geohashes.
+     * Computed on the cell grid, so it is exact at any precision; cells past a pole are omitted.
      */
     public List<String> getNeighbors(String geohash) {
-        double[] coords = decode(geohash);
-        double lat = coords[0];
-        double lon = coords[1];
+        long hash = fromBase32(geohash);
+        int precision = geohash.length();
 
-        List<String> neighbors = new ArrayList<>();
-        
-        // Calculate precision to determine step size
-        double latStep = 180.0 / Math.pow(2, (geohash.length() * 5) / 2);
-        double lonStep = 360.0 / Math.pow(2, (geohash.length() * 5) / 2);
-
-        // Add all 8 neighbors
-        for (int i = -1; i <= 1; i++) {
-            for (int j = -1; j <= 1; j++) {
-                if (i == 0 && j == 0) continue;
-                
-                double newLat = lat + (i * latStep);
-                double newLon = lon + (j * lonStep);
-                
-                // Handle wrapping around the globe
-                if (newLon > 180) newLon -= 360;
-                if (newLon < -180) newLon += 360;
-                
-                if (newLat >= -90 && newLat <= 90) {
-                    neighbors.add(encode(newLat, newLon, geohash.length()));
+        List<String> neighbors = new ArrayList<>(8);
+        for (int dLat = -1; dLat <= 1; dLat++) {
+            for (int dLon = -1; dLon <= 1; dLon++) {
+                if (dLat == 0 && dLon == 0) continue;
+
+                long neighbor = neighbor(hash, precision, dLat, dLon);
+                if (neighbor != NO_CELL) {
+                    neighbors.add(toBase32(neighbor, precision));
                 }
             }
         }
@@ -141,11 +233,38 @@ public class GeohashService {
         return neighbors;
     }
 
+    /**
+     * Step a long geohash by whole cells. Longitude wraps at the antimeridian;
+     * stepping past a pole returns {@link #NO_CELL}.
+     */
+    public static long neighbor(long hash, int precision, int dLat, int dLon) {
+        int latBitCount = precision * 5 / 2;
+        int lonBitCount = (precision * 5 + 1) / 2;
+        long aligned = align(hash, precision);
+
+        long latIndex = (compact(aligned) >>> (AXIS_BITS - latBitCount)) + dLat;
+        long lonIndex = (compact(aligned >>> 1) >>> (AXIS_BITS - lonBitCount)) + dLon;
+
+        if (latIndex < 0 || latIndex >= (1L << latBitCount)) {
+            return NO_CELL;
+        }
+        lonIndex = Math.floorMod(lonIndex, 1L << lonBitCount);
+
+        return fromIndices(latIndex, lonIndex, precision);
+    }
+
     /**
      * Calculate distance between two coordinates using Haversine formula
      */
     public double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371; // Earth's radius in kilometers
+        return haversineKm(lat1, lon1, lat2, lon2);
+    }
+
+    /**
+     * Great-circle distance in km, for callers that are not Spring beans
+     */
+    public static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        final double R = EARTH_RADIUS_KM;
 
         double latDistance = Math.toRadians(lat2 - lat1);
         double lonDistance = Math.toRadians(lon2 - lon1);
@@ -160,38 +279,116 @@ public class GeohashService {
     }
 
     /**
-     * Get geohash prefixes for a given radius (in km)
+     * Get geohash prefixes for a given radius (in km).
+     * Returns every cell of the radius cover, so drivers across a cell boundary are included.
      */
     public List<String> getGeohashPrefixes(double latitude, double longitude, double radiusKm) {
-        List<String> prefixes = new ArrayList<>();
-        
-        // Start with high precision and reduce until we cover the radius
-        for (int precision = 12; precision >= 1; precision--) {
-            String geohash = encode(latitude, longitude, precision);
-            // double[] coords = decode(geohash); // Removed unused variable
-            
-            // Calculate the size of this geohash cell
-            double cellSize = calculateCellSize(precision);
-            
-            if (cellSize <= radiusKm * 2) {
-                prefixes.add(geohash);
-                break;
-            }
+        Cover cover = cover(latitude, longitude, radiusKm, MAX_PRECISION, DEFAULT_MAX_COVER_CELLS);
+
+        List<String> prefixes = new ArrayList<>(cover.size());
+        for (long cell : cover.getCells()) {
+            prefixes.add(toBase32(cell, cover.getPrecision()));
         }
-        
         return prefixes;
     }
 
     /**
-     * Calculate the approximate size of a geohash cell
+     * Compute the cells that fully cover a circle.
+     * Picks the finest precision (up to maxPrecision) whose covering of the circle's bounding box
+     * needs at most maxCells cells, then drops the box corners the circle never touches.
      */
-    private double calculateCellSize(int precision) {
-        // Approximate cell size in kilometers
-        double latSize = 180.0 / Math.pow(2, (precision * 5) / 2);
-        double lonSize = 360.0 / Math.pow(2, (precision * 5) / 2);
-        
-        // Convert to kilometers (approximate)
-        return Math.max(latSize * 111.0, lonSize * 111.0 * Math.cos(Math.PI / 4));
+    public Cover cover(double latitude, double longitude, double radiusKm, int maxPrecision, int maxCells) {
+        checkPrecision(maxPrecision);
+
+        double latDelta = Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+        double minLat = Math.max(-90.0, latitude - latDelta);
+        double maxLat = Math.min(90.0, latitude + latDelta);
+
+        // Longitude span widens with latitude; near the poles the box covers every meridian
+        double cosLat = Math.min(Math.cos(Math.toRadians(minLat)), Math.cos(Math.toRadians(maxLat)));
+        double lonDelta = cosLat > 1e-9 ? latDelta / cosLat : 360.0;
+        boolean allLongitudes = lonDelta >= 180.0;
+
+        for (int precision = maxPrecision; precision >= 1; precision--) {
+            int latBitCount = precision * 5 / 2;
+            int lonBitCount = (precision * 5 + 1) / 2;
+            long lonCells = 1L << lonBitCount;
+
+            long minLatIndex = axisIndex(minLat, -90.0, 180.0, latBitCount);
+            long maxLatIndex = axisIndex(maxLat, -90.0, 180.0, latBitCount);
+            long minLonIndex = allLongitudes ? 0 : lonIndex(longitude - lonDelta, lonBitCount);
+            long maxLonIndex = allLongitudes ? lonCells - 1 : lonIndex(longitude + lonDelta, lonBitCount);
+            if (!allLongitudes && maxLonIndex < minLonIndex) {
+                // Box crosses the antimeridian
+                maxLonIndex += lonCells;
+            }
+
+            long latSpan = maxLatIndex - minLatIndex + 1;
+            long lonSpan = Math.min(maxLonIndex - minLonIndex + 1, lonCells);
+            if (latSpan * lonSpan > maxCells && precision > 1) {
+                continue;
+            }
+
+            double latCell = 180.0 / (1L << latBitCount);
+            double lonCell = 360.0 / lonCells;
+            long[] cells = new long[(int) (latSpan * lonSpan)];
+            int count = 0;
+
+            for (long latIndex = minLatIndex; latIndex <= maxLatIndex; latIndex++) {
+                double cellMinLat = -90.0 + latIndex * latCell;
+                double nearestLat = clamp(latitude, cellMinLat, cellMinLat + latCell);
+
+                for (long i = 0; i < lonSpan; i++) {
+                    long lonIndex = Math.floorMod(minLonIndex + i, lonCells);
+                    // Measure to the cell copy nearest the centre, across the antimeridian if need be
+                    double cellMinLon = longitude + wrapLongitude(-180.0 + lonIndex * lonCell - longitude);
+                    double nearestLon = clamp(longitude, cellMinLon, cellMinLon + lonCell);
+
+                    if (calculateDistance(latitude, longitude, nearestLat, nearestLon) <= radiusKm) {
+                        cells[count++] = fromIndices(latIndex, lonIndex, precision);
+                    }
+                }
+            }
+
+            long[] covered = Arrays.copyOf(cells, count);
+            Arrays.sort(covered);
+            return new Cover(precision, covered);
+        }
+
+        throw new IllegalStateException("Unreachable: precision 1 always yields a cover");
+    }
+
+    private static long axisIndex(double value, double origin, double span, int bitCount) {
+        long cells = 1L << bitCount;
+        long index = (long) Math.floor((value - origin) / span * cells);
+        return Math.max(0, Math.min(cells - 1, index));
+    }
+
+    /**
+     * Longitude cell index, wrapping values past the antimeridian onto the other side
+     */
+    private static long lonIndex(double longitude, int bitCount) {
+        long cells = 1L << bitCount;
+        return Math.floorMod((long) Math.floor((longitude + 180.0) / 360.0 * cells), cells);
+    }
+
+    /**
+     * Longitude offset normalised to [-180, 180)
+     */
+    private static double wrapLongitude(double delta) {
+        return delta - 360.0 * Math.floor((delta + 180.0) / 360.0);
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static long fromIndices(long latIndex, long lonIndex, int precision) {
+        int latBitCount = precision * 5 / 2;
+        int lonBitCount = (precision * 5 + 1) / 2;
+        long hash = (spread(lonIndex << (AXIS_BITS - lonBitCount)) << 1)
+            | spread(latIndex << (AXIS_BITS - latBitCount));
+        return hash >>> (MAX_BITS - precision * 5);
     }
 
     /**
@@ -205,4 +402,30 @@ public class GeohashService {
         List<String> neighbors = getNeighbors(geohash1);
         return neighbors.contains(geohash2);
     }
+
+    /**
+     * Cells at a single precision that together cover a search circle
+     */
+    public static final class Cover {
+        private final int precision;
+        private final long[] cells;
+
+        Cover(int precision, long[] cells) {
+            this.precision = precision;
+            this.cells = cells;
+        }
+
+        public int getPrecision() { return precision; }
+
+        /**
+         * Sorted long geohashes; do not modify
+         */
+        public long[] getCells() { return cells; }
+
+        public int size() { return cells.length; }
+
+        public boolean contains(long cell) {
+            return Arrays.binarySearch(cells, cell) >= 0;
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.DriverLocation;
+import com.uberclone.backend.model.User;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resident, mutable view of one driver held by {@link DriverLocationIndex}
+ */
+public final class IndexedDriver {
+
+    // Availability word: drivers declare AVAILABLE/UNAVAILABLE, dispatch moves AVAILABLE -> CLAIMED by CAS
+    static final int AVAILABLE = 0;
+    static final int UNAVAILABLE = 1;
+    static final int CLAIMED = 2;
+
+    private final long driverId;
+    private final User driver;
+
+    private volatile Position position;
+    private volatile boolean online;
+    private final AtomicInteger availability = new AtomicInteger(UNAVAILABLE);
+    private volatile String vehicleType;
+
+    // Scoring features, precomputed so ranking never touches the JPA entity
+    private volatile double rating;
+
+    IndexedDriver(User driver, String vehicleType) {
+        this.driverId = driver.getId();
+        this.driver = driver;
+        this.vehicleType = vehicleType;
+        this.rating = driver.getRating() != null ? driver.getRating() : 0.0;
+    }
+
+    public long getDriverId() { return driverId; }
+    public User getDriver() { return driver; }
+    public double getLatitude() { return position.latitude; }
+    public double getLongitude() { return position.longitude; }
+    public long getGeohashBits() { return position.geohash; }
+    public String getGeohash() { return GeohashService.toBase32(position.geohash, GeohashService.MAX_PRECISION); }
+    public LocalDateTime getTimestamp() { return position.timestamp; }
+    public boolean isOnline() { return online; }
+    public boolean isAvailable() { return availability.get() == AVAILABLE; }
+    public boolean isClaimed() { return availability.get() == CLAIMED; }
+    public String getVehicleType() { return vehicleType; }
+    public double getRating() { return rating; }
+
+    /**
+     * Whether this driver currently sits in a bucket (it has a position and is online)
+     */
+    boolean isBucketed() {
+        return position != null && online;
+    }
+
+    void setPosition(double latitude, double longitude, long geohash, LocalDateTime timestamp) {
+        this.position = new Position(latitude, longitude, geohash, timestamp);
+    }
+
+    void setOnline(boolean online) { this.online = online; }
+    void setVehicleType(String vehicleType) { this.vehicleType = vehicleType; }
+    void setRating(double rating) { this.rating = rating; }
+
+    /**
+     * Apply the availability a driver reports. A claimed driver stays claimed until released,
+     * so a stale "available" ping cannot reopen a driver that dispatch already took.
+     */
+    void declareAvailable(boolean available) {
+        int target = available ? AVAILABLE : UNAVAILABLE;
+        int current;
+        do {
+            current = availability.get();
+            if (current == CLAIMED || current == target) {
+                return;
+            }
+        } while (!availability.compareAndSet(current, target));
+    }
+
+    /**
+     * Atomically take an available driver; exactly one concurrent caller wins
+     */
+    boolean tryClaim() {
+        return availability.compareAndSet(AVAILABLE, CLAIMED);
+    }
+
+    /**
+     * Undo a claim that the database refused
+     */
+    void abandonClaim() {
+        availability.compareAndSet(CLAIMED, AVAILABLE);
+    }
+
+    /**
+     * Return the driver to the pool after a ride ends or is cancelled
+     */
+    void release() {
+        availability.set(AVAILABLE);
+    }
+
+    /**
+     * Materialize a detached DriverLocation for callers that expect the JPA shape
+     */
+    public DriverLocation toDriverLocation() {
+        Position current = position;
+        return DriverLocation.builder()
+            .driver(driver)
+            .latitude(current.latitude)
+            .longitude(current.longitude)
+            .geohash(GeohashService.toBase32(current.geohash, GeohashService.MAX_PRECISION))
+            .timestamp(current.timestamp)
+            .isOnline(online)
+            .isAvailable(isAvailable())
+            .vehicleType(vehicleType)
+            .build();
+    }
+
+    /**
+     * Immutable position so readers never observe a torn latitude/longitude pair
+     */
+    private static final class Position {
+        private final double latitude;
+        private final double longitude;
+        private final long geohash;
+        private final LocalDateTime timestamp;
+
+        private Position(double latitude, double longitude, long geohash, LocalDateTime timestamp) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.geohash = geohash;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.uberclone.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A linear model or gradient-boosted tree ensemble compiled into flat primitive arrays.
+ * Feature names are resolved once at load time to slots of the caller's feature vector, so
+ * evaluation is a dot product or a walk over int/double arrays with no allocation.
+ *
+ * <pre>
+ * { "type": "linear", "bias": 4.0, "weights": { "distance_km": 2.1, "is_peak_hour": 3.5 }, "min": 1 }
+ * { "type": "gbt", "bias": 1.0, "max": 3.0, "trees": [ { "nodes": [
+ *     { "feature": "demand_supply_ratio", "threshold": 1.5, "left": 1, "right": 2 },
+ *     { "leaf": 0.0 }, { "leaf": 0.4 } ] } ] }
+ * </pre>
+ * A split sends values below its threshold left. Child indices point forward within their tree,
+ * which rules out cycles.
+ */
+final class LocalModel {
+
+    private static final int LEAF = -1;
+
+    private final double bias;
+    private final double min;
+    private final double max;
+
+    // Linear models: one weight per feature slot
+    private final double[] weights;
+
+    // Tree ensembles: all trees' nodes back to back
+    private final int[] roots;
+    private final int[] splitFeature;
+    private final double[] threshold;
+    private final int[] left;
+    private final int[] right;
+    private final double[] leafValue;
+
+    private LocalModel(double bias, double min, double max, double[] weights, int[] roots, int[] splitFeature,
+                       double[] threshold, int[] left, int[] right, double[] leafValue) {
+        this.bias = bias;
+        this.min = min;
+        this.max = max;
+        this.weights = weights;
+        this.roots = roots;
+        this.splitFeature = splitFeature;
+        this.threshold = threshold;
+        this.left = left;
+        this.right = right;
+        this.leafValue = leafValue;
+    }
+
+    /**
+     * Predict from a feature vector laid out in the slot order the model was compiled against
+     */
+    double evaluate(double[] features) {
+        double sum = bias;
+        if (weights != null) {
+            for (int i = 0; i < weights.length; i++) {
+                sum += weights[i] * features[i];
+            }
+        } else {
+            for (int root : roots) {
+                int node = root;
+                while (splitFeature[node] != LEAF) {
+                    node = features[splitFeature[node]] < threshold[node] ? left[node] : right[node];
+                }
+                sum += leafValue[node];
+            }
+        }
+        return Math.min(max, Math.max(min, sum));
+    }
+
+    /**
+     * Compile a model definition against the given feature slots
+     */
+    static LocalModel compile(JsonNode definition, List<String> slots) {
+        String type = definition.path("type").asText();
+        double bias = definition.path("bias").asDouble(0);
+        double min = definition.path("min").asDouble(Double.NEGATIVE_INFINITY);
+        double max = definition.path("max").asDouble(Double.POSITIVE_INFINITY);
+
+        switch (type) {
+            case "linear": {
+                double[] weights = new double[slots.size()];
+                definition.path("weights").fields().forEachRemaining(
+                    entry -> weights[slot(slots, entry.getKey())] = entry.getValue().asDouble());
+                return new LocalModel(bias, min, max, weights, null, null, null, null, null, null);
+            }
+            case "gbt": {
+                List<Integer> roots = new ArrayList<>();
+                List<JsonNode> nodes = new ArrayList<>();
+                for (JsonNode tree : definition.path("trees")) {
+                    roots.add(nodes.size());
+                    tree.path("nodes").forEach(nodes::add);
+                }
+                int n = nodes.size();
+                int[] splitFeature = new int[n];
+                double[] threshold = new double[n];
+                int[] left = new int[n];
+                int[] right = new int[n];
+                double[] leafValue = new double[n];
+
+                for (int t = 0; t < roots.size(); t++) {
+                    int start = roots.get(t);
+                    int end = t + 1 < roots.size() ? roots.get(t + 1) : n;
+                    if (start == end) {
+                        throw new IllegalArgumentException("Tree " + t + " has no nodes");
+                    }
+                    for (int i = start; i < end; i++) {
+                        JsonNode node = nodes.get(i);
+                        if (node.has("leaf")) {
+                            splitFeature[i] = LEAF;
+                            leafValue[i] = node.get("leaf").asDouble();
+                            continue;
+                        }
+                        splitFeature[i] = slot(slots, node.path("feature").asText());
+                        threshold[i] = node.path("threshold").asDouble();
+                        left[i] = child(node, "left", i, start, end);
+                        right[i] = child(node, "right", i, start, end);
+                    }
+                }
+                return new LocalModel(bias, min, max, null, roots.stream().mapToInt(Integer::intValue).toArray(),
+                    splitFeature, threshold, left, right, leafValue);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown model type: " + type);
+        }
+    }
+
+    private static int slot(List<String> slots, String feature) {
+        int slot = slots.indexOf(feature);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Unknown feature: " + feature);
+        }
+        return slot;
+    }
+
+    private static int child(JsonNode node, String side, int index, int start, int end) {
+        int child = start + node.path(side).asInt(-1);
+        if (child <= index || child >= end) {
+            throw new IllegalArgumentException("Node " + (index - start) + " has an invalid " + side + " child");
+        }
+        return child;
+    }
+}
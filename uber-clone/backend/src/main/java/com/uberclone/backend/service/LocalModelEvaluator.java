@@ -0,0 +1,173 @@
+package com.uberclone.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Evaluates exported ETA and surge models in-process.
+ * Models come from one JSON file ({@code { "version": ..., "models": { "eta": ..., "surge": ... } }},
+ * see {@link LocalModel} for the model format). The file is polled for changes and a new version
+ * replaces the old one atomically; a file that fails to load leaves the current models in place.
+ * Predictions are NaN when no model of that kind is loaded, so callers can fall back to the ML service.
+ */
+@Service
+@Slf4j
+public class LocalModelEvaluator {
+
+    static final List<String> ETA_FEATURES = List.of(
+        "distance_km", "hour_of_day", "day_of_week", "is_peak_hour", "is_weekend", "vehicle_type",
+        "weather", "traffic", "pickup_lat", "pickup_lon", "dropoff_lat", "dropoff_lon");
+    static final List<String> SURGE_FEATURES = List.of(
+        "demand_supply_ratio", "is_peak_hour", "is_weekend", "is_holiday",
+        "current_demand", "available_drivers", "location_lat", "location_lon");
+
+    private static final ThreadLocal<double[]> ETA_VECTOR = ThreadLocal.withInitial(() -> new double[ETA_FEATURES.size()]);
+    private static final ThreadLocal<double[]> SURGE_VECTOR = ThreadLocal.withInitial(() -> new double[SURGE_FEATURES.size()]);
+
+    private final ObjectMapper objectMapper;
+    private final AtomicReference<Models> models = new AtomicReference<>(Models.NONE);
+    private FileTime loadedModifiedTime;
+
+    @Value("${ml.local.model-path:}")
+    private String modelPath;
+
+    public LocalModelEvaluator(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Load the model file if it is new or has changed since the last load
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${ml.local.reload-interval-ms:10000}")
+    public synchronized void reload() {
+        if (modelPath == null || modelPath.isBlank()) {
+            return;
+        }
+        Path path = Path.of(modelPath);
+        try {
+            if (!Files.exists(path)) {
+                return;
+            }
+            FileTime modified = Files.getLastModifiedTime(path);
+            if (modified.equals(loadedModifiedTime)) {
+                return;
+            }
+            Models loaded = parse(objectMapper.readTree(path.toFile()));
+            models.set(loaded);
+            loadedModifiedTime = modified;
+            log.info("Loaded local models version {} (eta: {}, surge: {})",
+                loaded.version(), loaded.eta() != null, loaded.surge() != null);
+        } catch (Exception e) {
+            log.error("Failed to load local models from {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Version of the loaded model file, or null if none is loaded
+     */
+    public String getVersion() {
+        return models.get().version();
+    }
+
+    public boolean hasEtaModel() {
+        return models.get().eta() != null;
+    }
+
+    public boolean hasSurgeModel() {
+        return models.get().surge() != null;
+    }
+
+    /**
+     * Predicted trip minutes, or NaN without a local ETA model
+     */
+    public double predictEtaMinutes(double pickupLat, double pickupLon, double dropoffLat, double dropoffLon,
+                                    String vehicleType, int hourOfDay, int dayOfWeek) {
+        LocalModel model = models.get().eta();
+        if (model == null) {
+            return Double.NaN;
+        }
+        double[] x = ETA_VECTOR.get();
+        x[0] = GeohashService.haversineKm(pickupLat, pickupLon, dropoffLat, dropoffLon);
+        x[1] = hourOfDay;
+        x[2] = dayOfWeek;
+        x[3] = isPeakHour(hourOfDay);
+        x[4] = dayOfWeek >= 6 ? 1 : 0;
+        x[5] = encodeVehicleType(vehicleType);
+        x[6] = 0; // CLEAR until a weather feed exists
+        x[7] = 1; // NORMAL until a traffic feed exists
+        x[8] = pickupLat;
+        x[9] = pickupLon;
+        x[10] = dropoffLat;
+        x[11] = dropoffLon;
+        return model.evaluate(x);
+    }
+
+    /**
+     * Predicted surge multiplier, or NaN without a local surge model
+     */
+    public double predictSurgeMultiplier(double latitude, double longitude, int currentDemand,
+                                         int availableDrivers, int hourOfDay, boolean weekend) {
+        LocalModel model = models.get().surge();
+        if (model == null) {
+            return Double.NaN;
+        }
+        double[] x = SURGE_VECTOR.get();
+        x[0] = (double) currentDemand / Math.max(1, availableDrivers);
+        x[1] = isPeakHour(hourOfDay);
+        x[2] = weekend ? 1 : 0;
+        x[3] = 0;
+        x[4] = currentDemand;
+        x[5] = availableDrivers;
+        x[6] = latitude;
+        x[7] = longitude;
+        return model.evaluate(x);
+    }
+
+    private static Models parse(JsonNode document) {
+        JsonNode definitions = document.path("models");
+        return new Models(
+            document.path("version").asText("unversioned"),
+            definitions.has("eta") ? LocalModel.compile(definitions.get("eta"), ETA_FEATURES) : null,
+            definitions.has("surge") ? LocalModel.compile(definitions.get("surge"), SURGE_FEATURES) : null);
+    }
+
+    private static int isPeakHour(int hour) {
+        return (hour >= 7 && hour <= 9) || (hour >= 17 && hour <= 19) ? 1 : 0;
+    }
+
+    /**
+     * Same encoding as the ML service's training features
+     */
+    private static int encodeVehicleType(String vehicleType) {
+        if (vehicleType == null) {
+            return 0;
+        }
+        switch (vehicleType.toUpperCase(Locale.ROOT)) {
+            case "COMFORT":
+                return 1;
+            case "PREMIUM":
+                return 2;
+            case "POOL":
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    private record Models(String version, LocalModel eta, LocalModel surge) {
+        static final Models NONE = new Models(null, null, null);
+    }
+}
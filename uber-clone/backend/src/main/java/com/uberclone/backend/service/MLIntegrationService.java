@@ -1,30 +1,38 @@
 package com.uberclone.backend.service;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.uberclone.backend.model.Ride;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.client.ResourceAccessException;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.time.ZoneOffset;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class MLIntegrationService {
 
-    private final RestTemplate restTemplate;
+    private final MLServiceClient mlServiceClient;
+    private final LocalModelEvaluator localModelEvaluator;
+    private final TrainingDataExporter trainingDataExporter;
     private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
 
     @Value("${ml.service.url:http://localhost:8000}")
     private String mlServiceUrl;
@@ -32,34 +40,100 @@ public class MLIntegrationService {
     @Value("${ml.service.enabled:true}")
     private boolean mlServiceEnabled;
 
+    @Value("${ml.batch.enabled:true}")
+    private boolean batchingEnabled;
+
+    @Value("${ml.batch.max-size:32}")
+    private int batchMaxSize;
+
+    @Value("${ml.batch.max-wait-ms:5}")
+    private long batchMaxWaitMs;
+
+    @Value("${ml.batch.max-in-flight:4}")
+    private int batchMaxInFlight;
+
+    @Value("${ml.prediction-cache.max-size:20000}")
+    private long predictionCacheMaxSize;
+
+    @Value("${ml.prediction-cache.ttl-seconds:600}")
+    private long predictionCacheTtlSeconds;
+
+    @Value("${ml.prediction-cache.refresh-seconds:240}")
+    private long predictionCacheRefreshSeconds;
+
+    /** Body of the last successful health probe, null while the service is down */
+    private volatile Map<String, Object> lastHealth;
+
+    private PredictionBatcher<Object, Map<String, Object>> etaBatcher;
+    private PredictionBatcher<Object, Map<String, Object>> demandBatcher;
+    private PredictionBatcher<Object, Map<String, Object>> surgeBatcher;
+
+    private ExecutorService predictionExecutor;
+    private PredictionCache<DemandKey, DemandInputs, Integer> demandForecasts;
+    private PredictionCache<SurgeKey, SurgeInputs, BigDecimal> surgePredictions;
+
+    @PostConstruct
+    void start() {
+        if (mlServiceEnabled && batchingEnabled) {
+            etaBatcher = batcher("eta", MLServiceClient.Endpoint.ETA, "/predict/eta/batch");
+            demandBatcher = batcher("demand", MLServiceClient.Endpoint.DEMAND, "/forecast/demand/batch");
+            surgeBatcher = batcher("surge", MLServiceClient.Endpoint.SURGE, "/predict/surge/batch");
+        }
+
+        // Loads block on the ML service, so they get their own threads rather than the common pool
+        predictionExecutor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "ml-prediction-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Duration ttl = Duration.ofSeconds(predictionCacheTtlSeconds);
+        Duration refresh = Duration.ofSeconds(predictionCacheRefreshSeconds);
+        demandForecasts = new PredictionCache<>("mlDemandForecasts", predictionCacheMaxSize, ttl, refresh,
+            predictionExecutor, (key, in) -> loadDemandForecast(in), meterRegistry);
+        surgePredictions = new PredictionCache<>("mlSurgePredictions", predictionCacheMaxSize, ttl, refresh,
+            predictionExecutor, (key, in) -> loadSurgePrediction(in), meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        for (PredictionBatcher<?, ?> batcher : new PredictionBatcher<?, ?>[]{etaBatcher, demandBatcher, surgeBatcher}) {
+            if (batcher != null) {
+                batcher.close();
+            }
+        }
+        if (predictionExecutor != null) {
+            predictionExecutor.shutdown();
+        }
+    }
+
     /**
-     * Get AI-powered ETA prediction
+     * Get AI-powered ETA prediction, from the local model when one is loaded
      */
     public Optional<Integer> predictETAWithML(double pickupLat, double pickupLon, 
                                            double dropoffLat, double dropoffLon,
                                            String vehicleType) {
+        LocalDateTime now = LocalDateTime.now();
+        double localEta = localModelEvaluator.predictEtaMinutes(pickupLat, pickupLon, dropoffLat, dropoffLon,
+            vehicleType, now.getHour(), now.getDayOfWeek().getValue());
+        if (!Double.isNaN(localEta)) {
+            return Optional.of((int) Math.round(localEta));
+        }
+
         if (!mlServiceEnabled) {
             log.debug("ML service is disabled, using fallback ETA calculation");
             return Optional.empty();
         }
 
         try {
-            Map<String, Object> request = new HashMap<>();
-            request.put("pickup_lat", pickupLat);
-            request.put("pickup_lon", pickupLon);
-            request.put("dropoff_lat", dropoffLat);
-            request.put("dropoff_lon", dropoffLon);
-            request.put("vehicle_type", vehicleType);
-            request.put("hour_of_day", LocalTime.now().getHour());
-            request.put("day_of_week", LocalDateTime.now().getDayOfWeek().getValue());
-            request.put("weather_condition", "CLEAR"); // Would come from weather service
-            request.put("traffic_level", "NORMAL"); // Would come from traffic service
+            EtaQuery query = new EtaQuery(pickupLat, pickupLon, dropoffLat, dropoffLon, vehicleType,
+                now.getHour(), now.getDayOfWeek().getValue(),
+                "CLEAR", // Would come from weather service
+                "NORMAL"); // Would come from traffic service
 
-            String url = mlServiceUrl + "/predict/eta";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
+            Optional<Map<String, Object>> response = predict(etaBatcher, MLServiceClient.Endpoint.ETA, "/predict/eta", query);
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> body = response.getBody();
+            if (response.isPresent()) {
+                Map<String, Object> body = response.get();
                 Integer eta = (Integer) body.get("eta_minutes");
                 Double confidence = (Double) body.get("confidence");
                 
@@ -67,8 +141,6 @@ public class MLIntegrationService {
                 return Optional.of(eta);
             }
 
-        } catch (ResourceAccessException e) {
-            log.warn("ML service unavailable: {}", e.getMessage());
         } catch (Exception e) {
             log.error("Error getting ML ETA prediction: {}", e.getMessage(), e);
         }
@@ -77,26 +149,31 @@ public class MLIntegrationService {
     }
 
     /**
-     * Get AI-powered demand forecasting
+     * Get AI-powered demand forecasting, cached per cell and hour
      */
     public Optional<Integer> forecastDemandWithML(double latitude, double longitude, 
                                                String timeRange, LocalDateTime date) {
+        DemandKey key = new DemandKey(predictionCell(latitude, longitude), hourBucket(date), timeRange, "remote");
+        return demandForecasts.get(key, new DemandInputs(latitude, longitude, timeRange, date));
+    }
+
+    private Optional<Integer> loadDemandForecast(DemandInputs in) {
+        double latitude = in.latitude();
+        double longitude = in.longitude();
+        String timeRange = in.timeRange();
+        LocalDateTime date = in.date();
         if (!mlServiceEnabled) {
             return Optional.empty();
         }
 
         try {
-            Map<String, Object> request = new HashMap<>();
-            request.put("location_lat", latitude);
-            request.put("location_lon", longitude);
-            request.put("time_range", timeRange);
-            request.put("date", date.toLocalDate().toString());
+            DemandQuery query = new DemandQuery(latitude, longitude, timeRange, date.toLocalDate().toString());
 
-            String url = mlServiceUrl + "/forecast/demand";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
+            Optional<Map<String, Object>> response =
+                predict(demandBatcher, MLServiceClient.Endpoint.DEMAND, "/forecast/demand", query);
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> body = response.getBody();
+            if (response.isPresent()) {
+                Map<String, Object> body = response.get();
                 Integer predictedDemand = (Integer) body.get("predicted_demand");
                 Double confidence = (Double) body.get("confidence");
                 
@@ -112,29 +189,41 @@ public class MLIntegrationService {
     }
 
     /**
-     * Get AI-powered surge pricing
+     * Get AI-powered surge pricing, cached per cell and hour; the local model is used when one is loaded
      */
     public Optional<BigDecimal> predictSurgePricingWithML(double latitude, double longitude,
                                                          int currentDemand, int availableDrivers,
                                                          LocalDateTime time) {
+        String modelVersion = localModelEvaluator.hasSurgeModel() ? localModelEvaluator.getVersion() : "remote";
+        SurgeKey key = new SurgeKey(predictionCell(latitude, longitude), hourBucket(time), modelVersion);
+        return surgePredictions.get(key, new SurgeInputs(latitude, longitude, currentDemand, availableDrivers, time));
+    }
+
+    private Optional<BigDecimal> loadSurgePrediction(SurgeInputs in) {
+        double latitude = in.latitude();
+        double longitude = in.longitude();
+        int currentDemand = in.currentDemand();
+        int availableDrivers = in.availableDrivers();
+        LocalDateTime time = in.time();
+        double localSurge = localModelEvaluator.predictSurgeMultiplier(latitude, longitude, currentDemand,
+            availableDrivers, time.getHour(), "weekend".equals(getDayType(time)));
+        if (!Double.isNaN(localSurge)) {
+            return Optional.of(BigDecimal.valueOf(localSurge).setScale(2, RoundingMode.HALF_UP));
+        }
+
         if (!mlServiceEnabled) {
             return Optional.empty();
         }
 
         try {
-            Map<String, Object> request = new HashMap<>();
-            request.put("location_lat", latitude);
-            request.put("location_lon", longitude);
-            request.put("current_demand", currentDemand);
-            request.put("available_drivers", availableDrivers);
-            request.put("time_of_day", time.toLocalTime().toString());
-            request.put("day_type", getDayType(time));
-
-            String url = mlServiceUrl + "/predict/surge";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> body = response.getBody();
+            SurgeQuery query = new SurgeQuery(latitude, longitude, currentDemand, availableDrivers,
+                time.toLocalTime().toString(), getDayType(time));
+
+            Optional<Map<String, Object>> response =
+                predict(surgeBatcher, MLServiceClient.Endpoint.SURGE, "/predict/surge", query);
+
+            if (response.isPresent()) {
+                Map<String, Object> body = response.get();
                 Double surgeMultiplier = (Double) body.get("surge_multiplier");
                 Double confidence = (Double) body.get("confidence");
                 
@@ -152,6 +241,7 @@ public class MLIntegrationService {
     /**
      * Get AI-powered driver matching recommendations
      */
+    @SuppressWarnings("unchecked")
     public Optional<List<Map<String, Object>>> getDriverMatchingRecommendations(
             double pickupLat, double pickupLon, String vehicleType, int passengerCount) {
         if (!mlServiceEnabled) {
@@ -167,10 +257,10 @@ public class MLIntegrationService {
             request.put("special_requirements", List.of());
 
             String url = mlServiceUrl + "/match/drivers";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
+            Optional<Map> response = mlServiceClient.post(MLServiceClient.Endpoint.MATCHING, url, request, Map.class);
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> body = response.getBody();
+            if (response.isPresent()) {
+                Map<String, Object> body = response.get();
                 List<Map<String, Object>> matches = (List<Map<String, Object>>) body.get("matches");
                 
                 log.info("ML driver matching: {} recommendations", matches.size());
@@ -194,7 +284,7 @@ public class MLIntegrationService {
 
         try {
             String url = mlServiceUrl + "/train/" + modelType + "-model";
-            restTemplate.postForEntity(url, null, String.class);
+            mlServiceClient.post(MLServiceClient.Endpoint.TRAINING, url, null, String.class);
             log.info("Triggered training for {} model", modelType);
         } catch (Exception e) {
             log.error("Error triggering model training: {}", e.getMessage(), e);
@@ -202,21 +292,24 @@ public class MLIntegrationService {
     }
 
     /**
-     * Get ML service health status
+     * Probe the ML service in the background so health checks never wait on it
      */
-    public boolean isMLServiceHealthy() {
+    @Scheduled(fixedDelayString = "${ml.client.health-interval-ms:5000}")
+    @SuppressWarnings("unchecked")
+    public void refreshHealth() {
         if (!mlServiceEnabled) {
-            return false;
+            return;
         }
+        lastHealth = mlServiceClient.get(MLServiceClient.Endpoint.HEALTH, mlServiceUrl + "/health", Map.class)
+            .map(body -> (Map<String, Object>) body)
+            .orElse(null);
+    }
 
-        try {
-            String url = mlServiceUrl + "/health";
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
-            return response.getStatusCode().is2xxSuccessful();
-        } catch (Exception e) {
-            log.debug("ML service health check failed: {}", e.getMessage());
-            return false;
-        }
+    /**
+     * Get ML service health status from the last probe
+     */
+    public boolean isMLServiceHealthy() {
+        return mlServiceEnabled && lastHealth != null && !mlServiceClient.isCircuitOpen(mlServiceUrl);
     }
 
     /**
@@ -227,24 +320,48 @@ public class MLIntegrationService {
             return Map.of("enabled", false);
         }
 
-        try {
-            String url = mlServiceUrl + "/health";
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
-            
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> capabilities = new HashMap<>();
-                capabilities.put("enabled", true);
-                capabilities.put("ml_frameworks", response.getBody().get("ml_frameworks"));
-                capabilities.put("models", response.getBody().get("models"));
-                return capabilities;
-            }
-        } catch (Exception e) {
-            log.error("Error getting ML service capabilities: {}", e.getMessage(), e);
+        Map<String, Object> health = lastHealth;
+        if (health != null) {
+            Map<String, Object> capabilities = new HashMap<>();
+            capabilities.put("enabled", true);
+            capabilities.put("ml_frameworks", health.get("ml_frameworks"));
+            capabilities.put("models", health.get("models"));
+            return capabilities;
         }
 
         return Map.of("enabled", false, "error", "Service unavailable");
     }
 
+    /**
+     * One prediction, coalesced into a batch when batching is on
+     */
+    @SuppressWarnings("unchecked")
+    private Optional<Map<String, Object>> predict(PredictionBatcher<Object, Map<String, Object>> batcher,
+                                                  MLServiceClient.Endpoint endpoint, String path, Object query) {
+        if (batcher != null) {
+            return batcher.submit(query).join();
+        }
+        return mlServiceClient.post(endpoint, mlServiceUrl + path, query, Map.class)
+            .map(body -> (Map<String, Object>) body);
+    }
+
+    @SuppressWarnings("unchecked")
+    private PredictionBatcher<Object, Map<String, Object>> batcher(String name, MLServiceClient.Endpoint endpoint,
+                                                                   String path) {
+        return new PredictionBatcher<>(name, batchMaxSize, batchMaxWaitMs, batchMaxInFlight,
+            queries -> mlServiceClient.post(endpoint, mlServiceUrl + path, queries, Map.class)
+                .map(body -> (List<Map<String, Object>>) body.get("predictions")),
+            meterRegistry);
+    }
+
+    private static long predictionCell(double latitude, double longitude) {
+        return GeohashService.encodeBits(latitude, longitude, SurgePricingEngine.SURGE_PRECISION);
+    }
+
+    private static long hourBucket(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 3600;
+    }
+
     /**
      * Determine day type for ML service
      */
@@ -260,49 +377,52 @@ public class MLIntegrationService {
     }
 
     /**
-     * Batch process ride data for ML training
+     * Stream completed rides to the ML service for training, resuming after the last stored chunk
      */
-    public void sendRideDataForTraining(List<Ride> rides) {
-        if (!mlServiceEnabled || rides.isEmpty()) {
-            return;
-        }
-
+    public long sendRideDataForTraining() {
         try {
-            // Convert rides to training data format
-            List<Map<String, Object>> trainingData = rides.stream()
-                .map(this::convertRideToTrainingData)
-                .toList();
-
-            // Send to ML service for training
-            String url = mlServiceUrl + "/training/ride-data";
-            restTemplate.postForEntity(url, trainingData, String.class);
-            
-            log.info("Sent {} ride records for ML training", rides.size());
+            return trainingDataExporter.exportCompletedRides();
         } catch (Exception e) {
             log.error("Error sending ride data for training: {}", e.getMessage(), e);
+            return 0;
         }
     }
 
-    /**
-     * Convert Ride entity to ML training data format
-     */
-    private Map<String, Object> convertRideToTrainingData(Ride ride) {
-        Map<String, Object> trainingData = new HashMap<>();
-        
-        trainingData.put("pickup_lat", ride.getPickupLatitude());
-        trainingData.put("pickup_lon", ride.getPickupLongitude());
-        trainingData.put("dropoff_lat", ride.getDropoffLatitude());
-        trainingData.put("dropoff_lon", ride.getDropoffLongitude());
-        trainingData.put("distance", ride.getDistance());
-        trainingData.put("duration", ride.getActualDuration());
-        trainingData.put("fare", ride.getTotalFare());
-        // Note: Ride model doesn't have vehicleType field
-        // trainingData.put("vehicle_type", ride.getVehicleType());
-        trainingData.put("hour_of_day", ride.getRequestedAt().getHour());
-        trainingData.put("day_of_week", ride.getRequestedAt().getDayOfWeek().getValue());
-        trainingData.put("month", ride.getRequestedAt().getMonthValue());
-        trainingData.put("is_weekend", ride.getRequestedAt().getDayOfWeek().getValue() > 5);
-        
-        return trainingData;
+    private record DemandKey(long cell, long hour, String timeRange, String modelVersion) {
+    }
+
+    private record DemandInputs(double latitude, double longitude, String timeRange, LocalDateTime date) {
+    }
+
+    private record SurgeKey(long cell, long hour, String modelVersion) {
+    }
+
+    private record SurgeInputs(double latitude, double longitude, int currentDemand, int availableDrivers,
+                               LocalDateTime time) {
+    }
+
+    public record EtaQuery(@JsonProperty("pickup_lat") double pickupLat,
+                           @JsonProperty("pickup_lon") double pickupLon,
+                           @JsonProperty("dropoff_lat") double dropoffLat,
+                           @JsonProperty("dropoff_lon") double dropoffLon,
+                           @JsonProperty("vehicle_type") String vehicleType,
+                           @JsonProperty("hour_of_day") int hourOfDay,
+                           @JsonProperty("day_of_week") int dayOfWeek,
+                           @JsonProperty("weather_condition") String weatherCondition,
+                           @JsonProperty("traffic_level") String trafficLevel) {
+    }
+
+    public record DemandQuery(@JsonProperty("location_lat") double locationLat,
+                              @JsonProperty("location_lon") double locationLon,
+                              @JsonProperty("time_range") String timeRange,
+                              @JsonProperty("date") String date) {
+    }
+
+    public record SurgeQuery(@JsonProperty("location_lat") double locationLat,
+                             @JsonProperty("location_lon") double locationLon,
+                             @JsonProperty("current_demand") int currentDemand,
+                             @JsonProperty("available_drivers") int availableDrivers,
+                             @JsonProperty("time_of_day") String timeOfDay,
+                             @JsonProperty("day_type") String dayType) {
     }
 }
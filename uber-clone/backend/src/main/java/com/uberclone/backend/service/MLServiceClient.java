@@ -0,0 +1,148 @@
+package com.uberclone.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * HTTP client for the ML services.
+ * All calls share one pooled keep-alive client; each endpoint has its own read deadline and each
+ * ML host its own circuit breaker. Calls never throw: a timeout, a server error or an open circuit
+ * all come back as empty so callers drop straight to their heuristic fallback.
+ */
+@Service
+@Slf4j
+public class MLServiceClient {
+
+    public enum Endpoint {
+        ETA(250),
+        DEMAND(500),
+        SURGE(250),
+        MATCHING(500),
+        HEALTH(500),
+        TRAINING(10_000);
+
+        private final long defaultReadTimeoutMs;
+
+        Endpoint(long defaultReadTimeoutMs) {
+            this.defaultReadTimeoutMs = defaultReadTimeoutMs;
+        }
+    }
+
+    private final Map<Endpoint, RestTemplate> templates = new EnumMap<>(Endpoint.class);
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter shortCircuited;
+
+    public MLServiceClient(HttpClient httpClient, Environment environment,
+                           @Value("${ml.client.circuit.failure-threshold:5}") int failureThreshold,
+                           @Value("${ml.client.circuit.open-ms:10000}") long openMillis,
+                           MeterRegistry meterRegistry) {
+        for (Endpoint endpoint : Endpoint.values()) {
+            long readTimeoutMs = environment.getProperty(
+                "ml.client.read-timeout-ms." + endpoint.name().toLowerCase(Locale.ROOT),
+                Long.class, endpoint.defaultReadTimeoutMs);
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+            requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+            templates.put(endpoint, new RestTemplate(requestFactory));
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+
+        this.meterRegistry = meterRegistry;
+        this.shortCircuited = Counter.builder("ml.client.short.circuited")
+            .description("ML calls refused because the circuit was open")
+            .register(meterRegistry);
+        Gauge.builder("ml.client.circuit.open", breakers,
+                b -> b.values().stream().filter(breaker -> breaker.getState() != CircuitBreaker.State.CLOSED).count())
+            .description("ML hosts whose circuit is open or half-open")
+            .register(meterRegistry);
+    }
+
+    /**
+     * POST a JSON body and read the response, or empty if the call failed or was refused
+     */
+    public <T> Optional<T> post(Endpoint endpoint, String url, Object body, Class<T> responseType) {
+        return exchange(endpoint, url, template -> template.postForEntity(url, body, responseType));
+    }
+
+    /**
+     * GET a response, or empty if the call failed or was refused
+     */
+    public <T> Optional<T> get(Endpoint endpoint, String url, Class<T> responseType) {
+        return exchange(endpoint, url, template -> template.getForEntity(url, responseType));
+    }
+
+    /**
+     * Whether calls to the host of this URL are currently refused
+     */
+    public boolean isCircuitOpen(String url) {
+        CircuitBreaker breaker = breakers.get(hostOf(url));
+        return breaker != null && breaker.getState() == CircuitBreaker.State.OPEN;
+    }
+
+    private <T> Optional<T> exchange(Endpoint endpoint, String url,
+                                     Function<RestTemplate, ResponseEntity<T>> call) {
+        CircuitBreaker breaker = breakers.computeIfAbsent(hostOf(url),
+            host -> new CircuitBreaker(failureThreshold, openMillis, System::nanoTime));
+        if (!breaker.tryAcquire()) {
+            shortCircuited.increment();
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            ResponseEntity<T> response = call.apply(templates.get(endpoint));
+            breaker.onSuccess();
+            return response.getStatusCode().is2xxSuccessful()
+                ? Optional.ofNullable(response.getBody())
+                : Optional.empty();
+        } catch (HttpClientErrorException e) {
+            // The service answered; a bad request says nothing about its health
+            breaker.onSuccess();
+            outcome = "client_error";
+            log.warn("ML {} call rejected: {}", endpoint, e.getMessage());
+            return Optional.empty();
+        } catch (RuntimeException e) {
+            breaker.onFailure();
+            outcome = "failure";
+            log.warn("ML {} call failed: {}", endpoint, e.getMessage());
+            return Optional.empty();
+        } finally {
+            Timer.builder("ml.client.request")
+                .tag("endpoint", endpoint.name())
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String hostOf(String url) {
+        URI uri = URI.create(url);
+        return uri.getHost() + ":" + uri.getPort();
+    }
+}
@@ -0,0 +1,181 @@
+package com.uberclone.backend.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent prediction calls into batched requests.
+ * A batch is cut when it reaches the maximum size or when its oldest query has waited the maximum
+ * wait, then sent on one of a few sender threads. While every sender is busy, queries keep piling
+ * up, so batches grow under load instead of queueing behind each other. The batch call answers in
+ * query order; a failed batch answers every query with empty.
+ */
+@Slf4j
+final class PredictionBatcher<Q, R> implements AutoCloseable {
+
+    private final String name;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final Function<List<Q>, Optional<List<R>>> batchCall;
+
+    private final LinkedBlockingQueue<Pending<Q, R>> queue = new LinkedBlockingQueue<>();
+    private final Semaphore inFlight;
+    private final ExecutorService senders;
+    private final Thread collector;
+    private volatile boolean closed;
+
+    private final DistributionSummary batchSize;
+    private final Timer queueWait;
+    private final Timer batchLatency;
+
+    PredictionBatcher(String name, int maxBatchSize, long maxWaitMillis, int maxInFlight,
+                      Function<List<Q>, Optional<List<R>>> batchCall, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.batchCall = batchCall;
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        this.senders = Executors.newFixedThreadPool(Math.max(1, maxInFlight), runnable -> {
+            Thread thread = new Thread(runnable, "ml-batch-" + name + "-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.batchSize = DistributionSummary.builder("ml.batch.size")
+            .description("Predictions per batched ML call")
+            .tag("model", name)
+            .register(meterRegistry);
+        this.queueWait = Timer.builder("ml.batch.wait")
+            .description("Time a prediction waited for its batch to be sent")
+            .tag("model", name)
+            .register(meterRegistry);
+        this.batchLatency = Timer.builder("ml.batch.latency")
+            .description("Round trip of one batched ML call")
+            .tag("model", name)
+            .register(meterRegistry);
+        Gauge.builder("ml.batch.pending", queue, LinkedBlockingQueue::size)
+            .description("Predictions waiting to be batched")
+            .tag("model", name)
+            .register(meterRegistry);
+
+        this.collector = new Thread(this::collect, "ml-batch-" + name);
+        this.collector.setDaemon(true);
+        this.collector.start();
+    }
+
+    /**
+     * Queue a prediction; the future always completes, with empty if the batch failed
+     */
+    CompletableFuture<Optional<R>> submit(Q query) {
+        Pending<Q, R> pending = new Pending<>(query, System.nanoTime(), new CompletableFuture<>());
+        if (closed) {
+            pending.result.complete(Optional.empty());
+            return pending.result;
+        }
+        queue.add(pending);
+        if (closed && queue.remove(pending)) {
+            // Raced with close(); nobody will drain the queue any more
+            pending.result.complete(Optional.empty());
+        }
+        return pending.result;
+    }
+
+    private void collect() {
+        List<Pending<Q, R>> batch = new ArrayList<>(maxBatchSize);
+        while (!closed) {
+            try {
+                // Wait for a free sender first, so the batch keeps filling while all of them are busy
+                inFlight.acquire();
+                Pending<Q, R> first = queue.take();
+                batch.add(first);
+                long deadline = first.enqueuedAt + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending<Q, R> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                List<Pending<Q, R>> cut = List.copyOf(batch);
+                senders.execute(() -> send(cut));
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("ML batcher {} failed to dispatch a batch: {}", name, e.getMessage(), e);
+                batch.forEach(pending -> pending.result.complete(Optional.empty()));
+                batch.clear();
+                inFlight.release();
+            }
+        }
+        batch.forEach(pending -> pending.result.complete(Optional.empty()));
+    }
+
+    private void send(List<Pending<Q, R>> batch) {
+        try {
+            long start = System.nanoTime();
+            List<Q> queries = new ArrayList<>(batch.size());
+            for (Pending<Q, R> pending : batch) {
+                queueWait.record(start - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+                queries.add(pending.query);
+            }
+            batchSize.record(batch.size());
+
+            Optional<List<R>> results = Optional.empty();
+            try {
+                results = batchCall.apply(queries);
+            } catch (RuntimeException e) {
+                log.warn("ML batch {} of {} failed: {}", name, batch.size(), e.getMessage());
+            }
+            batchLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            if (results.isPresent() && results.get().size() == batch.size()) {
+                List<R> answers = results.get();
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).result.complete(Optional.ofNullable(answers.get(i)));
+                }
+            } else {
+                results.ifPresent(answers -> log.warn("ML batch {} answered {} of {} predictions",
+                    name, answers.size(), batch.size()));
+                batch.forEach(pending -> pending.result.complete(Optional.empty()));
+            }
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        collector.interrupt();
+        senders.shutdown();
+        Pending<Q, R> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.complete(Optional.empty());
+        }
+    }
+
+    private record Pending<Q, R>(Q query, long enqueuedAt, CompletableFuture<Optional<R>> result) {
+    }
+}
@@ -0,0 +1,87 @@
+package com.uberclone.backend.service;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+
+/**
+ * Time-bounded cache of ML predictions with refresh-ahead.
+ * Keys identify what a prediction is about (cell, hour bucket, model version); the inputs of the
+ * latest call for a key are kept alongside so a refresh re-predicts from current figures. Entries
+ * older than the refresh interval are re-predicted in the background on their next hit while the
+ * old value is served, and expire outright after the TTL. Concurrent misses on one key share a
+ * single in-flight prediction. Empty predictions are not cached, and a refresh that comes back
+ * empty keeps the old value.
+ */
+final class PredictionCache<K, I, V> {
+
+    private final AsyncLoadingCache<K, V> cache;
+    private final Map<K, I> latestInputs = new ConcurrentHashMap<>();
+    private final BiFunction<K, I, Optional<V>> predictor;
+    private final Counter refreshes;
+
+    PredictionCache(String name, long maxSize, Duration ttl, Duration refreshAfter, Executor executor,
+                    BiFunction<K, I, Optional<V>> predictor, MeterRegistry meterRegistry) {
+        this.predictor = predictor;
+        this.refreshes = Counter.builder("ml.prediction.cache.refreshes")
+            .description("Background re-predictions of hot cache entries")
+            .tag("cache", name)
+            .register(meterRegistry);
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .refreshAfterWrite(refreshAfter)
+            .executor(executor)
+            .evictionListener((K key, V value, RemovalCause cause) ->
+                latestInputs.remove(key))
+            .recordStats()
+            .buildAsync(new CacheLoader<K, V>() {
+                @Override
+                public V load(K key) {
+                    V value = predict(key);
+                    if (value == null) {
+                        latestInputs.remove(key);
+                    }
+                    return value;
+                }
+
+                @Override
+                public V reload(K key, V oldValue) {
+                    refreshes.increment();
+                    V value = predict(key);
+                    return value != null ? value : oldValue;
+                }
+            });
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    /**
+     * Cached prediction for the key, predicting from these inputs on a miss
+     */
+    Optional<V> get(K key, I inputs) {
+        latestInputs.put(key, inputs);
+        try {
+            return Optional.ofNullable(cache.get(key).join());
+        } catch (CompletionException e) {
+            return Optional.empty();
+        }
+    }
+
+    private V predict(K key) {
+        I inputs = latestInputs.get(key);
+        return inputs == null ? null : predictor.apply(key, inputs).orElse(null);
+    }
+}
@@ -5,29 +5,38 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class PricingService {
 
+    /**
+     * Vehicle types offered to riders, in display order
+     */
+    public static final List<String> VEHICLE_TYPES = List.of("STANDARD", "COMFORT", "PREMIUM", "POOL");
+
     // Base pricing constants
     private static final BigDecimal BASE_FARE = new BigDecimal("2.50");
     private static final BigDecimal PER_KM_RATE = new BigDecimal("1.50");
     private static final BigDecimal PER_MINUTE_RATE = new BigDecimal("0.30");
     
-    // Surge pricing constants
-    private static final BigDecimal PEAK_HOUR_MULTIPLIER = new BigDecimal("1.2");
+    // Time-of-day multipliers
+    private static final Multiplier NO_MULTIPLIER = new Multiplier(BigDecimal.ONE, FareEngine.MULTIPLIER_SCALE);
+    private static final Multiplier PEAK_HOUR_MULTIPLIER = Multiplier.of("1.2");
     
     // Vehicle type multipliers
-    private static final BigDecimal STANDARD_MULTIPLIER = new BigDecimal("1.0");
-    private static final BigDecimal COMFORT_MULTIPLIER = new BigDecimal("1.3");
-    private static final BigDecimal PREMIUM_MULTIPLIER = new BigDecimal("1.8");
-    private static final BigDecimal POOL_MULTIPLIER = new BigDecimal("0.7");
+    private static final Multiplier STANDARD_MULTIPLIER = Multiplier.of("1.0");
+    private static final Multiplier COMFORT_MULTIPLIER = Multiplier.of("1.3");
+    private static final Multiplier PREMIUM_MULTIPLIER = Multiplier.of("1.8");
+    private static final Multiplier POOL_MULTIPLIER = Multiplier.of("0.7");
 
     private final GeohashService geohashService;
+    private final SurgePricingEngine surgePricingEngine;
 
     /**
      * Calculate total fare for a ride
@@ -35,36 +44,14 @@ public class PricingService {
     public BigDecimal calculateFare(double pickupLat, double pickupLon, 
                                    double dropoffLat, double dropoffLon,
                                    String vehicleType, LocalTime requestTime) {
-        
-        // Calculate distance
-        double distanceKm = geohashService.calculateDistance(pickupLat, pickupLon, dropoffLat, dropoffLon);
-        
-        // Calculate estimated time (assuming 30 km/h average speed)
-        int estimatedMinutes = (int) Math.ceil(distanceKm * 2); // 2 minutes per km
-        
-        // Calculate base components
-        BigDecimal distanceFare = PER_KM_RATE.multiply(BigDecimal.valueOf(distanceKm));
-        BigDecimal timeFare = PER_MINUTE_RATE.multiply(BigDecimal.valueOf(estimatedMinutes));
-        
-        // Apply vehicle type multiplier
-        BigDecimal vehicleMultiplier = getVehicleMultiplier(vehicleType);
-        BigDecimal subtotal = BASE_FARE.add(distanceFare).add(timeFare);
-        BigDecimal vehicleAdjustedFare = subtotal.multiply(vehicleMultiplier);
-        
-        // Apply peak hour multiplier
-        BigDecimal peakAdjustedFare = applyPeakHourMultiplier(vehicleAdjustedFare, requestTime);
-        
-        // Apply surge pricing if applicable
-        BigDecimal finalFare = applySurgePricing(peakAdjustedFare, pickupLat, pickupLon, requestTime);
-        
-        // Round to 2 decimal places
-        return finalFare.setScale(2, RoundingMode.HALF_UP);
+        return calculateFareBreakdown(pickupLat, pickupLon, dropoffLat, dropoffLon, vehicleType, requestTime)
+            .getTotalFare();
     }
 
     /**
      * Get vehicle type multiplier
      */
-    private BigDecimal getVehicleMultiplier(String vehicleType) {
+    private Multiplier getVehicleMultiplier(String vehicleType) {
         if (vehicleType == null) return STANDARD_MULTIPLIER;
         
         return switch (vehicleType.toUpperCase()) {
@@ -76,19 +63,16 @@ public class PricingService {
     }
 
     /**
-     * Apply peak hour multiplier
+     * Get peak hour multiplier
      */
-    private BigDecimal applyPeakHourMultiplier(BigDecimal fare, LocalTime requestTime) {
-        if (isPeakHour(requestTime)) {
-            return fare.multiply(PEAK_HOUR_MULTIPLIER);
-        }
-        return fare;
+    private Multiplier getPeakHourMultiplier(LocalTime requestTime) {
+        return isPeakHour(requestTime) ? PEAK_HOUR_MULTIPLIER : NO_MULTIPLIER;
     }
 
     /**
      * Check if request time is during peak hours
      */
-    private boolean isPeakHour(LocalTime time) {
+    boolean isPeakHour(LocalTime time) {
         // Morning peak: 7-9 AM
         LocalTime morningStart = LocalTime.of(7, 0);
         LocalTime morningEnd = LocalTime.of(9, 0);
@@ -102,112 +86,85 @@ public class PricingService {
     }
 
     /**
-     * Apply surge pricing based on demand and location
+     * Look up the surge multiplier for the pickup cell in the current surge snapshot
      */
-    private BigDecimal applySurgePricing(BigDecimal fare, double latitude, double longitude, LocalTime requestTime) {
-        // This is a simplified surge pricing algorithm
-        // In a real implementation, this would consider:
-        // - Current demand in the area
-        // - Number of available drivers
-        // - Historical demand patterns
-        // - Special events or weather conditions
-        
-        BigDecimal surgeMultiplier = calculateSurgeMultiplier(latitude, longitude, requestTime);
-        
-        if (surgeMultiplier.compareTo(BigDecimal.ONE) > 0) {
-            log.info("Applying surge pricing multiplier: {}x", surgeMultiplier);
+    private Multiplier calculateSurgeMultiplier(double latitude, double longitude) {
+        int surge = surgePricingEngine.getSurgeMultiplier(latitude, longitude);
+        if (surge == SurgeSnapshot.NO_SURGE) {
+            return NO_MULTIPLIER;
         }
-        
-        return fare.multiply(surgeMultiplier);
+        return new Multiplier(BigDecimal.valueOf(surge, 2), surge);
     }
 
     /**
-     * Calculate surge pricing multiplier
+     * Calculate fare breakdown.
+     * Each multiplier is evaluated once and the total is computed in fixed point; the
+     * BigDecimal components are only materialised when read.
      */
-    private BigDecimal calculateSurgeMultiplier(double latitude, double longitude, LocalTime requestTime) {
-        // Simplified surge calculation
-        // In reality, this would query a demand analysis service
+    public FareBreakdown calculateFareBreakdown(double pickupLat, double pickupLon,
+                                               double dropoffLat, double dropoffLon,
+                                               String vehicleType, LocalTime requestTime) {
         
-        // Weekend nights typically have higher demand
-        if (isWeekendNight(requestTime)) {
-            return new BigDecimal("1.5");
-        }
+        double distanceKm = geohashService.calculateDistance(pickupLat, pickupLon, dropoffLat, dropoffLon);
+        int estimatedMinutes = FareEngine.estimatedMinutes(distanceKm);
         
-        // Business districts during business hours
-        if (isBusinessDistrict(latitude, longitude) && isBusinessHours(requestTime)) {
-            return new BigDecimal("1.3");
-        }
+        Multiplier peakHourMultiplier = getPeakHourMultiplier(requestTime);
+        Multiplier surgeMultiplier = calculateSurgeMultiplier(pickupLat, pickupLon);
         
-        return BigDecimal.ONE;
+        return buildBreakdown(distanceKm, estimatedMinutes, getVehicleMultiplier(vehicleType),
+            peakHourMultiplier, surgeMultiplier);
     }
 
     /**
-     * Check if it's weekend night (higher demand)
+     * Calculate fare breakdowns for every vehicle type in one pass.
+     * Distance, duration, peak and surge are shared; only the vehicle multiplier varies.
      */
-    private boolean isWeekendNight(LocalTime time) {
-        // Weekend nights: 10 PM - 2 AM
-        LocalTime nightStart = LocalTime.of(22, 0);
-        LocalTime nightEnd = LocalTime.of(2, 0);
+    public Map<String, FareBreakdown> calculateFareBreakdowns(double pickupLat, double pickupLon,
+                                                             double dropoffLat, double dropoffLon,
+                                                             LocalTime requestTime) {
         
-        return time.isAfter(nightStart) || time.isBefore(nightEnd);
-    }
-
-    /**
-     * Check if location is in business district
-     */
-    private boolean isBusinessDistrict(double latitude, double longitude) {
-        // Simplified business district check
-        // In reality, this would query a geospatial database
+        double distanceKm = geohashService.calculateDistance(pickupLat, pickupLon, dropoffLat, dropoffLon);
+        int estimatedMinutes = FareEngine.estimatedMinutes(distanceKm);
         
-        // Example: Downtown area coordinates (this would be configurable)
-        double downtownLat = 40.7589; // Example: NYC coordinates
-        double downtownLon = -73.9851;
-        double radiusKm = 2.0;
+        Multiplier peakHourMultiplier = getPeakHourMultiplier(requestTime);
+        Multiplier surgeMultiplier = calculateSurgeMultiplier(pickupLat, pickupLon);
         
-        double distance = geohashService.calculateDistance(latitude, longitude, downtownLat, downtownLon);
-        return distance <= radiusKm;
+        Map<String, FareBreakdown> breakdowns = new LinkedHashMap<>();
+        for (String vehicleType : VEHICLE_TYPES) {
+            breakdowns.put(vehicleType, buildBreakdown(distanceKm, estimatedMinutes,
+                getVehicleMultiplier(vehicleType), peakHourMultiplier, surgeMultiplier));
+        }
+        return breakdowns;
     }
 
-    /**
-     * Check if it's business hours
-     */
-    private boolean isBusinessHours(LocalTime time) {
-        LocalTime businessStart = LocalTime.of(8, 0);
-        LocalTime businessEnd = LocalTime.of(18, 0);
+    private FareBreakdown buildBreakdown(double distanceKm, int estimatedMinutes, Multiplier vehicleMultiplier,
+                                         Multiplier peakHourMultiplier, Multiplier surgeMultiplier) {
+        if (surgeMultiplier.hundredths() > FareEngine.MULTIPLIER_SCALE) {
+            log.info("Applying surge pricing multiplier: {}x", surgeMultiplier.value());
+        }
+        
+        long totalCents = FareEngine.totalCents(distanceKm, estimatedMinutes,
+            vehicleMultiplier.hundredths(), peakHourMultiplier.hundredths(), surgeMultiplier.hundredths());
         
-        return time.isAfter(businessStart) && time.isBefore(businessEnd);
+        FareBreakdown breakdown = new FareBreakdown();
+        breakdown.baseFare = BASE_FARE;
+        breakdown.vehicleMultiplier = vehicleMultiplier.value();
+        breakdown.peakHourMultiplier = peakHourMultiplier.value();
+        breakdown.surgeMultiplier = surgeMultiplier.value();
+        breakdown.totalCents = totalCents;
+        breakdown.estimatedDistance = distanceKm;
+        breakdown.estimatedDuration = estimatedMinutes;
+        return breakdown;
     }
 
     /**
-     * Calculate fare breakdown
+     * A multiplier as shown to riders and as used by the fixed-point engine
      */
-    public FareBreakdown calculateFareBreakdown(double pickupLat, double pickupLon,
-                                               double dropoffLat, double dropoffLon,
-                                               String vehicleType, LocalTime requestTime) {
-        
-        double distanceKm = geohashService.calculateDistance(pickupLat, pickupLon, dropoffLat, dropoffLon);
-        int estimatedMinutes = (int) Math.ceil(distanceKm * 2);
-        
-        BigDecimal distanceFare = PER_KM_RATE.multiply(BigDecimal.valueOf(distanceKm));
-        BigDecimal timeFare = PER_MINUTE_RATE.multiply(BigDecimal.valueOf(estimatedMinutes));
-        BigDecimal vehicleMultiplier = getVehicleMultiplier(vehicleType);
-        
-        BigDecimal subtotal = BASE_FARE.add(distanceFare).add(timeFare);
-        BigDecimal vehicleAdjustedFare = subtotal.multiply(vehicleMultiplier);
-        BigDecimal peakAdjustedFare = applyPeakHourMultiplier(vehicleAdjustedFare, requestTime);
-        BigDecimal finalFare = applySurgePricing(peakAdjustedFare, pickupLat, pickupLon, requestTime);
-        
-        return FareBreakdown.builder()
-            .baseFare(BASE_FARE)
-            .distanceFare(distanceFare)
-            .timeFare(timeFare)
-            .vehicleMultiplier(vehicleMultiplier)
-            .peakHourMultiplier(isPeakHour(requestTime) ? PEAK_HOUR_MULTIPLIER : BigDecimal.ONE)
-            .surgeMultiplier(calculateSurgeMultiplier(pickupLat, pickupLon, requestTime))
-            .totalFare(finalFare.setScale(2, RoundingMode.HALF_UP))
-            .estimatedDistance(distanceKm)
-            .estimatedDuration(estimatedMinutes)
-            .build();
+    private record Multiplier(BigDecimal value, long hundredths) {
+        static Multiplier of(String value) {
+            BigDecimal decimal = new BigDecimal(value);
+            return new Multiplier(decimal, decimal.movePointRight(2).longValueExact());
+        }
     }
 
     /**
@@ -221,6 +178,7 @@ public class PricingService {
         private BigDecimal peakHourMultiplier;
         private BigDecimal surgeMultiplier;
         private BigDecimal totalFare;
+        private long totalCents;
         private double estimatedDistance;
         private int estimatedDuration;
         
@@ -282,14 +240,33 @@ public class PricingService {
             }
         }
         
-        // Getters
+        // Getters; the monetary components are derived on first read
         public BigDecimal getBaseFare() { return baseFare; }
-        public BigDecimal getDistanceFare() { return distanceFare; }
-        public BigDecimal getTimeFare() { return timeFare; }
         public BigDecimal getVehicleMultiplier() { return vehicleMultiplier; }
         public BigDecimal getPeakHourMultiplier() { return peakHourMultiplier; }
         public BigDecimal getSurgeMultiplier() { return surgeMultiplier; }
-        public BigDecimal getTotalFare() { return totalFare; }
+
+        public BigDecimal getDistanceFare() {
+            if (distanceFare == null) {
+                distanceFare = PER_KM_RATE.multiply(BigDecimal.valueOf(estimatedDistance));
+            }
+            return distanceFare;
+        }
+
+        public BigDecimal getTimeFare() {
+            if (timeFare == null) {
+                timeFare = PER_MINUTE_RATE.multiply(BigDecimal.valueOf(estimatedDuration));
+            }
+            return timeFare;
+        }
+
+        public BigDecimal getTotalFare() {
+            if (totalFare == null) {
+                totalFare = BigDecimal.valueOf(totalCents, 2);
+            }
+            return totalFare;
+        }
+
         public double getEstimatedDistance() { return estimatedDistance; }
         public int getEstimatedDuration() { return estimatedDuration; }
     }
@@ -0,0 +1,193 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.Ride;
+import com.uberclone.backend.model.RideEvent;
+import com.uberclone.backend.repository.RideEventRepository;
+import com.uberclone.backend.repository.RideRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Delivers the ride event outbox to the STOMP broker and NotificationService.
+ * Ride changes only write a {@link RideEvent} in their own transaction; this relay locks batches
+ * of pending events, pushes the ride's current state and the notifications for the event's status,
+ * and marks them published in the same short transaction. Delivery is at least once: a relay
+ * that dies mid-batch leaves its events pending for the next one. A failed event is retried with
+ * backoff and holds back later events of its ride until it is delivered or given up on.
+ */
+@Service
+@Slf4j
+public class RideEventRelay {
+
+    private static final int MAX_BATCHES_PER_RUN = 20;
+
+    private final RideEventRepository rideEventRepository;
+    private final RideRepository rideRepository;
+    private final NotificationService notificationService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter delivered;
+    private final Counter failed;
+    private final Counter abandoned;
+    private final Timer lag;
+
+    @Value("${ride.events.relay.batch-size:200}")
+    private int batchSize;
+
+    @Value("${ride.events.relay.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${ride.events.relay.max-backoff-ms:60000}")
+    private long maxBackoffMillis;
+
+    @Value("${ride.events.retention-hours:24}")
+    private long retentionHours;
+
+    public RideEventRelay(RideEventRepository rideEventRepository, RideRepository rideRepository,
+                          NotificationService notificationService, SimpMessagingTemplate messagingTemplate,
+                          PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.rideEventRepository = rideEventRepository;
+        this.rideRepository = rideRepository;
+        this.notificationService = notificationService;
+        this.messagingTemplate = messagingTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        this.delivered = Counter.builder("ride.events.delivered")
+            .description("Ride events pushed and notified")
+            .register(meterRegistry);
+        this.failed = Counter.builder("ride.events.failed")
+            .description("Ride event deliveries that failed and will be retried")
+            .register(meterRegistry);
+        this.abandoned = Counter.builder("ride.events.abandoned")
+            .description("Ride events given up on after the maximum attempts")
+            .register(meterRegistry);
+        this.lag = Timer.builder("ride.events.lag")
+            .description("Time from a ride event being written to its delivery")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Drain pending events; each batch holds at most one event per ride
+     */
+    @Scheduled(fixedDelayString = "${ride.events.relay.interval-ms:200}")
+    public void relay() {
+        for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+            Integer published = transactionTemplate.execute(status -> relayBatch());
+            if (published == null || published == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drop delivered events past the retention period
+     */
+    @Scheduled(cron = "${ride.events.purge-cron:0 15 * * * *}")
+    public void purgePublished() {
+        Integer purged = transactionTemplate.execute(status ->
+            rideEventRepository.deletePublishedBefore(LocalDateTime.now().minusHours(retentionHours)));
+        if (purged != null && purged > 0) {
+            log.info("Purged {} delivered ride events", purged);
+        }
+    }
+
+    private int relayBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<RideEvent> events = rideEventRepository.lockDeliverable(maxAttempts, now, batchSize);
+        int published = 0;
+        for (RideEvent event : events) {
+            try {
+                deliver(event);
+                event.setPublishedAt(LocalDateTime.now());
+                lag.record(Duration.between(event.getCreatedAt(), event.getPublishedAt()));
+                delivered.increment();
+                published++;
+            } catch (RuntimeException e) {
+                int attempts = event.getAttempts() + 1;
+                event.setAttempts(attempts);
+                event.setLastError(e.getMessage());
+                event.setAvailableAt(now.plus(backoff(attempts)));
+                if (attempts >= maxAttempts) {
+                    abandoned.increment();
+                    log.error("Giving up on ride event {} ({} for ride {}) after {} attempts: {}",
+                        event.getId(), event.getStatus(), event.getRideId(), attempts, e.getMessage());
+                } else {
+                    failed.increment();
+                    log.warn("Ride event {} ({} for ride {}) failed, attempt {}: {}",
+                        event.getId(), event.getStatus(), event.getRideId(), attempts, e.getMessage());
+                }
+            }
+        }
+        return published;
+    }
+
+    private Duration backoff(int attempts) {
+        long millis = 1000L << Math.min(attempts - 1, 20);
+        return Duration.ofMillis(Math.min(millis, maxBackoffMillis));
+    }
+
+    private void deliver(RideEvent event) {
+        Ride ride = rideRepository.findById(event.getRideId())
+            .orElseThrow(() -> new RuntimeException("Ride not found"));
+        sendRideUpdate(ride);
+        sendStatusChangeNotifications(ride, event.getStatus());
+    }
+
+    /**
+     * Send real-time ride update
+     */
+    private void sendRideUpdate(Ride ride) {
+        messagingTemplate.convertAndSend("/user/" + ride.getUser().getId() + "/ride", ride);
+        if (ride.getDriver() != null) {
+            messagingTemplate.convertAndSend("/user/" + ride.getDriver().getId() + "/ride", ride);
+        }
+    }
+
+    /**
+     * Send status change notifications
+     */
+    private void sendStatusChangeNotifications(Ride ride, Ride.Status status) {
+        switch (status) {
+            case DRIVER_ASSIGNED:
+                notificationService.notifyDriverAssigned(ride.getUser(), ride.getDriver(), ride);
+                notificationService.notifyRideAccepted(ride.getUser(), ride.getDriver(), ride);
+                break;
+            case DRIVER_ARRIVING:
+                notificationService.notifyDriverArriving(ride.getUser(), ride.getDriver(), ride);
+                break;
+            case DRIVER_ARRIVED:
+                notificationService.notifyDriverArrived(ride.getUser(), ride.getDriver(), ride);
+                break;
+            case IN_PROGRESS:
+                notificationService.notifyRideStarted(ride.getUser(), ride.getDriver(), ride);
+                break;
+            case COMPLETED:
+                notificationService.notifyRideCompleted(ride.getUser(), ride.getDriver(), ride);
+                // Request ratings
+                notificationService.requestRideRating(ride.getUser(), ride);
+                if (ride.getDriver() != null) {
+                    notificationService.requestDriverRating(ride.getDriver(), ride);
+                }
+                break;
+            case CANCELLED:
+                notificationService.notifyRideCancelled(ride.getUser(), ride.getDriver(), ride);
+                break;
+            default:
+                // No specific notification for this status
+                break;
+        }
+    }
+}
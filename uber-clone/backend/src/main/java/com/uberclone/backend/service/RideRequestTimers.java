@@ -0,0 +1,248 @@
+package com.uberclone.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Expiry and search-radius escalation timers for open ride requests, kept on a {@link TimingWheel}.
+ * A tracked request searches at the first radius of the ladder, and each escalation interval
+ * widens the search one step until the widest radius, which is then retried every interval.
+ * At its expiry the request's callback runs once, unless a search is still in flight, in which
+ * case expiry waits for that search to finish. Due callbacks run on a small worker pool, off the
+ * thread that turns the wheel.
+ */
+@Component
+@Slf4j
+public class RideRequestTimers {
+
+    private final TimingWheel wheel;
+    private final long tickMillis;
+    private final long escalationIntervalMillis;
+    private final double[] searchRadiiKm;
+    private final Map<Long, Tracked> tracked = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService workers;
+
+    private final Counter expired;
+    private final Counter escalations;
+
+    public RideRequestTimers(@Value("${ride.requests.timer.tick-ms:250}") long tickMillis,
+                             @Value("${ride.requests.escalation-interval-ms:20000}") long escalationIntervalMillis,
+                             @Value("${ride.requests.search-radii-km:2.0,5.0,8.0}") double[] searchRadiiKm,
+                             @Value("${ride.requests.timer.workers:2}") int workerCount,
+                             MeterRegistry meterRegistry) {
+        this.tickMillis = tickMillis;
+        this.escalationIntervalMillis = escalationIntervalMillis;
+        this.searchRadiiKm = searchRadiiKm.length > 0 ? searchRadiiKm.clone() : new double[] {5.0};
+        Arrays.sort(this.searchRadiiKm);
+        this.wheel = new TimingWheel(tickMillis, System.currentTimeMillis());
+
+        this.expired = Counter.builder("ride.requests.expired")
+            .description("Ride requests expired by their timer")
+            .register(meterRegistry);
+        this.escalations = Counter.builder("ride.requests.escalations")
+            .description("Driver searches retried at a wider or the widest radius")
+            .register(meterRegistry);
+        Gauge.builder("ride.requests.tracked", tracked, Map::size)
+            .description("Open ride requests with live timers")
+            .register(meterRegistry);
+
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerCount), runnable -> {
+            Thread thread = new Thread(runnable, "ride-request-timer-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ride-request-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Radius for a search escalation step
+     */
+    public double searchRadiusKm(int step) {
+        return searchRadiiKm[Math.min(Math.max(step, 0), searchRadiiKm.length - 1)];
+    }
+
+    /**
+     * Start the request's timers. The next escalation step is derived from how long ago it was
+     * requested, so requests reloaded after a restart carry on where they were.
+     */
+    public void track(Long requestId, LocalDateTime requestedAt, LocalDateTime expiresAt,
+                      Runnable onExpire, DoubleConsumer onEscalate) {
+        long now = System.currentTimeMillis();
+        long requestedMillis = requestedAt != null ? toMillis(requestedAt) : now;
+        long expiresMillis = toMillis(expiresAt);
+        Tracked entry = new Tracked(requestId, requestedMillis, expiresMillis, onExpire, onEscalate);
+        Tracked previous = tracked.put(requestId, entry);
+        if (previous != null) {
+            previous.close();
+        }
+        synchronized (entry) {
+            entry.step = (int) Math.max(0, (now - requestedMillis) / escalationIntervalMillis);
+            entry.expiry = wheel.schedule(expiresMillis, () -> workers.execute(() -> fireExpiry(entry)));
+            armEscalation(entry);
+        }
+    }
+
+    /**
+     * Mark a search for the request as running; false if the request is no longer tracked or
+     * already has a search in flight
+     */
+    public boolean beginSearch(Long requestId) {
+        Tracked entry = tracked.get(requestId);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            if (entry.closed || entry.searching) {
+                return false;
+            }
+            entry.searching = true;
+            return true;
+        }
+    }
+
+    public void endSearch(Long requestId) {
+        Tracked entry = tracked.get(requestId);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.searching = false;
+            }
+        }
+    }
+
+    /**
+     * Stop every timer of the request, e.g. once a driver is assigned or it is cancelled
+     */
+    public void complete(Long requestId) {
+        Tracked entry = tracked.remove(requestId);
+        if (entry != null) {
+            entry.close();
+        }
+    }
+
+    public int size() {
+        return tracked.size();
+    }
+
+    private void tick() {
+        try {
+            for (Runnable task : wheel.advanceTo(System.currentTimeMillis())) {
+                task.run();
+            }
+        } catch (RuntimeException e) {
+            log.error("Ride request timer tick failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void fireExpiry(Tracked entry) {
+        synchronized (entry) {
+            if (entry.closed) {
+                return;
+            }
+            if (entry.searching) {
+                // Let the running search assign a driver or give up first
+                entry.expiry = wheel.schedule(System.currentTimeMillis() + tickMillis,
+                    () -> workers.execute(() -> fireExpiry(entry)));
+                return;
+            }
+            entry.close();
+        }
+        tracked.remove(entry.requestId, entry);
+        expired.increment();
+        try {
+            entry.onExpire.run();
+        } catch (RuntimeException e) {
+            log.error("Expiring ride request {} failed: {}", entry.requestId, e.getMessage(), e);
+        }
+    }
+
+    private void fireEscalation(Tracked entry) {
+        double radiusKm;
+        synchronized (entry) {
+            if (entry.closed) {
+                return;
+            }
+            entry.step++;
+            radiusKm = searchRadiusKm(entry.step);
+            armEscalation(entry);
+        }
+        escalations.increment();
+        try {
+            entry.onEscalate.accept(radiusKm);
+        } catch (RuntimeException e) {
+            log.error("Escalating search for ride request {} failed: {}", entry.requestId, e.getMessage(), e);
+        }
+    }
+
+    private void armEscalation(Tracked entry) {
+        long next = entry.requestedMillis + (entry.step + 1) * escalationIntervalMillis;
+        entry.escalation = next < entry.expiresMillis
+            ? wheel.schedule(next, () -> workers.execute(() -> fireEscalation(entry)))
+            : null;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private static final class Tracked {
+        private final Long requestId;
+        private final long requestedMillis;
+        private final long expiresMillis;
+        private final Runnable onExpire;
+        private final DoubleConsumer onEscalate;
+
+        // Guarded by this
+        private int step;
+        private boolean searching;
+        private boolean closed;
+        private TimingWheel.Timeout expiry;
+        private TimingWheel.Timeout escalation;
+
+        private Tracked(Long requestId, long requestedMillis, long expiresMillis,
+                        Runnable onExpire, DoubleConsumer onEscalate) {
+            this.requestId = requestId;
+            this.requestedMillis = requestedMillis;
+            this.expiresMillis = expiresMillis;
+            this.onExpire = onExpire;
+            this.onEscalate = onEscalate;
+        }
+
+        private synchronized void close() {
+            closed = true;
+            if (expiry != null) {
+                expiry.cancel();
+            }
+            if (escalation != null) {
+                escalation.cancel();
+            }
+        }
+    }
+}
@@ -1,35 +1,50 @@
 package com.uberclone.backend.service;
 
 import com.uberclone.backend.model.*;
+import com.uberclone.backend.repository.RideEventRepository;
 import com.uberclone.backend.repository.RideRepository;
 import com.uberclone.backend.repository.RideRequestRepository;
 import com.uberclone.backend.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class RideService {
 
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
     private final RideRepository rideRepository;
     private final RideRequestRepository rideRequestRepository;
+    private final RideEventRepository rideEventRepository;
     private final UserRepository userRepository;
     private final DriverMatchingService driverMatchingService;
+    private final BatchDispatchService batchDispatchService;
+    private final DispatchExecutor dispatchExecutor;
+    private final RideRequestTimers rideRequestTimers;
     private final PricingService pricingService;
     private final GeohashService geohashService;
     private final NotificationService notificationService;
     private final SimpMessagingTemplate messagingTemplate;
+    private final PlatformTransactionManager transactionManager;
 
     /**
      * Create a new ride request
@@ -43,8 +58,11 @@ public class RideService {
             .orElseThrow(() -> new RuntimeException("User not found"));
 
         // Generate geohashes for pickup and dropoff locations
-        String pickupGeohash = geohashService.encode(request.getPickupLatitude(), request.getPickupLongitude());
-        String dropoffGeohash = geohashService.encode(request.getDropoffLatitude(), request.getDropoffLongitude());
+        // Work on the long form; base32 is only produced for the persisted columns
+        long pickupGeohash = GeohashService.encodeBits(
+            request.getPickupLatitude(), request.getPickupLongitude(), GeohashService.MAX_PRECISION);
+        long dropoffGeohash = GeohashService.encodeBits(
+            request.getDropoffLatitude(), request.getDropoffLongitude(), GeohashService.MAX_PRECISION);
 
         // Calculate estimated fare
         PricingService.FareBreakdown fareBreakdown = pricingService.calculateFareBreakdown(
@@ -62,8 +80,8 @@ public class RideService {
             .pickupLongitude(request.getPickupLongitude())
             .dropoffLatitude(request.getDropoffLatitude())
             .dropoffLongitude(request.getDropoffLongitude())
-            .pickupGeohash(pickupGeohash)
-            .dropoffGeohash(dropoffGeohash)
+            .pickupGeohash(GeohashService.toBase32(pickupGeohash, GeohashService.MAX_PRECISION))
+            .dropoffGeohash(GeohashService.toBase32(dropoffGeohash, GeohashService.MAX_PRECISION))
             .vehicleType(request.getVehicleType())
             .estimatedDuration(fareBreakdown.getEstimatedDuration())
             .estimatedDistance(BigDecimal.valueOf(fareBreakdown.getEstimatedDistance()))
@@ -76,8 +94,9 @@ public class RideService {
 
         RideRequest savedRequest = rideRequestRepository.save(rideRequest);
 
-        // Start driver search process asynchronously
-        CompletableFuture.runAsync(() -> searchForDriver(savedRequest));
+        // Expiry and radius escalation run off the timer wheel from here on
+        trackRideRequest(savedRequest);
+        submitDriverSearch(savedRequest, rideRequestTimers.searchRadiusKm(0));
 
         // Send real-time update to user
         sendRideRequestUpdate(savedRequest);
@@ -85,35 +104,100 @@ public class RideService {
         return savedRequest;
     }
 
+    /**
+     * Reload timers for open ride requests once the application is up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreRideRequestTimers() {
+        List<RideRequest> open = rideRequestRepository.findByStatusIn(
+            List.of(RideRequest.Status.PENDING, RideRequest.Status.SEARCHING_DRIVER));
+        open.forEach(this::trackRideRequest);
+        log.info("Restored timers for {} open ride requests", open.size());
+    }
+
+    /**
+     * Start expiry and search escalation timers for a ride request
+     */
+    private void trackRideRequest(RideRequest rideRequest) {
+        // Requests stored before requestedAt was stamped only have their creation time
+        LocalDateTime requestedAt = rideRequest.getRequestedAt() != null
+            ? rideRequest.getRequestedAt()
+            : rideRequest.getCreatedAt();
+        rideRequestTimers.track(rideRequest.getId(), requestedAt, rideRequest.getExpiresAt(),
+            () -> handleNoDriverFound(rideRequest),
+            radiusKm -> submitDriverSearch(rideRequest, radiusKm));
+    }
+
+    /**
+     * Queue a driver search on the dispatch executor; a rejected search is retried at the next escalation
+     */
+    private void submitDriverSearch(RideRequest rideRequest, double radiusKm) {
+        dispatchExecutor.submit(dispatchExecutor.regionOf(rideRequest.getPickupGeohash()),
+            () -> searchForDriver(rideRequest, radiusKm),
+            () -> log.warn("Driver search for ride request {} rejected, retrying at next escalation", rideRequest.getId()));
+    }
+
     /**
      * Search for available drivers
      */
-    private void searchForDriver(RideRequest rideRequest) {
-        log.info("Searching for drivers for ride request: {}", rideRequest.getId());
+    private void searchForDriver(RideRequest rideRequest, double radiusKm) {
+        if (!rideRequestTimers.beginSearch(rideRequest.getId())) {
+            // Already assigned, expired or being searched for
+            return;
+        }
+        log.info("Searching for drivers for ride request: {} within {} km", rideRequest.getId(), radiusKm);
 
         try {
             // Update status to searching
-            rideRequest.setStatus(RideRequest.Status.SEARCHING_DRIVER);
-            rideRequestRepository.save(rideRequest);
-            sendRideRequestUpdate(rideRequest);
+            if (rideRequest.getStatus() != RideRequest.Status.SEARCHING_DRIVER) {
+                rideRequest.setStatus(RideRequest.Status.SEARCHING_DRIVER);
+                rideRequestRepository.save(rideRequest);
+                sendRideRequestUpdate(rideRequest);
+            }
+
+            // Batch regions are matched together at the end of the current window
+            if (batchDispatchService.isBatchRegion(rideRequest.getPickupGeohash())) {
+                batchDispatchService.submit(rideRequest, assignedDriver -> completeDriverSearch(rideRequest, assignedDriver));
+                return;
+            }
 
             // Try to find and assign a driver
-            Optional<User> assignedDriver = driverMatchingService.assignDriverToRide(rideRequest);
+            completeDriverSearch(rideRequest, driverMatchingService.assignDriverToRide(rideRequest, radiusKm));
+
+        } catch (Exception e) {
+            log.error("Error searching for driver for ride request: {}", rideRequest.getId(), e);
+            rideRequestTimers.endSearch(rideRequest.getId());
+        }
+    }
 
+    /**
+     * Finish a driver search with its outcome; without a driver the request waits for its next escalation
+     */
+    private void completeDriverSearch(RideRequest rideRequest, Optional<User> assignedDriver) {
+        try {
             if (assignedDriver.isPresent()) {
                 // Driver found, create ride
-                createRideFromRequest(rideRequest, assignedDriver.get());
+                acceptRideRequest(rideRequest, assignedDriver.get());
+                rideRequestTimers.complete(rideRequest.getId());
             } else {
-                // No driver found, mark as expired
-                handleNoDriverFound(rideRequest);
+                log.info("No driver yet for ride request: {}", rideRequest.getId());
             }
-
         } catch (Exception e) {
-            log.error("Error searching for driver for ride request: {}", rideRequest.getId(), e);
-            handleNoDriverFound(rideRequest);
+            log.error("Error completing driver search for ride request: {}", rideRequest.getId(), e);
+        } finally {
+            rideRequestTimers.endSearch(rideRequest.getId());
         }
     }
 
+    /**
+     * Create the ride for a matched request from a dispatch thread. Self-invocation bypasses the
+     * transactional proxy, so the transaction is opened here: the request update, the ride and its
+     * outbox event commit or roll back together.
+     */
+    Ride acceptRideRequest(RideRequest rideRequest, User driver) {
+        return new TransactionTemplate(transactionManager).execute(status -> createRideFromRequest(rideRequest, driver));
+    }
+
     /**
      * Create ride from ride request
      */
@@ -150,12 +234,8 @@ public class RideService {
 
         Ride savedRide = rideRepository.save(ride);
 
-        // Send notifications
-        notificationService.notifyDriverAssigned(rideRequest.getUser(), driver, savedRide);
-        notificationService.notifyRideAccepted(rideRequest.getUser(), driver, savedRide);
-
-        // Send real-time updates
-        sendRideUpdate(savedRide);
+        // Notifications and real-time updates go out through the outbox after commit
+        rideEventRepository.save(RideEvent.of(savedRide.getId(), savedRide.getStatus()));
 
         return savedRide;
     }
@@ -164,10 +244,11 @@ public class RideService {
      * Handle case when no driver is found
      */
     private void handleNoDriverFound(RideRequest rideRequest) {
+        if (rideRequestRepository.expireIfOpen(rideRequest.getId(), LocalDateTime.now()) == 0) {
+            return;
+        }
         log.warn("No driver found for ride request: {}", rideRequest.getId());
-        
         rideRequest.setStatus(RideRequest.Status.EXPIRED);
-        rideRequestRepository.save(rideRequest);
 
         // Notify user
         notificationService.notifyNoDriverFound(rideRequest.getUser());
@@ -179,116 +260,45 @@ public class RideService {
      */
     @Transactional
     public Ride updateRideStatus(Long rideId, Ride.Status newStatus, String additionalInfo) {
-        log.info("Updating ride {} status to: {}", rideId, newStatus);
-
-        Ride ride = rideRepository.findById(rideId)
-            .orElseThrow(() -> new RuntimeException("Ride not found"));
-
-        Ride.Status oldStatus = ride.getStatus();
-        ride.setStatus(newStatus);
-
-        // Update timestamps based on status
-        switch (newStatus) {
-            case REQUESTED:
-                // No specific timestamp for this status
-                break;
-            case SEARCHING_DRIVER:
-                // No specific timestamp for this status
-                break;
-            case DRIVER_ASSIGNED:
-                // No specific timestamp for this status
-                break;
-            case DRIVER_ARRIVING:
-                // No specific timestamp for this status
-                break;
-            case DRIVER_ARRIVED:
-                ride.setStartedAt(LocalDateTime.now());
-                break;
-            case IN_PROGRESS:
-                if (ride.getStartedAt() == null) {
-                    ride.setStartedAt(LocalDateTime.now());
-                }
-                break;
-            case COMPLETED:
-                ride.setCompletedAt(LocalDateTime.now());
-                calculateActualRideMetrics(ride);
-                break;
-            case CANCELLED:
-                ride.setCancelledAt(LocalDateTime.now());
-                if (additionalInfo != null) {
-                    ride.setCancellationReason(additionalInfo);
-                }
-                // Release driver
-                if (ride.getDriver() != null) {
-                    driverMatchingService.releaseDriver(ride.getDriver());
-                }
-                break;
-        }
-
-        Ride updatedRide = rideRepository.save(ride);
-
-        // Send real-time updates
-        sendRideUpdate(updatedRide);
-
-        // Send notifications based on status change
-        sendStatusChangeNotifications(updatedRide, oldStatus, newStatus);
-
-        return updatedRide;
+        return updateRideStatus(rideId, newStatus, additionalInfo, null);
     }
 
     /**
-     * Calculate actual ride metrics
+     * Update ride status if the ride is still at the version the caller last saw
      */
-    private void calculateActualRideMetrics(Ride ride) {
-        if (ride.getStartedAt() != null && ride.getCompletedAt() != null) {
-            long durationMinutes = java.time.Duration.between(ride.getStartedAt(), ride.getCompletedAt()).toMinutes();
-            ride.setActualDuration((int) durationMinutes);
-        }
+    @Transactional
+    public Ride updateRideStatus(Long rideId, Ride.Status newStatus, String additionalInfo, Long expectedVersion) {
+        return transitionRide(rideId, newStatus, expectedVersion, additionalInfo, null);
     }
 
     /**
-     * Send status change notifications
+     * Apply a legal status transition in a single conditional update, or reject it
      */
-    private void sendStatusChangeNotifications(Ride ride, Ride.Status oldStatus, Ride.Status newStatus) {
-        switch (newStatus) {
-            case REQUESTED:
-                // No specific notification for this status
-                break;
-            case SEARCHING_DRIVER:
-                // No specific notification for this status
-                break;
-            case DRIVER_ASSIGNED:
-                // No specific notification for this status
-                break;
-            case DRIVER_ARRIVING:
-                notificationService.notifyDriverArriving(ride.getUser(), ride.getDriver(), ride);
-                break;
-            case DRIVER_ARRIVED:
-                notificationService.notifyDriverArrived(ride.getUser(), ride.getDriver(), ride);
-                break;
-            case IN_PROGRESS:
-                notificationService.notifyRideStarted(ride.getUser(), ride.getDriver(), ride);
-                break;
-            case COMPLETED:
-                notificationService.notifyRideCompleted(ride.getUser(), ride.getDriver(), ride);
-                // Request ratings
-                requestRideRating(ride);
-                break;
-            case CANCELLED:
-                notificationService.notifyRideCancelled(ride.getUser(), ride.getDriver(), ride);
-                break;
-        }
-    }
+    private Ride transitionRide(Long rideId, Ride.Status newStatus, Long expectedVersion,
+                                String reason, Ride.CancelledBy cancelledBy) {
+        log.info("Updating ride {} status to: {}", rideId, newStatus);
 
-    /**
-     * Request ride rating
-     */
-    private void requestRideRating(Ride ride) {
-        // Send rating request notification
-        notificationService.requestRideRating(ride.getUser(), ride);
-        if (ride.getDriver() != null) {
-            notificationService.requestDriverRating(ride.getDriver(), ride);
+        List<String> legalFrom = RideStateMachine.predecessorsOf(newStatus);
+        Optional<Ride> transitioned = legalFrom.isEmpty()
+            ? Optional.empty()
+            : rideRepository.transitionStatus(rideId, legalFrom, newStatus.name(), expectedVersion,
+                LocalDateTime.now(), reason, cancelledBy == null ? null : cancelledBy.name());
+
+        Ride updatedRide = transitioned.orElseThrow(() -> {
+            Ride current = rideRepository.findById(rideId)
+                .orElseThrow(() -> new RuntimeException("Ride not found"));
+            return new RideStateConflictException(rideId, current.getStatus(), newStatus);
+        });
+
+        // Release the driver once the ride is over; a claimed driver ignores availability pings until then
+        if (RideStateMachine.isFinal(newStatus) && updatedRide.getDriver() != null) {
+            driverMatchingService.releaseDriver(updatedRide.getDriver());
         }
+
+        // Notifications and real-time updates go out through the outbox after commit
+        rideEventRepository.save(RideEvent.of(rideId, newStatus));
+
+        return updatedRide;
     }
 
     /**
@@ -329,20 +339,36 @@ public class RideService {
         user.setRating((currentTotal + newRating) / user.getRatingCount());
 
         userRepository.save(user);
+        driverMatchingService.updateDriverRating(user.getId(), user.getRating());
+    }
+
+    /**
+     * Get a page of a user's ride history, newest first, starting after the cursor if given
+     */
+    public RideHistoryPage getUserRideHistory(Long userId, String cursor, int limit) {
+        Pageable page = historyPage(limit);
+        HistoryCursor after = HistoryCursor.decode(cursor);
+        return RideHistoryPage.of(after == null
+            ? rideRepository.findUserHistory(userId, page)
+            : rideRepository.findUserHistoryBefore(userId, after.createdAt(), after.id(), page), page);
     }
 
     /**
-     * Get user's ride history
+     * Get a page of a driver's ride history, newest first, starting after the cursor if given
      */
-    public List<Ride> getUserRideHistory(Long userId) {
-        return rideRepository.findByUserIdOrderByCreatedAtDesc(userId);
+    public RideHistoryPage getDriverRideHistory(Long driverId, String cursor, int limit) {
+        Pageable page = historyPage(limit);
+        HistoryCursor after = HistoryCursor.decode(cursor);
+        return RideHistoryPage.of(after == null
+            ? rideRepository.findDriverHistory(driverId, page)
+            : rideRepository.findDriverHistoryBefore(driverId, after.createdAt(), after.id(), page), page);
     }
 
     /**
-     * Get driver's ride history
+     * One more row than asked for tells whether another page follows
      */
-    public List<Ride> getDriverRideHistory(Long driverId) {
-        return rideRepository.findByDriverIdOrderByCreatedAtDesc(driverId);
+    private static Pageable historyPage(int limit) {
+        return PageRequest.of(0, Math.min(Math.max(limit, 1), MAX_HISTORY_PAGE_SIZE) + 1);
     }
 
     /**
@@ -352,20 +378,11 @@ public class RideService {
     public Ride cancelRide(Long rideId, String reason, boolean cancelledByUser) {
         log.info("Cancelling ride: {} by {}", rideId, cancelledByUser ? "user" : "driver");
 
-        Ride ride = rideRepository.findById(rideId)
-            .orElseThrow(() -> new RuntimeException("Ride not found"));
-
-        if (ride.getStatus() == Ride.Status.COMPLETED) {
-            throw new RuntimeException("Cannot cancel completed ride");
-        }
-
         Ride.CancelledBy cancelledBy = cancelledByUser ? 
             Ride.CancelledBy.USER : Ride.CancelledBy.DRIVER;
 
-        ride.setCancelledBy(cancelledBy);
-        ride.setCancellationReason(reason);
-
-        return updateRideStatus(rideId, Ride.Status.CANCELLED, reason);
+        // Completed and already cancelled rides are rejected by the state machine
+        return transitionRide(rideId, Ride.Status.CANCELLED, null, reason, cancelledBy);
     }
 
     /**
@@ -377,15 +394,40 @@ public class RideService {
     }
 
     /**
-     * Send real-time ride update
+     * A page of ride history and the cursor of the next page, null on the last page
      */
-    private void sendRideUpdate(Ride ride) {
-        String userDestination = "/user/" + ride.getUser().getId() + "/ride";
-        String driverDestination = "/user/" + ride.getDriver().getId() + "/ride";
-        
-        messagingTemplate.convertAndSend(userDestination, ride);
-        if (ride.getDriver() != null) {
-            messagingTemplate.convertAndSend(driverDestination, ride);
+    public record RideHistoryPage(List<RideRepository.RideHistoryRow> rides, String nextCursor) {
+
+        static RideHistoryPage of(List<RideRepository.RideHistoryRow> rows, Pageable page) {
+            if (rows.size() < page.getPageSize()) {
+                return new RideHistoryPage(rows, null);
+            }
+            List<RideRepository.RideHistoryRow> rides = rows.subList(0, page.getPageSize() - 1);
+            RideRepository.RideHistoryRow last = rides.get(rides.size() - 1);
+            return new RideHistoryPage(rides, new HistoryCursor(last.getCreatedAt(), last.getId()).encode());
+        }
+    }
+
+    /**
+     * Position after a history row, passed to clients as an opaque token
+     */
+    record HistoryCursor(LocalDateTime createdAt, Long id) {
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + "|" + id).getBytes(StandardCharsets.UTF_8));
+        }
+
+        static HistoryCursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return null;
+            }
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+                return new HistoryCursor(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid history cursor");
+            }
         }
     }
 
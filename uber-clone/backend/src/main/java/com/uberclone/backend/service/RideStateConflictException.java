@@ -0,0 +1,13 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.Ride;
+
+/**
+ * A ride status change that is not legal from the ride's current status or version
+ */
+public class RideStateConflictException extends RuntimeException {
+
+    public RideStateConflictException(Long rideId, Ride.Status currentStatus, Ride.Status requestedStatus) {
+        super("Ride " + rideId + " cannot move from " + currentStatus + " to " + requestedStatus);
+    }
+}
@@ -0,0 +1,60 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.Ride;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Legal ride status transitions.
+ * Any ride that has not finished can be cancelled; completed and cancelled rides are final.
+ */
+public final class RideStateMachine {
+
+    private static final Map<Ride.Status, Set<Ride.Status>> NEXT = new EnumMap<>(Ride.Status.class);
+    private static final Map<Ride.Status, List<String>> PREDECESSORS = new EnumMap<>(Ride.Status.class);
+
+    static {
+        NEXT.put(Ride.Status.REQUESTED, EnumSet.of(
+            Ride.Status.SEARCHING_DRIVER, Ride.Status.DRIVER_ASSIGNED, Ride.Status.CANCELLED));
+        NEXT.put(Ride.Status.SEARCHING_DRIVER, EnumSet.of(Ride.Status.DRIVER_ASSIGNED, Ride.Status.CANCELLED));
+        NEXT.put(Ride.Status.DRIVER_ASSIGNED, EnumSet.of(
+            Ride.Status.DRIVER_ARRIVING, Ride.Status.DRIVER_ARRIVED, Ride.Status.CANCELLED));
+        NEXT.put(Ride.Status.DRIVER_ARRIVING, EnumSet.of(Ride.Status.DRIVER_ARRIVED, Ride.Status.CANCELLED));
+        NEXT.put(Ride.Status.DRIVER_ARRIVED, EnumSet.of(Ride.Status.IN_PROGRESS, Ride.Status.CANCELLED));
+        NEXT.put(Ride.Status.IN_PROGRESS, EnumSet.of(Ride.Status.COMPLETED, Ride.Status.CANCELLED));
+        NEXT.put(Ride.Status.COMPLETED, EnumSet.noneOf(Ride.Status.class));
+        NEXT.put(Ride.Status.CANCELLED, EnumSet.noneOf(Ride.Status.class));
+
+        for (Ride.Status to : Ride.Status.values()) {
+            PREDECESSORS.put(to, NEXT.entrySet().stream()
+                .filter(entry -> entry.getValue().contains(to))
+                .map(entry -> entry.getKey().name())
+                .toList());
+        }
+    }
+
+    private RideStateMachine() {
+    }
+
+    public static boolean canTransition(Ride.Status from, Ride.Status to) {
+        return NEXT.get(from).contains(to);
+    }
+
+    /**
+     * Whether a ride in this status has finished, so its driver is free again
+     */
+    public static boolean isFinal(Ride.Status status) {
+        return NEXT.get(status).isEmpty();
+    }
+
+    /**
+     * Names of the statuses a ride may be in to move to the given status
+     */
+    public static List<String> predecessorsOf(Ride.Status to) {
+        return PREDECESSORS.get(to);
+    }
+}
@@ -0,0 +1,286 @@
+package com.uberclone.backend.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Read-only road graph in compressed sparse row form, memory-mapped from a preprocessed file.
+ * Nodes are numbered in geohash order, so nearby nodes are nearby in the file and snapping a
+ * coordinate is a binary search. Edges are stored twice, grouped by tail for forward searches
+ * and by head for reverse searches, with weights in milliseconds of travel time.
+ *
+ * <pre>
+ * header   int magic, int version, int nodeCount, int edgeCount, float maxSpeedMps, int reserved
+ * nodes    long geohash[n], int latE6[n], int lonE6[n]
+ * forward  int offsets[n + 1], int heads[m], int millis[m]
+ * reverse  int offsets[n + 1], int tails[m], int millis[m]
+ * </pre>
+ * All values are little-endian. A single mapping is limited to 2 GB, which is plenty for a metro area.
+ */
+public final class RoadGraph {
+
+    static final int MAGIC = 0x52475246; // "RGRF"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    private final int nodeCount;
+    private final int edgeCount;
+    private final double maxSpeedMps;
+
+    private final LongBuffer geohashes;
+    private final IntBuffer latitudes;
+    private final IntBuffer longitudes;
+    private final IntBuffer forwardOffsets;
+    private final IntBuffer forwardHeads;
+    private final IntBuffer forwardMillis;
+    private final IntBuffer reverseOffsets;
+    private final IntBuffer reverseTails;
+    private final IntBuffer reverseMillis;
+
+    private RoadGraph(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a road graph file");
+        }
+        this.nodeCount = buffer.getInt(8);
+        this.edgeCount = buffer.getInt(12);
+        this.maxSpeedMps = buffer.getFloat(16);
+
+        int position = HEADER_BYTES;
+        this.geohashes = slice(buffer, position, nodeCount * 8L).asLongBuffer();
+        position += nodeCount * 8;
+        this.latitudes = ints(buffer, position, nodeCount);
+        position += nodeCount * 4;
+        this.longitudes = ints(buffer, position, nodeCount);
+        position += nodeCount * 4;
+        this.forwardOffsets = ints(buffer, position, nodeCount + 1);
+        position += (nodeCount + 1) * 4;
+        this.forwardHeads = ints(buffer, position, edgeCount);
+        position += edgeCount * 4;
+        this.forwardMillis = ints(buffer, position, edgeCount);
+        position += edgeCount * 4;
+        this.reverseOffsets = ints(buffer, position, nodeCount + 1);
+        position += (nodeCount + 1) * 4;
+        this.reverseTails = ints(buffer, position, edgeCount);
+        position += edgeCount * 4;
+        this.reverseMillis = ints(buffer, position, edgeCount);
+    }
+
+    /**
+     * Map a graph file into memory; pages are loaded lazily by the OS
+     */
+    public static RoadGraph load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new RoadGraph(buffer);
+        }
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Fastest speed on any edge, which keeps the A* heuristic a lower bound
+     */
+    public double getMaxSpeedMps() {
+        return maxSpeedMps;
+    }
+
+    public double getLatitude(int node) {
+        return latitudes.get(node) / 1e6;
+    }
+
+    public double getLongitude(int node) {
+        return longitudes.get(node) / 1e6;
+    }
+
+    int forwardStart(int node) {
+        return forwardOffsets.get(node);
+    }
+
+    int forwardEnd(int node) {
+        return forwardOffsets.get(node + 1);
+    }
+
+    int forwardHead(int edge) {
+        return forwardHeads.get(edge);
+    }
+
+    int forwardMillis(int edge) {
+        return forwardMillis.get(edge);
+    }
+
+    int reverseStart(int node) {
+        return reverseOffsets.get(node);
+    }
+
+    int reverseEnd(int node) {
+        return reverseOffsets.get(node + 1);
+    }
+
+    int reverseTail(int edge) {
+        return reverseTails.get(edge);
+    }
+
+    int reverseMillis(int edge) {
+        return reverseMillis.get(edge);
+    }
+
+    /**
+     * Nearest node to a coordinate, searching the surrounding cells at decreasing precision.
+     * Returns -1 if there is no node within a few kilometres.
+     */
+    public int nearestNode(double latitude, double longitude) {
+        for (int precision = 7; precision >= 5; precision--) {
+            long cell = GeohashService.encodeBits(latitude, longitude, precision);
+            int best = -1;
+            double bestDistance = Double.MAX_VALUE;
+
+            for (int dLat = -1; dLat <= 1; dLat++) {
+                for (int dLon = -1; dLon <= 1; dLon++) {
+                    long neighbor = GeohashService.neighbor(cell, precision, dLat, dLon);
+                    if (neighbor == GeohashService.NO_CELL) {
+                        continue;
+                    }
+                    int shift = GeohashService.MAX_BITS - precision * 5;
+                    int from = lowerBound(neighbor << shift);
+                    int to = lowerBound((neighbor + 1) << shift);
+                    for (int node = from; node < to; node++) {
+                        double distance = squaredDegrees(latitude, longitude, node);
+                        if (distance < bestDistance) {
+                            bestDistance = distance;
+                            best = node;
+                        }
+                    }
+                }
+            }
+            if (best >= 0) {
+                return best;
+            }
+        }
+        return -1;
+    }
+
+    private double squaredDegrees(double latitude, double longitude, int node) {
+        double dLat = getLatitude(node) - latitude;
+        double dLon = (getLongitude(node) - longitude) * Math.cos(Math.toRadians(latitude));
+        return dLat * dLat + dLon * dLon;
+    }
+
+    private int lowerBound(long geohash) {
+        int low = 0;
+        int high = nodeCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (geohashes.get(mid) < geohash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Write a graph file from node coordinates and directed edges. Nodes are renumbered in
+     * geohash order; edge endpoints refer to the input order.
+     */
+    public static void write(Path path, double[] latitudes, double[] longitudes,
+                             int[] edgeTails, int[] edgeHeads, int[] edgeMillis) throws IOException {
+        int n = latitudes.length;
+        int m = edgeTails.length;
+
+        long[] geohashes = new long[n];
+        for (int i = 0; i < n; i++) {
+            geohashes[i] = GeohashService.encodeBits(latitudes[i], longitudes[i], GeohashService.MAX_PRECISION);
+        }
+        int[] order = IntStream.range(0, n).boxed()
+            .sorted(Comparator.comparingLong(i -> geohashes[i]))
+            .mapToInt(Integer::intValue)
+            .toArray();
+        int[] rank = new int[n];
+        for (int i = 0; i < n; i++) {
+            rank[order[i]] = i;
+        }
+
+        int[] tails = new int[m];
+        int[] heads = new int[m];
+        double maxSpeed = 0;
+        for (int e = 0; e < m; e++) {
+            tails[e] = rank[edgeTails[e]];
+            heads[e] = rank[edgeHeads[e]];
+            double metres = GeohashService.haversineKm(latitudes[edgeTails[e]], longitudes[edgeTails[e]],
+                latitudes[edgeHeads[e]], longitudes[edgeHeads[e]]) * 1000.0;
+            maxSpeed = Math.max(maxSpeed, metres / Math.max(1, edgeMillis[e]) * 1000.0);
+        }
+
+        long bytes = HEADER_BYTES + n * 16L + 2 * ((n + 1) * 4L + m * 8L);
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(bytes)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putFloat((float) Math.max(maxSpeed, 1.0)).putInt(0);
+        for (int i = 0; i < n; i++) {
+            buffer.putLong(geohashes[order[i]]);
+        }
+        for (int i = 0; i < n; i++) {
+            buffer.putInt((int) Math.round(latitudes[order[i]] * 1e6));
+        }
+        for (int i = 0; i < n; i++) {
+            buffer.putInt((int) Math.round(longitudes[order[i]] * 1e6));
+        }
+        putCsr(buffer, n, tails, heads, edgeMillis);
+        putCsr(buffer, n, heads, tails, edgeMillis);
+
+        Files.write(path, buffer.array());
+    }
+
+    private static void putCsr(ByteBuffer buffer, int n, int[] from, int[] to, int[] millis) {
+        int m = from.length;
+        int[] offsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            offsets[from[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] next = Arrays.copyOf(offsets, n);
+        int[] targets = new int[m];
+        int[] weights = new int[m];
+        for (int e = 0; e < m; e++) {
+            int slot = next[from[e]]++;
+            targets[slot] = to[e];
+            weights[slot] = millis[e];
+        }
+        for (int offset : offsets) {
+            buffer.putInt(offset);
+        }
+        for (int target : targets) {
+            buffer.putInt(target);
+        }
+        for (int weight : weights) {
+            buffer.putInt(weight);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, long length) {
+        return buffer.slice(position, Math.toIntExact(length)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static IntBuffer ints(ByteBuffer buffer, int position, int count) {
+        return slice(buffer, position, count * 4L).asIntBuffer();
+    }
+}
@@ -0,0 +1,390 @@
+package com.uberclone.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * In-process travel times over the road graph.
+ * Point-to-point queries run bidirectional A* with an average-potential heuristic bounded by
+ * the fastest edge in the graph. Coordinates are snapped to their nearest node and the gap is
+ * covered at a walking-pace access speed. When no graph is configured every query returns NaN
+ * and callers keep their straight-line estimate.
+ */
+@Service
+@Slf4j
+public class RoutingEngine {
+
+    @Value("${routing.graph.path:}")
+    private String graphPath;
+
+    @Value("${routing.access-speed-kmh:15}")
+    private double accessSpeedKmh;
+
+    @Value("${routing.max-eta-seconds:1800}")
+    private double maxEtaSeconds;
+
+    private volatile RoadGraph graph;
+
+    // Search scratch space is sized to the graph, so it is pooled rather than held per thread
+    private final ConcurrentLinkedQueue<SearchState> states = new ConcurrentLinkedQueue<>();
+
+    @PostConstruct
+    public void loadGraph() {
+        if (graphPath == null || graphPath.isBlank()) {
+            log.info("No road graph configured, ETAs use straight-line distance");
+            return;
+        }
+        Path path = Path.of(graphPath);
+        if (!Files.isReadable(path)) {
+            log.warn("Road graph {} not found, ETAs use straight-line distance", path);
+            return;
+        }
+        try {
+            setGraph(RoadGraph.load(path));
+            log.info("Loaded road graph {} with {} nodes and {} edges", path, graph.getNodeCount(), graph.getEdgeCount());
+        } catch (Exception e) {
+            log.error("Error loading road graph {}, ETAs use straight-line distance", path, e);
+        }
+    }
+
+    /**
+     * Swap in a graph; in-flight queries finish on the old one
+     */
+    void setGraph(RoadGraph graph) {
+        this.graph = graph;
+        states.clear();
+    }
+
+    /**
+     * Whether a road graph is loaded
+     */
+    public boolean isAvailable() {
+        return graph != null;
+    }
+
+    /**
+     * Travel time in seconds between two coordinates by road, or NaN if there is no graph,
+     * either point is off the graph, or the destination is unreachable
+     */
+    public double travelTimeSeconds(double fromLat, double fromLon, double toLat, double toLon) {
+        RoadGraph roadGraph = graph;
+        if (roadGraph == null) {
+            return Double.NaN;
+        }
+        int source = roadGraph.nearestNode(fromLat, fromLon);
+        int target = roadGraph.nearestNode(toLat, toLon);
+        if (source < 0 || target < 0) {
+            return Double.NaN;
+        }
+
+        SearchState state = acquire(roadGraph);
+        try {
+            double millis = route(roadGraph, state, source, target);
+            if (Double.isInfinite(millis)) {
+                return Double.NaN;
+            }
+            return millis / 1000.0
+                + accessSeconds(roadGraph, fromLat, fromLon, source)
+                + accessSeconds(roadGraph, toLat, toLon, target);
+        } finally {
+            states.offer(state);
+        }
+    }
+
+    /**
+     * Travel times in seconds from many origins to one destination, from a single reverse
+     * search out of the destination. Entries are NaN when there is no graph or either point is
+     * off it, and positive infinity for origins that cannot reach the destination within
+     * routing.max-eta-seconds.
+     */
+    public double[] travelTimesSeconds(double[] fromLats, double[] fromLons, double toLat, double toLon) {
+        double[] seconds = new double[fromLats.length];
+        Arrays.fill(seconds, Double.NaN);
+        RoadGraph roadGraph = graph;
+        if (roadGraph == null) {
+            return seconds;
+        }
+        int target = roadGraph.nearestNode(toLat, toLon);
+        if (target < 0) {
+            return seconds;
+        }
+
+        int[] sources = new int[fromLats.length];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = roadGraph.nearestNode(fromLats[i], fromLons[i]);
+        }
+
+        SearchState state = acquire(roadGraph);
+        try {
+            manyToOne(roadGraph, state, sources, target, maxEtaSeconds * 1000.0);
+            double targetAccess = accessSeconds(roadGraph, toLat, toLon, target);
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i] < 0) {
+                    continue;
+                }
+                double millis = state.reverse.distance(sources[i]);
+                seconds[i] = millis <= maxEtaSeconds * 1000.0
+                    ? millis / 1000.0 + targetAccess + accessSeconds(roadGraph, fromLats[i], fromLons[i], sources[i])
+                    : Double.POSITIVE_INFINITY;
+            }
+            return seconds;
+        } finally {
+            states.offer(state);
+        }
+    }
+
+    /**
+     * Reverse Dijkstra from the target until every source is settled or the time limit is
+     * reached; distances are left in the reverse frontier
+     */
+    void manyToOne(RoadGraph roadGraph, SearchState state, int[] sources, int target, double limitMillis) {
+        int[] pending = Arrays.stream(sources).filter(node -> node >= 0).sorted().distinct().toArray();
+        int remaining = pending.length;
+
+        state.begin();
+        state.reverse.relax(target, 0, 0);
+        while (remaining > 0 && !state.reverse.heap.isEmpty()) {
+            if (state.reverse.heap.peekKey() > limitMillis) {
+                break;
+            }
+            int node = state.reverse.heap.pollNode();
+            if (!state.reverse.settle(node)) {
+                continue;
+            }
+            if (Arrays.binarySearch(pending, node) >= 0) {
+                remaining--;
+            }
+
+            double distance = state.reverse.distance(node);
+            for (int edge = roadGraph.reverseStart(node); edge < roadGraph.reverseEnd(node); edge++) {
+                int tail = roadGraph.reverseTail(edge);
+                double candidate = distance + roadGraph.reverseMillis(edge);
+                if (candidate < state.reverse.distance(tail)) {
+                    state.reverse.relax(tail, candidate, candidate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bidirectional A* between two nodes, in milliseconds.
+     * With p(v) = (h_t(v) - h_s(v)) / 2 both searches see the same non-negative reduced edge
+     * weights, so the usual bidirectional stopping rule on keys stays exact.
+     */
+    double route(RoadGraph roadGraph, SearchState state, int source, int target) {
+        if (source == target) {
+            return 0;
+        }
+        state.begin();
+        double sourceLat = roadGraph.getLatitude(source);
+        double sourceLon = roadGraph.getLongitude(source);
+        double targetLat = roadGraph.getLatitude(target);
+        double targetLon = roadGraph.getLongitude(target);
+        // A hair above the stored top speed so coordinate rounding can never overestimate
+        double millisPerKm = 1_000_000.0 / (roadGraph.getMaxSpeedMps() * 1.001);
+
+        state.forward.relax(source, 0, potential(roadGraph, source, sourceLat, sourceLon, targetLat, targetLon, millisPerKm));
+        state.reverse.relax(target, 0, -potential(roadGraph, target, sourceLat, sourceLon, targetLat, targetLon, millisPerKm));
+
+        double best = Double.POSITIVE_INFINITY;
+        while (!state.forward.heap.isEmpty() && !state.reverse.heap.isEmpty()) {
+            if (state.forward.heap.peekKey() + state.reverse.heap.peekKey() >= best) {
+                break;
+            }
+
+            boolean forward = state.forward.heap.peekKey() <= state.reverse.heap.peekKey();
+            Frontier frontier = forward ? state.forward : state.reverse;
+            Frontier other = forward ? state.reverse : state.forward;
+
+            int node = frontier.heap.pollNode();
+            if (!frontier.settle(node)) {
+                continue;
+            }
+            double distance = frontier.distance(node);
+
+            int start = forward ? roadGraph.forwardStart(node) : roadGraph.reverseStart(node);
+            int end = forward ? roadGraph.forwardEnd(node) : roadGraph.reverseEnd(node);
+            for (int edge = start; edge < end; edge++) {
+                int next = forward ? roadGraph.forwardHead(edge) : roadGraph.reverseTail(edge);
+                double candidate = distance + (forward ? roadGraph.forwardMillis(edge) : roadGraph.reverseMillis(edge));
+                if (candidate >= frontier.distance(next)) {
+                    continue;
+                }
+                double p = potential(roadGraph, next, sourceLat, sourceLon, targetLat, targetLon, millisPerKm);
+                frontier.relax(next, candidate, forward ? candidate + p : candidate - p);
+
+                double meet = other.distance(next);
+                if (candidate + meet < best) {
+                    best = candidate + meet;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static double potential(RoadGraph roadGraph, int node, double sourceLat, double sourceLon,
+                                    double targetLat, double targetLon, double millisPerKm) {
+        double lat = roadGraph.getLatitude(node);
+        double lon = roadGraph.getLongitude(node);
+        double toTarget = GeohashService.haversineKm(lat, lon, targetLat, targetLon);
+        double fromSource = GeohashService.haversineKm(sourceLat, sourceLon, lat, lon);
+        return (toTarget - fromSource) * millisPerKm / 2;
+    }
+
+    private double accessSeconds(RoadGraph roadGraph, double latitude, double longitude, int node) {
+        double km = GeohashService.haversineKm(latitude, longitude, roadGraph.getLatitude(node), roadGraph.getLongitude(node));
+        return km / accessSpeedKmh * 3600.0;
+    }
+
+    SearchState acquire(RoadGraph roadGraph) {
+        SearchState state = states.poll();
+        if (state == null || state.size != roadGraph.getNodeCount()) {
+            state = new SearchState(roadGraph.getNodeCount());
+        }
+        return state;
+    }
+
+    /**
+     * Scratch space for one search at a time: tentative distances and settled marks for each
+     * direction, reset in O(1) per query by bumping a generation stamp
+     */
+    static final class SearchState {
+
+        final int size;
+        final Frontier forward;
+        final Frontier reverse;
+        private final int[] generationHolder = new int[1];
+
+        SearchState(int size) {
+            this.size = size;
+            this.forward = new Frontier(size, generationHolder);
+            this.reverse = new Frontier(size, generationHolder);
+        }
+
+        void begin() {
+            if (++generationHolder[0] == Integer.MAX_VALUE) {
+                forward.clear();
+                reverse.clear();
+                generationHolder[0] = 1;
+            }
+            forward.heap.clear();
+            reverse.heap.clear();
+        }
+    }
+
+    static final class Frontier {
+
+        final NodeHeap heap = new NodeHeap();
+        private final double[] distances;
+        private final int[] reached;
+        private final int[] settled;
+        private final int[] generation;
+
+        Frontier(int size, int[] generation) {
+            this.distances = new double[size];
+            this.reached = new int[size];
+            this.settled = new int[size];
+            this.generation = generation;
+        }
+
+        double distance(int node) {
+            return reached[node] == generation[0] ? distances[node] : Double.POSITIVE_INFINITY;
+        }
+
+        void relax(int node, double distance, double key) {
+            distances[node] = distance;
+            reached[node] = generation[0];
+            heap.push(key, node);
+        }
+
+        /**
+         * Mark a node settled; false if it already was (a stale heap entry)
+         */
+        boolean settle(int node) {
+            if (settled[node] == generation[0]) {
+                return false;
+            }
+            settled[node] = generation[0];
+            return true;
+        }
+
+        void clear() {
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+        }
+    }
+
+    /**
+     * Binary min-heap of (key, node) pairs in parallel primitive arrays. Entries are never
+     * decreased in place; a better key is pushed again and the stale one skipped on settle.
+     */
+    static final class NodeHeap {
+
+        private double[] keys = new double[256];
+        private int[] nodes = new int[256];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        void push(double key, int node) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                nodes[i] = nodes[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+        }
+
+        int pollNode() {
+            int top = nodes[0];
+            double key = keys[--size];
+            int node = nodes[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.repository.RideRequestRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Surge multipliers from live supply and demand.
+ * On every tick, open ride requests and available drivers are counted per precision 5 cell,
+ * the demand/supply pressure is smoothed with an exponential moving average and quantized,
+ * and the result is published as an immutable {@link SurgeSnapshot}. Quotes read the current
+ * snapshot, so pricing never touches the database.
+ */
+@Service
+@Slf4j
+public class SurgePricingEngine {
+
+    /**
+     * Surge cell precision: a precision 5 cell is roughly 4.9km x 4.9km
+     */
+    public static final int SURGE_PRECISION = 5;
+
+    private final RideRequestRepository rideRequestRepository;
+    private final DriverLocationIndex driverLocationIndex;
+
+    private volatile SurgeSnapshot snapshot = SurgeSnapshot.EMPTY;
+
+    // Smoothed pressure per cell; only touched by the tick
+    private final Map<Long, Double> smoothed = new HashMap<>();
+
+    @Value("${surge.smoothing:0.3}")
+    private double smoothing;
+
+    @Value("${surge.demand-threshold:1.0}")
+    private double demandThreshold;
+
+    @Value("${surge.sensitivity:0.5}")
+    private double sensitivity;
+
+    @Value("${surge.max-multiplier:3.0}")
+    private double maxMultiplier;
+
+    @Value("${surge.step:0.1}")
+    private double step;
+
+    public SurgePricingEngine(RideRequestRepository rideRequestRepository, DriverLocationIndex driverLocationIndex,
+                              MeterRegistry meterRegistry) {
+        this.rideRequestRepository = rideRequestRepository;
+        this.driverLocationIndex = driverLocationIndex;
+
+        Gauge.builder("surge.cells", this, engine -> engine.getSnapshot().size())
+            .description("Cells with a surge multiplier above 1x")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Current snapshot
+     */
+    public SurgeSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Surge multiplier at a location, in hundredths
+     */
+    public int getSurgeMultiplier(double latitude, double longitude) {
+        return snapshot.getMultiplier(GeohashService.encodeBits(latitude, longitude, SURGE_PRECISION));
+    }
+
+    /**
+     * Recompute multipliers from current supply and demand
+     */
+    @Scheduled(fixedDelayString = "${surge.tick-ms:15000}")
+    public void tick() {
+        Map<Long, Integer> demand = new HashMap<>();
+        for (Object[] row : rideRequestRepository.countOpenRequestsByPickupCell()) {
+            String cell = (String) row[0];
+            if (cell != null && cell.length() == SURGE_PRECISION) {
+                demand.put(GeohashService.fromBase32(cell), ((Number) row[1]).intValue());
+            }
+        }
+        Map<Long, Integer> supply = driverLocationIndex.countAvailableByCell(SURGE_PRECISION);
+
+        publish(recompute(demand, supply));
+    }
+
+    /**
+     * Fold one observation of demand and supply into the smoothed pressure and return the
+     * quantized multipliers of cells that surge
+     */
+    Map<Long, Integer> recompute(Map<Long, Integer> demand, Map<Long, Integer> supply) {
+        Set<Long> cells = new HashSet<>(smoothed.keySet());
+        cells.addAll(demand.keySet());
+
+        Map<Long, Integer> multipliers = new HashMap<>();
+        for (Long cell : cells) {
+            int requests = demand.getOrDefault(cell, 0);
+            int drivers = supply.getOrDefault(cell, 0);
+
+            // Open requests per available driver; one phantom driver keeps empty cells finite
+            double pressure = (double) requests / (drivers + 1);
+            double previous = smoothed.getOrDefault(cell, 0.0);
+            double current = previous + smoothing * (pressure - previous);
+
+            if (requests == 0 && current < demandThreshold / 10) {
+                smoothed.remove(cell);
+            } else {
+                smoothed.put(cell, current);
+            }
+
+            int multiplier = quantize(1.0 + sensitivity * Math.max(0.0, current - demandThreshold));
+            if (multiplier > SurgeSnapshot.NO_SURGE) {
+                multipliers.put(cell, multiplier);
+            }
+        }
+        return multipliers;
+    }
+
+    /**
+     * Publish new multipliers; the epoch only advances if something changed
+     */
+    void publish(Map<Long, Integer> multipliers) {
+        SurgeSnapshot current = snapshot;
+        if (current.hasSameMultipliers(multipliers)) {
+            return;
+        }
+        snapshot = new SurgeSnapshot(current.getEpoch() + 1, multipliers);
+        log.debug("Published surge snapshot {} with {} surging cells", snapshot.getEpoch(), multipliers.size());
+    }
+
+    /**
+     * Round down to the configured step and cap, in hundredths
+     */
+    private int quantize(double multiplier) {
+        double capped = Math.min(multiplier, maxMultiplier);
+        double stepped = Math.floor(capped / step + 1e-9) * step;
+        return (int) Math.round(stepped * 100);
+    }
+}
@@ -0,0 +1,94 @@
+package com.uberclone.backend.service;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Immutable surge multipliers per geohash cell, published as a whole by {@link SurgePricingEngine}.
+ * Cells live in a primitive open-addressing table, so a lookup is a hash and a few array reads.
+ * Cells that are not present have no surge.
+ */
+public final class SurgeSnapshot {
+
+    /**
+     * No surge, in hundredths
+     */
+    public static final int NO_SURGE = 100;
+
+    static final SurgeSnapshot EMPTY = new SurgeSnapshot(0, Map.of());
+
+    private final long epoch;
+    private final long[] cells;
+    private final int[] multipliers;
+    private final int mask;
+    private final int size;
+
+    SurgeSnapshot(long epoch, Map<Long, Integer> multipliers) {
+        this.epoch = epoch;
+        this.size = multipliers.size();
+
+        // Keep the table at most half full
+        int capacity = Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+        this.cells = new long[capacity];
+        this.multipliers = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(cells, GeohashService.NO_CELL);
+
+        for (Map.Entry<Long, Integer> entry : multipliers.entrySet()) {
+            int slot = slot(entry.getKey());
+            while (cells[slot] != GeohashService.NO_CELL) {
+                slot = (slot + 1) & mask;
+            }
+            cells[slot] = entry.getKey();
+            this.multipliers[slot] = entry.getValue();
+        }
+    }
+
+    /**
+     * Version of this snapshot; changes whenever any multiplier changes
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Surge multiplier for a cell, in hundredths
+     */
+    public int getMultiplier(long cell) {
+        int slot = slot(cell);
+        long key;
+        while ((key = cells[slot]) != GeohashService.NO_CELL) {
+            if (key == cell) {
+                return multipliers[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_SURGE;
+    }
+
+    /**
+     * Number of cells with a surge
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Whether the multipliers are the same as another snapshot's, regardless of epoch
+     */
+    boolean hasSameMultipliers(Map<Long, Integer> other) {
+        if (other.size() != size) {
+            return false;
+        }
+        for (Map.Entry<Long, Integer> entry : other.entrySet()) {
+            if (getMultiplier(entry.getKey()) != entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int slot(long cell) {
+        return (int) ((cell * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -0,0 +1,151 @@
+package com.uberclone.backend.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel.
+ * Level 0 has one slot per tick, and each level above covers a whole turn of the level below per
+ * slot. Scheduling and cancelling are O(1) list operations; advancing the clock expires one level-0
+ * slot per tick and, when a level wraps, re-files the next slot of the level above into finer
+ * slots. Deadlines beyond the top level are parked in its farthest slot and re-filed as they near.
+ * The wheel does not run tasks itself: {@link #advanceTo} hands back the ones that are due.
+ */
+final class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final Timeout[][] slots = new Timeout[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = Math.max(1, tickMillis);
+        this.startMillis = startMillis;
+        for (Timeout[] level : slots) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = Timeout.sentinel();
+            }
+        }
+    }
+
+    /**
+     * Schedule a task for the first tick at or after the deadline; past deadlines fire on the next tick
+     */
+    synchronized Timeout schedule(long deadlineMillis, Runnable task) {
+        long deadlineTick = Math.floorDiv(deadlineMillis - startMillis + tickMillis - 1, tickMillis);
+        Timeout timeout = new Timeout(Math.max(deadlineTick, currentTick + 1), task, this);
+        file(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Move the clock forward and return the tasks that came due, in tick order
+     */
+    synchronized List<Runnable> advanceTo(long nowMillis) {
+        long targetTick = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        List<Runnable> due = new ArrayList<>();
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = 1; level < LEVELS && (currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0; level++) {
+                Timeout head = slots[level][slotOf(currentTick, level)];
+                for (Timeout timeout = head.next; timeout != head; ) {
+                    Timeout next = timeout.next;
+                    timeout.unlink();
+                    file(timeout);
+                    timeout = next;
+                }
+            }
+            Timeout head = slots[0][slotOf(currentTick, 0)];
+            for (Timeout timeout = head.next; timeout != head; ) {
+                Timeout next = timeout.next;
+                timeout.unlink();
+                timeout.wheel = null;
+                size--;
+                due.add(timeout.task);
+                timeout = next;
+            }
+        }
+        return due;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private synchronized boolean cancel(Timeout timeout) {
+        if (timeout.wheel == null) {
+            return false;
+        }
+        timeout.unlink();
+        timeout.wheel = null;
+        size--;
+        return true;
+    }
+
+    private void file(Timeout timeout) {
+        long ticks = timeout.deadlineTick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && ticks >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        long filedTick = Math.min(timeout.deadlineTick, currentTick + (1L << (SLOT_BITS * LEVELS)) - 1);
+        timeout.linkBefore(slots[level][slotOf(filedTick, level)]);
+    }
+
+    private static int slotOf(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & MASK);
+    }
+
+    /**
+     * Handle to a scheduled task
+     */
+    static final class Timeout {
+        private final long deadlineTick;
+        private final Runnable task;
+        private volatile TimingWheel wheel;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(long deadlineTick, Runnable task, TimingWheel wheel) {
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+            this.wheel = wheel;
+        }
+
+        private static Timeout sentinel() {
+            Timeout head = new Timeout(0, null, null);
+            head.prev = head;
+            head.next = head;
+            return head;
+        }
+
+        /**
+         * Cancel the task; false if it already came due or was cancelled
+         */
+        boolean cancel() {
+            TimingWheel owner = wheel;
+            return owner != null && owner.cancel(this);
+        }
+
+        private void linkBefore(Timeout head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+    }
+}
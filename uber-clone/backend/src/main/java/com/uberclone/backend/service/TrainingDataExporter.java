@@ -0,0 +1,199 @@
+package com.uberclone.backend.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uberclone.backend.model.Ride;
+import com.uberclone.backend.repository.RideRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams completed rides to the ML service as training data.
+ * Rides are read in pages after a (completedAt, id) cursor, each page is encoded row by row into
+ * one gzip-compressed newline-delimited JSON chunk, and chunks are uploaded in sequence. The ML
+ * service records the sequence number and cursor of the last chunk it stored, and every run starts
+ * from there, so an interrupted export resumes where it stopped and memory stays at one chunk no
+ * matter how many rides there are.
+ * A ride whose transaction commits late can carry a completedAt behind rides already exported, and
+ * the cursor would skip it; only rides completed more than settle-seconds ago are exported, which
+ * must exceed the longest transaction that completes a ride.
+ */
+@Service
+@Slf4j
+public class TrainingDataExporter {
+
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final RideRepository rideRepository;
+    private final MLServiceClient mlServiceClient;
+    private final JsonFactory jsonFactory;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Counter rowsExported;
+    private final DistributionSummary chunkBytes;
+
+    @Value("${ml.service.url:http://localhost:8000}")
+    private String mlServiceUrl;
+
+    @Value("${ml.service.enabled:true}")
+    private boolean mlServiceEnabled;
+
+    @Value("${ml.export.stream:completed-rides}")
+    private String stream;
+
+    @Value("${ml.export.chunk-rows:5000}")
+    private int chunkRows;
+
+    @Value("${ml.export.settle-seconds:300}")
+    private long settleSeconds;
+
+    public TrainingDataExporter(RideRepository rideRepository, MLServiceClient mlServiceClient,
+                                ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.rideRepository = rideRepository;
+        this.mlServiceClient = mlServiceClient;
+        this.jsonFactory = objectMapper.getFactory();
+        this.rowsExported = Counter.builder("ml.export.rows")
+            .description("Completed rides exported as training data")
+            .register(meterRegistry);
+        this.chunkBytes = DistributionSummary.builder("ml.export.chunk.bytes")
+            .description("Compressed size of one training data chunk")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${ml.export.cron:0 30 3 * * *}")
+    public void scheduledExport() {
+        exportCompletedRides();
+    }
+
+    /**
+     * Upload every completed ride after the ML service's stored offset; returns the rides sent
+     */
+    public long exportCompletedRides() {
+        if (!mlServiceEnabled || !running.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            String streamUrl = mlServiceUrl + "/training/ride-data/" + stream;
+            Optional<ExportOffset> offset = mlServiceClient.get(
+                MLServiceClient.Endpoint.TRAINING, streamUrl + "/offset", ExportOffset.class);
+            if (offset.isEmpty()) {
+                log.warn("Training data export skipped: offset for {} unavailable", stream);
+                return 0;
+            }
+            long seq = offset.get().seq();
+            String completedAt = offset.get().completedAt();
+            LocalDateTime afterCompletedAt = completedAt == null ? EPOCH : LocalDateTime.parse(completedAt);
+            long afterId = offset.get().rideId() == null ? 0 : offset.get().rideId();
+            LocalDateTime completedBefore = LocalDateTime.now().minusSeconds(settleSeconds);
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+            long exported = 0;
+            while (true) {
+                List<RideRepository.TrainingRow> rows = rideRepository.findTrainingRowsAfter(
+                    Ride.Status.COMPLETED, afterCompletedAt, afterId, completedBefore, PageRequest.of(0, chunkRows));
+                if (rows.isEmpty()) {
+                    break;
+                }
+                RideRepository.TrainingRow last = rows.get(rows.size() - 1);
+
+                buffer.reset();
+                encode(rows, buffer);
+                chunkBytes.record(buffer.size());
+
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(NDJSON);
+                headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+                String chunkUrl = UriComponentsBuilder.fromHttpUrl(streamUrl + "/chunks")
+                    .queryParam("seq", seq)
+                    .queryParam("completed_at", last.getCompletedAt())
+                    .queryParam("ride_id", last.getId())
+                    .toUriString();
+                if (mlServiceClient.post(MLServiceClient.Endpoint.TRAINING, chunkUrl,
+                        new HttpEntity<>(buffer.toByteArray(), headers), Map.class).isEmpty()) {
+                    log.warn("Training data export of {} stopped at chunk {}; the next run resumes there", stream, seq);
+                    break;
+                }
+
+                seq++;
+                afterCompletedAt = last.getCompletedAt();
+                afterId = last.getId();
+                exported += rows.size();
+                rowsExported.increment(rows.size());
+                if (rows.size() < chunkRows) {
+                    break;
+                }
+            }
+
+            log.info("Exported {} completed rides to training stream {}", exported, stream);
+            return exported;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Write rows as gzip-compressed newline-delimited JSON
+     */
+    void encode(List<RideRepository.TrainingRow> rows, OutputStream out) {
+        try (JsonGenerator json = jsonFactory.createGenerator(new GZIPOutputStream(out, 8192))) {
+            json.setRootValueSeparator(null);
+            for (RideRepository.TrainingRow row : rows) {
+                // Rides created before requestedAt was stamped only have their completion time
+                LocalDateTime requestedAt = row.getRequestedAt() != null ? row.getRequestedAt() : row.getCompletedAt();
+                json.writeStartObject();
+                json.writeNumberField("ride_id", row.getId());
+                json.writeStringField("completed_at", row.getCompletedAt().toString());
+                json.writeObjectField("pickup_lat", row.getPickupLatitude());
+                json.writeObjectField("pickup_lon", row.getPickupLongitude());
+                json.writeObjectField("dropoff_lat", row.getDropoffLatitude());
+                json.writeObjectField("dropoff_lon", row.getDropoffLongitude());
+                json.writeObjectField("distance", row.getDistance());
+                json.writeObjectField("duration", row.getActualDuration());
+                json.writeObjectField("fare", row.getTotalFare());
+                json.writeNumberField("hour_of_day", requestedAt.getHour());
+                json.writeNumberField("day_of_week", requestedAt.getDayOfWeek().getValue());
+                json.writeNumberField("month", requestedAt.getMonthValue());
+                json.writeBooleanField("is_weekend", requestedAt.getDayOfWeek().getValue() > 5);
+                json.writeEndObject();
+                json.writeRaw('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sequence number and cursor of the last chunk the ML service stored
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record ExportOffset(long seq,
+                        @JsonProperty("completed_at") String completedAt,
+                        @JsonProperty("ride_id") Long rideId) {
+    }
+}
@@ -0,0 +1,12 @@
+-- One location row per driver
+-- V3__driver_locations_one_row_per_driver.sql
+
+-- Keep only the newest row for each driver
+DELETE FROM driver_locations older
+USING driver_locations newer
+WHERE older.driver_id = newer.driver_id
+  AND older.id < newer.id;
+
+-- Unique driver_id lets the location write-behind flush batches as upserts
+DROP INDEX IF EXISTS idx_driver_locations_driver_id;
+CREATE UNIQUE INDEX idx_driver_locations_driver_id ON driver_locations(driver_id);
@@ -0,0 +1,4 @@
+-- Optimistic locking for rides
+-- V4__ride_version.sql
+
+ALTER TABLE rides ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,17 @@
+-- Outbox of ride events, written in the same transaction as the ride change
+-- V5__ride_event_outbox.sql
+
+CREATE TABLE ride_events (
+    id BIGSERIAL PRIMARY KEY,
+    ride_id BIGINT NOT NULL REFERENCES rides(id),
+    status VARCHAR(20) NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    available_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    published_at TIMESTAMP,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error TEXT
+);
+
+-- The relay only ever scans undelivered events, per ride in id order
+CREATE INDEX idx_ride_events_pending ON ride_events(ride_id, id) WHERE published_at IS NULL;
+CREATE INDEX idx_ride_events_published_at ON ride_events(published_at) WHERE published_at IS NOT NULL;
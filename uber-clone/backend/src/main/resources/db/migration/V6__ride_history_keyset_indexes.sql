@@ -0,0 +1,12 @@
+-- Keyset pagination of ride history on (created_at, id)
+-- V6__ride_history_keyset_indexes.sql
+
+-- The cursor needs a creation time on every ride
+UPDATE rides SET created_at = COALESCE(requested_at, CURRENT_TIMESTAMP) WHERE created_at IS NULL;
+ALTER TABLE rides ALTER COLUMN created_at SET NOT NULL;
+
+-- Each history page is one index range scan; the composites also serve plain user/driver lookups
+CREATE INDEX idx_rides_user_created ON rides(user_id, created_at DESC, id DESC);
+CREATE INDEX idx_rides_driver_created ON rides(driver_id, created_at DESC, id DESC) WHERE driver_id IS NOT NULL;
+DROP INDEX IF EXISTS idx_rides_user_id;
+DROP INDEX IF EXISTS idx_rides_driver_id;
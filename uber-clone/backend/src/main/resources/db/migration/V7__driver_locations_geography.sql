@@ -0,0 +1,25 @@
+-- PostGIS point for driver locations, with a GiST index for radius and nearest-driver queries
+-- V7__driver_locations_geography.sql
+
+CREATE EXTENSION IF NOT EXISTS postgis;
+
+ALTER TABLE driver_locations ADD COLUMN location geography(Point, 4326);
+
+UPDATE driver_locations
+SET location = ST_SetSRID(ST_MakePoint(longitude, latitude), 4326)::geography;
+
+-- Keep the point in step with latitude/longitude on every write, including the write-behind upserts
+CREATE OR REPLACE FUNCTION driver_locations_set_location() RETURNS trigger AS $$
+BEGIN
+    NEW.location := ST_SetSRID(ST_MakePoint(NEW.longitude, NEW.latitude), 4326)::geography;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_driver_locations_location
+BEFORE INSERT OR UPDATE OF latitude, longitude ON driver_locations
+FOR EACH ROW EXECUTE FUNCTION driver_locations_set_location();
+
+-- Only drivers that can take a ride are ever searched
+CREATE INDEX idx_driver_locations_location_available ON driver_locations USING GIST (location)
+WHERE is_online = TRUE AND is_available = TRUE;
@@ -0,0 +1,4 @@
+-- Marks rows taken by a dispatch claim, so write-behind upserts cannot reopen them until released
+-- V8__driver_locations_claimed.sql
+
+ALTER TABLE driver_locations ADD COLUMN claimed BOOLEAN NOT NULL DEFAULT FALSE;
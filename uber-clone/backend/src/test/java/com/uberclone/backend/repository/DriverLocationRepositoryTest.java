@@ -0,0 +1,115 @@
+package com.uberclone.backend.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Spatial queries against PostGIS with the Flyway schema; skipped where Docker is not available
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+public class DriverLocationRepositoryTest {
+
+    // Far from the seeded demo drivers
+    private static final double LAT = -33.8688;
+    private static final double LON = 151.2093;
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGIS = new PostgreSQLContainer<>(
+        DockerImageName.parse("postgis/postgis:15-3.4-alpine").asCompatibleSubstituteFor("postgres"));
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGIS::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGIS::getUsername);
+        registry.add("spring.datasource.password", POSTGIS::getPassword);
+        // Only the native spatial queries are under test here
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "none");
+    }
+
+    @Autowired
+    private DriverLocationRepository driverLocationRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void findNearestAvailableIds_shouldReturnNearestAvailableDriversInOrder() {
+        long third = insertDriver("third", LAT + 0.020, LON, true, true);
+        long first = insertDriver("first", LAT + 0.002, LON, true, true);
+        long second = insertDriver("second", LAT, LON + 0.010, true, true);
+        insertDriver("fourth", LAT + 0.030, LON, true, true);
+        insertDriver("busy", LAT + 0.001, LON, true, false);
+        insertDriver("offline", LAT, LON + 0.001, false, true);
+        insertDriver("outside", LAT + 0.2, LON, true, true);
+
+        assertEquals(List.of(first, second, third),
+            driverLocationRepository.findNearestAvailableIds(LAT, LON, 5_000, 3));
+        assertEquals(4, driverLocationRepository.findNearestAvailableIds(LAT, LON, 5_000, 50).size());
+    }
+
+    @Test
+    void locationTrigger_shouldFollowCoordinateUpdates() {
+        long near = insertDriver("near", LAT + 0.002, LON, true, true);
+        long far = insertDriver("far", LAT + 0.030, LON, true, true);
+
+        jdbcTemplate.update("UPDATE driver_locations SET latitude = ?, longitude = ? WHERE id = ?", LAT, LON, far);
+
+        assertEquals(List.of(far, near), driverLocationRepository.findNearestAvailableIds(LAT, LON, 5_000, 10));
+    }
+
+    @Test
+    void claimAvailableDriver_shouldClaimOnceAndHideTheDriver() {
+        long location = insertDriver("claimed", LAT, LON, true, true);
+        Long driverId = jdbcTemplate.queryForObject(
+            "SELECT driver_id FROM driver_locations WHERE id = ?", Long.class, location);
+
+        assertEquals(1, driverLocationRepository.claimAvailableDriver(driverId));
+        assertEquals(0, driverLocationRepository.claimAvailableDriver(driverId));
+
+        assertTrue(jdbcTemplate.queryForObject(
+            "SELECT claimed FROM driver_locations WHERE id = ?", Boolean.class, location));
+        assertTrue(driverLocationRepository.findNearestAvailableIds(LAT, LON, 5_000, 10).isEmpty());
+    }
+
+    @Test
+    void findNearestAvailableIds_shouldUseThePartialGistIndex() {
+        insertDriver("indexed", LAT, LON, true, true);
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+
+        List<String> plan = jdbcTemplate.queryForList(
+            "EXPLAIN SELECT dl.id FROM driver_locations dl " +
+            "WHERE dl.is_online = TRUE AND dl.is_available = TRUE " +
+            "AND ST_DWithin(dl.location, CAST(ST_SetSRID(ST_MakePoint(151.2, -33.8), 4326) AS geography), 5000) " +
+            "ORDER BY dl.location <-> CAST(ST_SetSRID(ST_MakePoint(151.2, -33.8), 4326) AS geography) LIMIT 3",
+            String.class);
+
+        assertTrue(String.join("\n", plan).contains("idx_driver_locations_location_available"), String.join("\n", plan));
+    }
+
+    private long insertDriver(String name, double lat, double lon, boolean online, boolean available) {
+        Long userId = jdbcTemplate.queryForObject(
+            "INSERT INTO users (email, password, first_name, last_name, role) " +
+            "VALUES (?, 'x', ?, 'Driver', 'DRIVER') RETURNING id",
+            Long.class, name + "@drivers.test", name);
+        return jdbcTemplate.queryForObject(
+            "INSERT INTO driver_locations (driver_id, latitude, longitude, geohash, is_online, is_available) " +
+            "VALUES (?, ?, ?, 'r3gx2f', ?, ?) RETURNING id",
+            Long.class, userId, lat, lon, online, available);
+    }
+}
@@ -0,0 +1,115 @@
+package com.uberclone.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AssignmentSolverTest {
+
+    @Test
+    void solve_shouldMatchBruteForceOptimum() {
+        Random random = new Random(3);
+        for (int trial = 0; trial < 200; trial++) {
+            int rows = 1 + random.nextInt(5);
+            int cols = 1 + random.nextInt(6);
+            double[] cost = new double[rows * cols];
+            for (int i = 0; i < cost.length; i++) {
+                cost[i] = random.nextInt(4) == 0 ? AssignmentSolver.INFEASIBLE : random.nextDouble() * 10;
+            }
+
+            int[] assignment = AssignmentSolver.solve(cost, rows, cols);
+
+            assertEquals(bruteForce(cost, rows, cols, 0, new boolean[cols]), total(cost, cols, assignment), 1e-6);
+            Set<Integer> used = new HashSet<>();
+            for (int col : assignment) {
+                assertTrue(col < 0 || used.add(col));
+            }
+        }
+    }
+
+    @Test
+    void solve_shouldLeaveRowsWithoutFeasibleColumnUnassigned() {
+        double inf = AssignmentSolver.INFEASIBLE;
+        double[] cost = {
+            1, inf,
+            2, inf,
+            inf, inf
+        };
+
+        assertArrayEquals(new int[]{0, -1, -1}, AssignmentSolver.solve(cost, 3, 2));
+    }
+
+    @Test
+    void solve_shouldHandleFiveHundredSquareWithinBound() {
+        int n = 500;
+        Random random = new Random(5);
+        double[] cost = new double[n * n];
+        for (int i = 0; i < cost.length; i++) {
+            cost[i] = random.nextDouble() * 10;
+        }
+
+        int[] assignment = assertTimeout(Duration.ofSeconds(5), () -> AssignmentSolver.solve(cost, n, n));
+
+        assertEquals(n, new HashSet<>(Arrays.stream(assignment).boxed().toList()).size());
+    }
+
+    @Test
+    void solve_shouldHandleAFullBatchWithinBound() {
+        // The largest batch dispatch builds: 500 requests, each with its own capped candidate list
+        int rows = 500;
+        int cols = rows * DriverMatchingService.MAX_BATCH_CANDIDATES;
+        Random random = new Random(9);
+        double[] spread = new double[rows * cols];
+        double[] contended = new double[rows * cols];
+        Arrays.fill(spread, AssignmentSolver.INFEASIBLE);
+        Arrays.fill(contended, AssignmentSolver.INFEASIBLE);
+        for (int row = 0; row < rows; row++) {
+            for (int k = 0; k < DriverMatchingService.MAX_BATCH_CANDIDATES; k++) {
+                spread[row * cols + random.nextInt(cols)] = random.nextDouble() * 10;
+                // Every request wants the same few drivers, so most rows end unassigned
+                contended[row * cols + random.nextInt(20)] = random.nextDouble() * 10;
+            }
+        }
+
+        int[] spreadAssignment = assertTimeout(Duration.ofSeconds(5), () -> AssignmentSolver.solve(spread, rows, cols));
+        int[] contendedAssignment = assertTimeout(Duration.ofSeconds(5), () -> AssignmentSolver.solve(contended, rows, cols));
+
+        assertTrue(Arrays.stream(spreadAssignment).filter(col -> col >= 0).count() > rows / 2);
+        assertEquals(20, Arrays.stream(contendedAssignment).filter(col -> col >= 0).count());
+    }
+
+    /**
+     * Total cost where an unassigned row costs as much as an infeasible pair
+     */
+    private static double total(double[] cost, int cols, int[] assignment) {
+        double sum = 0;
+        for (int row = 0; row < assignment.length; row++) {
+            sum += assignment[row] >= 0 ? cost[row * cols + assignment[row]] : AssignmentSolver.INFEASIBLE;
+        }
+        return sum;
+    }
+
+    private static double bruteForce(double[] cost, int rows, int cols, int row, boolean[] used) {
+        if (row == rows) {
+            return 0;
+        }
+        double best = AssignmentSolver.INFEASIBLE + bruteForce(cost, rows, cols, row + 1, used);
+        for (int col = 0; col < cols; col++) {
+            if (!used[col] && cost[row * cols + col] < AssignmentSolver.INFEASIBLE) {
+                used[col] = true;
+                best = Math.min(best, cost[row * cols + col] + bruteForce(cost, rows, cols, row + 1, used));
+                used[col] = false;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,55 @@
+package com.uberclone.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(3, 1_000, now::get);
+
+    @Test
+    void breaker_shouldOpenAfterConsecutiveFailures() {
+        fail(2);
+        breaker.tryAcquire();
+        breaker.onSuccess();
+        fail(2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void breaker_shouldLetOneTrialThroughAfterOpenPeriod() {
+        fail(3);
+        now.addAndGet(999_000_000L);
+        assertFalse(breaker.tryAcquire());
+
+        now.addAndGet(1_000_000L);
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now.addAndGet(1_000_000_000L);
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.uberclone.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DispatchExecutorTest {
+
+    @Test
+    void submit_shouldServeRegionsRoundRobin() throws Exception {
+        DispatchExecutor executor = newExecutor(1, 10, DispatchExecutor.SaturationPolicy.REJECT);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        // Hold the only worker so the rest of the work queues up
+        executor.submit("block", () -> await(blocked), () -> { });
+        for (String region : List.of("a", "a", "a", "b", "b")) {
+            executor.submit(region, () -> {
+                order.add(region);
+                done.countDown();
+            }, () -> { });
+        }
+        blocked.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "b", "a", "b", "a"), order);
+        executor.shutdown();
+    }
+
+    @Test
+    void submit_shouldRejectWhenSaturated() {
+        DispatchExecutor executor = newExecutor(1, 1, DispatchExecutor.SaturationPolicy.REJECT);
+        CountDownLatch blocked = new CountDownLatch(1);
+        AtomicBoolean rejected = new AtomicBoolean();
+
+        executor.submit("a", () -> await(blocked), () -> { });
+        while (executor.getDepth() > 0) {
+            Thread.onSpinWait();
+        }
+        assertTrue(executor.submit("a", () -> { }, () -> { }));
+        assertFalse(executor.submit("a", () -> { }, () -> rejected.set(true)));
+        assertTrue(rejected.get());
+
+        blocked.countDown();
+        executor.shutdown();
+    }
+
+    private static DispatchExecutor newExecutor(int concurrency, int capacity,
+                                                DispatchExecutor.SaturationPolicy policy) {
+        return new DispatchExecutor(concurrency, capacity, 4, policy, 10, 0, false, new SimpleMeterRegistry());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
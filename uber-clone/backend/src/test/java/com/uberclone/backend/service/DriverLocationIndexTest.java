@@ -0,0 +1,134 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DriverLocationIndexTest {
+
+    private static final double LAT = 40.7589;
+    private static final double LON = -73.9851;
+
+    private final DriverLocationIndex index = new DriverLocationIndex();
+    private final GeohashService geohashService = new GeohashService();
+
+    @Test
+    void put_shouldOnlyOfferOnlineAvailableDrivers() {
+        IndexedDriver online = put(1L, LAT, LON, true, true, "STANDARD");
+        put(2L, LAT, LON, false, true, "STANDARD");
+        put(3L, LAT, LON, true, false, "STANDARD");
+        put(4L, LAT, LON, true, true, "PREMIUM");
+
+        GeohashService.Cover cover = geohashService.cover(LAT, LON, 0.5, DriverLocationIndex.CELL_PRECISION, 64);
+
+        assertEquals(4, index.size());
+        assertEquals(List.of(online), index.findAvailable(cover, "STANDARD"));
+        assertEquals(Set.of(1L, 4L), ids(index.findAvailable(cover, null)));
+    }
+
+    @Test
+    void update_shouldMoveDriversBetweenCells() {
+        IndexedDriver driver = put(1L, LAT, LON, true, true, "STANDARD");
+        GeohashService.Cover before = geohashService.cover(LAT, LON, 0.2, DriverLocationIndex.CELL_PRECISION, 64);
+
+        // About 5 km north: a different precision-6 cell
+        double movedLat = LAT + 0.045;
+        index.update(driver, movedLat, LON, bits(movedLat, LON), true, true, LocalDateTime.now());
+        GeohashService.Cover after = geohashService.cover(movedLat, LON, 0.2, DriverLocationIndex.CELL_PRECISION, 64);
+
+        assertTrue(index.findAvailable(before, null).isEmpty());
+        assertEquals(List.of(driver), index.findAvailable(after, null));
+        assertEquals(Map.of(GeohashService.encodeBits(movedLat, LON, DriverLocationIndex.CELL_PRECISION), 1),
+            index.countAvailableByCell(DriverLocationIndex.CELL_PRECISION));
+
+        // Going offline takes the driver out of its bucket altogether
+        index.update(driver, movedLat, LON, bits(movedLat, LON), false, true, LocalDateTime.now());
+        assertTrue(index.findAvailable(after, null).isEmpty());
+        assertTrue(index.countAvailableByCell(DriverLocationIndex.CELL_PRECISION).isEmpty());
+    }
+
+    @Test
+    void forEachAvailable_shouldMatchBruteForceAtEveryCoverPrecision() {
+        List<IndexedDriver> drivers = scatter(new Random(13), 2_000);
+
+        for (int maxPrecision = 3; maxPrecision <= 8; maxPrecision++) {
+            GeohashService.Cover cover = geohashService.cover(LAT, LON, 4.0, maxPrecision, 256);
+            Set<Long> expected = new HashSet<>();
+            for (IndexedDriver driver : drivers) {
+                long cell = GeohashService.truncate(driver.getGeohashBits(), GeohashService.MAX_PRECISION,
+                    cover.getPrecision());
+                if (driver.isOnline() && driver.isAvailable() && cover.contains(cell)) {
+                    expected.add(driver.getDriverId());
+                }
+            }
+
+            List<IndexedDriver> found = new ArrayList<>();
+            index.forEachAvailable(cover, null, found::add);
+
+            assertEquals(expected.size(), found.size(), "precision " + cover.getPrecision());
+            assertEquals(expected, ids(found), "precision " + cover.getPrecision());
+        }
+    }
+
+    @Test
+    void countAvailableByCell_shouldCountOnlineAvailableDriversPerCell() {
+        List<IndexedDriver> drivers = scatter(new Random(29), 2_000);
+        // Claimed drivers are not available either
+        for (int i = 0; i < 100; i++) {
+            index.tryClaim(drivers.get(i));
+        }
+
+        for (int precision = 4; precision <= DriverLocationIndex.CELL_PRECISION; precision++) {
+            Map<Long, Integer> expected = new HashMap<>();
+            for (IndexedDriver driver : drivers) {
+                if (driver.isOnline() && driver.isAvailable()) {
+                    expected.merge(GeohashService.truncate(driver.getGeohashBits(), GeohashService.MAX_PRECISION,
+                        precision), 1, Integer::sum);
+                }
+            }
+
+            assertEquals(expected, index.countAvailableByCell(precision), "precision " + precision);
+        }
+    }
+
+    /**
+     * Index drivers within about 8 km of the centre, with mixed online and available flags
+     */
+    private List<IndexedDriver> scatter(Random random, int count) {
+        List<IndexedDriver> drivers = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            double lat = LAT + (random.nextDouble() - 0.5) * 0.15;
+            double lon = LON + (random.nextDouble() - 0.5) * 0.2;
+            drivers.add(put(id, lat, lon, random.nextInt(5) != 0, random.nextInt(4) != 0, "STANDARD"));
+        }
+        return drivers;
+    }
+
+    private IndexedDriver put(Long id, double lat, double lon, boolean online, boolean available, String vehicleType) {
+        return index.put(User.builder().id(id).build(), lat, lon, bits(lat, lon), online, available, vehicleType,
+            LocalDateTime.now());
+    }
+
+    private static long bits(double lat, double lon) {
+        return GeohashService.encodeBits(lat, lon, GeohashService.MAX_PRECISION);
+    }
+
+    private static Set<Long> ids(List<IndexedDriver> drivers) {
+        Set<Long> ids = new HashSet<>();
+        for (IndexedDriver driver : drivers) {
+            ids.add(driver.getDriverId());
+        }
+        return ids;
+    }
+}
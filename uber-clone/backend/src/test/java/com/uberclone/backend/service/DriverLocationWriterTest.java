@@ -0,0 +1,134 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.DriverLocation;
+import com.uberclone.backend.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class DriverLocationWriterTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final DriverLocationIndex index = new DriverLocationIndex();
+    private final DriverLocationWriter writer =
+        new DriverLocationWriter(jdbcTemplate, index, new GeohashService(), new SimpleMeterRegistry());
+
+    // One entry per bound row: the statement the writer filled in
+    private final List<PreparedStatement> rows = new ArrayList<>();
+
+    private IndexedDriver driver;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(writer, "maxBatchSize", 500);
+        ReflectionTestUtils.setField(writer, "minMoveMeters", 15.0);
+        bindRows();
+
+        User user = new User();
+        user.setId(7L);
+        driver = index.put(user, 37.7749, -122.4194, GeohashService.encodeBits(37.7749, -122.4194, GeohashService.MAX_PRECISION),
+            true, true, "SEDAN", LocalDateTime.now());
+        writer.persist(driver);
+        writer.flush();
+        assertEquals(1, rows.size());
+        verify(rows.get(0)).setBoolean(9, false);
+        rows.clear();
+    }
+
+    @Test
+    void flush_shouldSkipDriversThatHaveNotMoved() {
+        writer.persist(driver);
+        writer.flush();
+
+        assertTrue(rows.isEmpty());
+    }
+
+    @Test
+    void flush_shouldWriteAReleaseAfterAClaimTheWriterNeverSaw() throws Exception {
+        // The claim flips is_available in the row only; release restores the state last written
+        index.tryClaim(driver);
+        index.release(driver);
+        writer.persistRelease(driver);
+        writer.flush();
+
+        assertEquals(1, rows.size());
+        verify(rows.get(0)).setBoolean(7, true);
+        verify(rows.get(0)).setBoolean(9, true);
+        verify(rows.get(0)).setBoolean(10, true);
+    }
+
+    @Test
+    void flush_shouldKeepAReleaseForTheRetryWhenTheBatchFails() throws Exception {
+        index.tryClaim(driver);
+        index.release(driver);
+        writer.persistRelease(driver);
+        doThrow(new QueryTimeoutException("timeout"))
+            .when(jdbcTemplate).batchUpdate(anyString(), anyBatch(), anyInt(), anySetter());
+        writer.flush();
+
+        bindRows();
+        writer.flush();
+
+        assertEquals(1, rows.size());
+        verify(rows.get(0)).setBoolean(9, true);
+    }
+
+    @Test
+    void flush_shouldForgetDriversOnceTheyGoOffline() {
+        index.update(driver, driver.getLatitude(), driver.getLongitude(), driver.getGeohashBits(),
+            false, false, LocalDateTime.now());
+        writer.persist(driver);
+        writer.flush();
+
+        assertEquals(1, rows.size());
+        Map<?, ?> lastWritten = (Map<?, ?>) ReflectionTestUtils.getField(writer, "lastWritten");
+        assertFalse(lastWritten.containsKey(driver.getDriverId()));
+    }
+
+    /**
+     * Bind every row of each batch the writer sends to its own mock statement
+     */
+    private void bindRows() {
+        doAnswer(invocation -> {
+            Collection<DriverLocation> batch = invocation.getArgument(1);
+            ParameterizedPreparedStatementSetter<DriverLocation> setter = invocation.getArgument(3);
+            for (DriverLocation location : batch) {
+                PreparedStatement ps = mock(PreparedStatement.class);
+                setter.setValues(ps, location);
+                rows.add(ps);
+            }
+            return new int[0][];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyBatch(), anyInt(), anySetter());
+    }
+
+    private static Collection<DriverLocation> anyBatch() {
+        return anyCollection();
+    }
+
+    private static ParameterizedPreparedStatementSetter<DriverLocation> anySetter() {
+        return any();
+    }
+}
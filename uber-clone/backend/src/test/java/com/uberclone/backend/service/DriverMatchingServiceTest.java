@@ -0,0 +1,247 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.DriverLocation;
+import com.uberclone.backend.model.Ride;
+import com.uberclone.backend.model.RideRequest;
+import com.uberclone.backend.model.User;
+import com.uberclone.backend.repository.DriverLocationRepository;
+import com.uberclone.backend.repository.RideEventRepository;
+import com.uberclone.backend.repository.RideRepository;
+import com.uberclone.backend.repository.RideRequestRepository;
+import com.uberclone.backend.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DriverMatchingServiceTest {
+
+    private static final double PICKUP_LAT = 40.75;
+    private static final double PICKUP_LON = -73.99;
+
+    @TempDir
+    Path tempDir;
+
+    private final DriverLocationRepository driverLocationRepository = mock(DriverLocationRepository.class);
+    private final DriverLocationIndex driverLocationIndex = new DriverLocationIndex();
+    private final RoutingEngine routingEngine = new RoutingEngine();
+    private final DriverMatchingService driverMatchingService = new DriverMatchingService(
+        driverLocationRepository, mock(UserRepository.class), new GeohashService(),
+        driverLocationIndex, mock(DriverLocationWriter.class), routingEngine);
+
+    @Test
+    void findAvailableDrivers_shouldDropDriversThatCannotReachThePickup() throws Exception {
+        // Pickup at node 0; node 1 is a block north but its street is one-way away from it,
+        // node 2 is three blocks east and drives in
+        loadGraph(new int[]{0, 2}, new int[]{1, 0}, new int[]{10_000, 60_000});
+
+        index(1L, PICKUP_LAT + 0.0009, PICKUP_LON);
+        index(2L, PICKUP_LAT, PICKUP_LON + 0.0036);
+        // Far enough from every node to be off the graph: ranked by straight-line distance
+        index(3L, PICKUP_LAT + 0.2, PICKUP_LON);
+
+        assertEquals(List.of(2L, 3L), rankedIds(25.0));
+    }
+
+    @Test
+    void assignDriversToRides_shouldSolveOnTheTravelTimeScores() throws Exception {
+        // The driver a block north is closest in a straight line but ten minutes away by road
+        loadGraph(new int[]{1, 2}, new int[]{0, 0}, new int[]{600_000, 30_000});
+        index(1L, PICKUP_LAT + 0.0009, PICKUP_LON);
+        index(2L, PICKUP_LAT, PICKUP_LON + 0.0036);
+        when(driverLocationRepository.claimAvailableDriver(anyLong())).thenReturn(1);
+
+        assertEquals(List.of(2L, 1L), rankedIds(2.0));
+        List<Optional<User>> assigned = driverMatchingService.assignDriversToRides(List.of(pickupRequest()), 2.0);
+
+        assertEquals(2L, assigned.get(0).orElseThrow().getId());
+    }
+
+    @Test
+    void assignDriversToRides_shouldFallBackWithinTheBatchRadius() {
+        // The solved driver is refused by the database; the only other one is 7 km out
+        index(1L, PICKUP_LAT, PICKUP_LON);
+        index(2L, PICKUP_LAT + 0.063, PICKUP_LON);
+        when(driverLocationRepository.claimAvailableDriver(1L)).thenReturn(0);
+        when(driverLocationRepository.claimAvailableDriver(2L)).thenReturn(1);
+
+        List<Optional<User>> assigned = driverMatchingService.assignDriversToRides(List.of(pickupRequest()), 10.0);
+
+        assertEquals(2L, assigned.get(0).orElseThrow().getId());
+    }
+
+    @Test
+    void assignDriversToRides_shouldLoadNearestDriversWhenTheIndexIsCold() {
+        User driver = User.builder().id(5L).rating(4.5).build();
+        DriverLocation location = DriverLocation.builder().id(50L).driver(driver)
+            .latitude(PICKUP_LAT + 0.001).longitude(PICKUP_LON)
+            .isOnline(true).isAvailable(true).timestamp(LocalDateTime.now()).build();
+        when(driverLocationRepository.findNearestAvailableIds(PICKUP_LAT, PICKUP_LON, 2_000.0, 50))
+            .thenReturn(List.of(50L));
+        when(driverLocationRepository.findByIdIn(List.of(50L))).thenReturn(List.of(location));
+        when(driverLocationRepository.claimAvailableDriver(5L)).thenReturn(1);
+
+        List<Optional<User>> assigned = driverMatchingService.assignDriversToRides(List.of(pickupRequest()), 2.0);
+
+        assertEquals(5L, assigned.get(0).orElseThrow().getId());
+    }
+
+    @Test
+    void refreshDriverFeatures_shouldUpdateIndexedRatingsOnly() {
+        IndexedDriver rated = index(1L, PICKUP_LAT, PICKUP_LON);
+        IndexedDriver unrated = index(2L, PICKUP_LAT, PICKUP_LON);
+        when(driverLocationRepository.findOnlineDriverFeatures()).thenReturn(List.of(
+            features(1L, 3.2), features(2L, null), features(3L, 4.9)));
+
+        driverMatchingService.refreshDriverFeatures();
+
+        assertEquals(3.2, rated.getRating());
+        assertEquals(4.5, unrated.getRating());
+        assertNull(driverLocationIndex.get(3L));
+    }
+
+    @Test
+    void assignDriverToRide_shouldGiveOneDriverToExactlyOneConcurrentRequest() throws Exception {
+        when(driverLocationRepository.claimAvailableDriver(anyLong())).thenReturn(1);
+        int requests = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(requests);
+        try {
+            for (int round = 0; round < 50; round++) {
+                IndexedDriver driver = index(1L, PICKUP_LAT, PICKUP_LON);
+                driverLocationIndex.release(driver);
+
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Optional<User>>> results = new ArrayList<>();
+                for (int i = 0; i < requests; i++) {
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        return driverMatchingService.assignDriverToRide(pickupRequest(), 2.0);
+                    }));
+                }
+                start.countDown();
+
+                int winners = 0;
+                for (Future<Optional<User>> result : results) {
+                    winners += result.get(5, TimeUnit.SECONDS).isPresent() ? 1 : 0;
+                }
+                assertEquals(1, winners);
+                assertTrue(driver.isClaimed());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void assignDriverToRide_shouldAbandonTheClaimWhenTheDatabaseRefuses() {
+        IndexedDriver driver = index(1L, PICKUP_LAT, PICKUP_LON);
+        when(driverLocationRepository.claimAvailableDriver(1L)).thenReturn(0);
+
+        assertTrue(driverMatchingService.assignDriverToRide(pickupRequest(), 2.0).isEmpty());
+
+        assertTrue(driver.isAvailable());
+        assertEquals(List.of(1L), rankedIds(2.0));
+    }
+
+    @Test
+    void updateDriverLocation_shouldNotReopenAClaimedDriver() {
+        IndexedDriver driver = index(1L, PICKUP_LAT, PICKUP_LON);
+        when(driverLocationRepository.claimAvailableDriver(1L)).thenReturn(1);
+        assertTrue(driverMatchingService.assignDriverToRide(pickupRequest(), 2.0).isPresent());
+
+        // The driver's app still reports available while heading to the pickup
+        driverMatchingService.updateDriverLocation(1L, PICKUP_LAT + 0.001, PICKUP_LON, true, true);
+
+        assertTrue(driver.isClaimed());
+        assertTrue(rankedIds(2.0).isEmpty());
+    }
+
+    @Test
+    void completingARide_shouldMakeTheDriverMatchableAgain() {
+        User driverUser = index(1L, PICKUP_LAT, PICKUP_LON).getDriver();
+        when(driverLocationRepository.claimAvailableDriver(1L)).thenReturn(1);
+        assertTrue(driverMatchingService.assignDriverToRide(pickupRequest(), 2.0).isPresent());
+        assertTrue(rankedIds(2.0).isEmpty());
+
+        RideRepository rideRepository = mock(RideRepository.class);
+        Ride completed = Ride.builder().id(9L).driver(driverUser).status(Ride.Status.COMPLETED).build();
+        when(rideRepository.transitionStatus(eq(9L), anyList(), eq("COMPLETED"), any(), any(), any(), any()))
+            .thenReturn(Optional.of(completed));
+        RideService rideService = new RideService(rideRepository, mock(RideRequestRepository.class),
+            mock(RideEventRepository.class), mock(UserRepository.class), driverMatchingService,
+            mock(BatchDispatchService.class), mock(DispatchExecutor.class), mock(RideRequestTimers.class),
+            mock(PricingService.class), mock(GeohashService.class), mock(NotificationService.class),
+            mock(SimpMessagingTemplate.class), mock(PlatformTransactionManager.class));
+
+        rideService.updateRideStatus(9L, Ride.Status.COMPLETED, null);
+
+        assertFalse(driverLocationIndex.get(1L).isClaimed());
+        assertEquals(List.of(1L), rankedIds(2.0));
+    }
+
+    /**
+     * Load a graph over the pickup (node 0), a node a block north (1) and one three blocks east (2)
+     */
+    private void loadGraph(int[] tails, int[] heads, int[] millis) throws Exception {
+        double[] latitudes = {PICKUP_LAT, PICKUP_LAT + 0.0009, PICKUP_LAT};
+        double[] longitudes = {PICKUP_LON, PICKUP_LON, PICKUP_LON + 0.0036};
+        Path file = tempDir.resolve("streets.graph");
+        RoadGraph.write(file, latitudes, longitudes, tails, heads, millis);
+        routingEngine.setGraph(RoadGraph.load(file));
+        ReflectionTestUtils.setField(routingEngine, "accessSpeedKmh", 15.0);
+        ReflectionTestUtils.setField(routingEngine, "maxEtaSeconds", 1800.0);
+    }
+
+    private IndexedDriver index(Long id, double latitude, double longitude) {
+        User driver = User.builder().id(id).rating(4.5).build();
+        return driverLocationIndex.put(driver, latitude, longitude,
+            GeohashService.encodeBits(latitude, longitude, GeohashService.MAX_PRECISION),
+            true, true, "STANDARD", LocalDateTime.now());
+    }
+
+    private static DriverLocationRepository.DriverFeatures features(Long driverId, Double rating) {
+        return new DriverLocationRepository.DriverFeatures() {
+            public Long getDriverId() { return driverId; }
+            public Double getRating() { return rating; }
+            public Integer getRatingCount() { return rating == null ? 0 : 10; }
+        };
+    }
+
+    private List<Long> rankedIds(double radiusKm) {
+        return driverMatchingService.findAvailableDrivers(pickupRequest(), radiusKm).stream()
+            .map(location -> location.getDriver().getId())
+            .collect(Collectors.toList());
+    }
+
+    private static RideRequest pickupRequest() {
+        RideRequest rideRequest = new RideRequest();
+        rideRequest.setId(1L);
+        rideRequest.setPickupLatitude(PICKUP_LAT);
+        rideRequest.setPickupLongitude(PICKUP_LON);
+        return rideRequest;
+    }
+}
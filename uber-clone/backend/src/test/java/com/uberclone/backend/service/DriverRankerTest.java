@@ -0,0 +1,62 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DriverRankerTest {
+
+    @Test
+    void drain_shouldReturnTopKInDescendingOrder() {
+        Random random = new Random(11);
+        List<IndexedDriver> candidates = new ArrayList<>();
+        for (long id = 1; id <= 500; id++) {
+            User user = User.builder().id(id).rating(random.nextDouble() * 5).build();
+            candidates.add(new IndexedDriver(user, "STANDARD"));
+        }
+
+        DriverRanker ranker = new DriverRanker(10);
+        for (IndexedDriver candidate : candidates) {
+            ranker.offer(candidate, candidate.getRating());
+        }
+        List<IndexedDriver> ranked = ranker.drain();
+
+        List<IndexedDriver> expected = candidates.stream()
+            .sorted(Comparator.comparingDouble(IndexedDriver::getRating).reversed())
+            .limit(10)
+            .collect(Collectors.toList());
+        assertEquals(expected, ranked);
+    }
+
+    @Test
+    void drain_shouldCopyScoresBestFirst() {
+        DriverRanker ranker = new DriverRanker(3);
+        double[] offered = {2.0, 9.0, 4.0, 7.0};
+        for (int i = 0; i < offered.length; i++) {
+            ranker.offer(new IndexedDriver(User.builder().id((long) i).build(), null), offered[i]);
+        }
+        double[] scores = new double[3];
+
+        List<IndexedDriver> ranked = ranker.drain(scores);
+
+        assertEquals(List.of(1L, 3L, 2L), ranked.stream().map(IndexedDriver::getDriverId).collect(Collectors.toList()));
+        assertEquals(List.of(9.0, 7.0, 4.0), Arrays.stream(scores).boxed().collect(Collectors.toList()));
+    }
+
+    @Test
+    void drain_shouldResetForReuse() {
+        DriverRanker ranker = new DriverRanker(3);
+        ranker.offer(new IndexedDriver(User.builder().id(1L).build(), null), 1.0);
+        assertEquals(1, ranker.drain().size());
+        assertTrue(ranker.drain().isEmpty());
+    }
+}
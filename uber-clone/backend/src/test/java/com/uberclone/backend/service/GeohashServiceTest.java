@@ -0,0 +1,161 @@
+package com.uberclone.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GeohashServiceTest {
+
+    private final GeohashService geohashService = new GeohashService();
+
+    @Test
+    void encode_shouldMatchKnownGeohash() {
+        assertEquals("u4pruydqqvj", geohashService.encode(57.64911, 10.40744, 11));
+        assertEquals("dr5ru7", geohashService.encode(40.7589, -73.9851, 6));
+    }
+
+    @Test
+    void encodeBits_shouldAgreeWithStringForm() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            double lat = random.nextDouble() * 180.0 - 90.0;
+            double lon = random.nextDouble() * 360.0 - 180.0;
+            String reference = referenceEncode(lat, lon, GeohashService.MAX_PRECISION);
+            long hash = GeohashService.encodeBits(lat, lon, GeohashService.MAX_PRECISION);
+
+            assertEquals(reference, GeohashService.toBase32(hash, GeohashService.MAX_PRECISION));
+            assertEquals(hash, GeohashService.fromBase32(reference));
+            for (int precision = 1; precision <= GeohashService.MAX_PRECISION; precision++) {
+                long truncated = GeohashService.truncate(hash, GeohashService.MAX_PRECISION, precision);
+                assertEquals(reference.substring(0, precision), GeohashService.toBase32(truncated, precision));
+            }
+        }
+    }
+
+    @Test
+    void decodeBits_shouldReturnCellCentre() {
+        long hash = GeohashService.fromBase32("dr5ru7");
+        double[] coords = geohashService.decode("dr5ru7");
+
+        assertEquals(coords[0], GeohashService.decodeLatitude(hash, 6));
+        assertEquals(coords[1], GeohashService.decodeLongitude(hash, 6));
+        assertEquals(40.7589, coords[0], 0.003);
+        assertEquals(-73.9851, coords[1], 0.006);
+    }
+
+    @Test
+    void decode_shouldIgnoreCharactersPastMaxPrecision() {
+        // Longer hashes from other systems decode as their twelve-character prefix
+        double[] full = geohashService.decode("u4pruydqqvjwxyz");
+        double[] prefix = geohashService.decode("u4pruydqqvjw");
+
+        assertEquals(prefix[0], full[0]);
+        assertEquals(prefix[1], full[1]);
+        assertEquals(57.64911, full[0], 1e-5);
+        assertEquals(10.40744, full[1], 1e-5);
+        assertThrows(IllegalArgumentException.class, () -> geohashService.decode("u4pruydqqvjwa"));
+    }
+
+    @Test
+    void hasPrefix_shouldCompareByShift() {
+        long hash = GeohashService.fromBase32("dr5ru7c");
+        assertTrue(GeohashService.hasPrefix(hash, 7, GeohashService.fromBase32("dr5r"), 4));
+        assertFalse(GeohashService.hasPrefix(hash, 7, GeohashService.fromBase32("dr5q"), 4));
+    }
+
+    @Test
+    void getNeighbors_shouldReturnAdjacentCells() {
+        List<String> neighbors = geohashService.getNeighbors("dr5ru7");
+
+        assertEquals(8, neighbors.size());
+        assertTrue(neighbors.containsAll(List.of("dr5ru5", "dr5ruk", "dr5rue", "dr5ru6")));
+        assertTrue(geohashService.areNeighbors("dr5ru7", "dr5ruk"));
+        assertFalse(geohashService.areNeighbors("dr5ru7", "dr5ru7"));
+    }
+
+    @Test
+    void getNeighbors_shouldWrapLongitudeAndStopAtPoles() {
+        String northEast = geohashService.encode(89.99, 179.99, 5);
+        List<String> neighbors = geohashService.getNeighbors(northEast);
+
+        assertEquals(5, neighbors.size());
+        assertTrue(neighbors.contains(geohashService.encode(89.99, -179.99, 5)));
+    }
+
+    @Test
+    void cover_shouldContainEveryPointWithinRadius() {
+        assertCoversRadius(40.7589, -73.9851, 3.0);
+    }
+
+    @Test
+    void cover_shouldWrapAcrossTheAntimeridian() {
+        assertCoversRadius(-16.5, 179.99, 3.0);
+        assertCoversRadius(-16.5, -179.99, 3.0);
+    }
+
+    private void assertCoversRadius(double lat, double lon, double radiusKm) {
+        GeohashService.Cover cover = geohashService.cover(lat, lon, radiusKm, 6, 256);
+
+        assertEquals(6, cover.getPrecision());
+        Random random = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            double bearing = random.nextDouble() * 2 * Math.PI;
+            double distance = Math.sqrt(random.nextDouble()) * radiusKm * 0.999;
+            double pointLat = lat + Math.toDegrees(distance / 6371.0) * Math.cos(bearing);
+            double pointLon = lon + Math.toDegrees(distance / 6371.0) * Math.sin(bearing) / Math.cos(Math.toRadians(lat));
+            if (geohashService.calculateDistance(lat, lon, pointLat, pointLon) > radiusKm) {
+                continue;
+            }
+            // Points past the antimeridian wrap to the other side
+            pointLon = pointLon >= 180.0 ? pointLon - 360.0 : pointLon < -180.0 ? pointLon + 360.0 : pointLon;
+            assertTrue(cover.contains(GeohashService.encodeBits(pointLat, pointLon, 6)));
+        }
+    }
+
+    @Test
+    void cover_shouldCoarsenWhenCellBudgetIsExceeded() {
+        GeohashService.Cover cover = geohashService.cover(40.7589, -73.9851, 50.0, 6, 64);
+
+        assertTrue(cover.getPrecision() < 6);
+        assertTrue(cover.size() <= 64);
+        assertTrue(cover.contains(GeohashService.encodeBits(40.7589, -73.9851, cover.getPrecision())));
+    }
+
+    /**
+     * The original StringBuilder-based bisection, kept as the parity oracle
+     */
+    private static String referenceEncode(double latitude, double longitude, int precision) {
+        String base32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+        double[] latRange = {-90.0, 90.0};
+        double[] lonRange = {-180.0, 180.0};
+        boolean isEven = true;
+        int bit = 0;
+        int ch = 0;
+        StringBuilder geohash = new StringBuilder();
+
+        while (geohash.length() < precision) {
+            double[] range = isEven ? lonRange : latRange;
+            double value = isEven ? longitude : latitude;
+            double mid = (range[0] + range[1]) / 2.0;
+            if (value >= mid) {
+                ch |= (1 << (4 - bit));
+                range[0] = mid;
+            } else {
+                range[1] = mid;
+            }
+            isEven = !isEven;
+            if (++bit == 5) {
+                geohash.append(base32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return geohash.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package com.uberclone.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LocalModelEvaluatorTest {
+
+    private static final String MODELS = """
+        {
+          "version": "v1",
+          "models": {
+            "eta": { "type": "linear", "bias": 2.0, "min": 1,
+                     "weights": { "distance_km": 2.0, "is_peak_hour": 5.0, "vehicle_type": 0.5 } },
+            "surge": { "type": "gbt", "bias": 1.0, "min": 1.0, "max": 3.0, "trees": [
+              { "nodes": [
+                { "feature": "demand_supply_ratio", "threshold": 1.5, "left": 1, "right": 2 },
+                { "leaf": 0.0 },
+                { "feature": "is_weekend", "threshold": 0.5, "left": 3, "right": 4 },
+                { "leaf": 0.4 },
+                { "leaf": 0.6 } ] },
+              { "nodes": [
+                { "feature": "current_demand", "threshold": 50, "left": 1, "right": 2 },
+                { "leaf": 0.0 },
+                { "leaf": 5.0 } ] } ] }
+          }
+        }
+        """;
+
+    @TempDir
+    Path tempDir;
+
+    private final LocalModelEvaluator evaluator = new LocalModelEvaluator(new ObjectMapper());
+
+    @Test
+    void predictions_shouldFollowLoadedModels() throws Exception {
+        Path file = tempDir.resolve("models.json");
+        Files.writeString(file, MODELS);
+        ReflectionTestUtils.setField(evaluator, "modelPath", file.toString());
+        evaluator.reload();
+
+        double distance = GeohashService.haversineKm(40.75, -73.99, 40.76, -73.98);
+        assertEquals(2.0 + 2.0 * distance + 5.0 + 0.5 * 2,
+            evaluator.predictEtaMinutes(40.75, -73.99, 40.76, -73.98, "PREMIUM", 8, 2), 1e-9);
+        assertEquals(1.0, evaluator.predictSurgeMultiplier(40.75, -73.99, 10, 10, 12, false), 1e-9);
+        assertEquals(1.4, evaluator.predictSurgeMultiplier(40.75, -73.99, 20, 10, 12, false), 1e-9);
+        assertEquals(1.6, evaluator.predictSurgeMultiplier(40.75, -73.99, 20, 10, 12, true), 1e-9);
+        assertEquals(3.0, evaluator.predictSurgeMultiplier(40.75, -73.99, 80, 10, 12, true), 1e-9);
+    }
+
+    @Test
+    void reload_shouldSwapOnChangeAndKeepModelsOnBadFile() throws Exception {
+        Path file = tempDir.resolve("models.json");
+        Files.writeString(file, MODELS);
+        ReflectionTestUtils.setField(evaluator, "modelPath", file.toString());
+        evaluator.reload();
+        assertEquals("v1", evaluator.getVersion());
+
+        Files.writeString(file, "{ \"version\": \"v2\", \"models\": {} }");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(60)));
+        evaluator.reload();
+        assertEquals("v2", evaluator.getVersion());
+        assertFalse(evaluator.hasEtaModel());
+        assertTrue(Double.isNaN(evaluator.predictEtaMinutes(40.75, -73.99, 40.76, -73.98, "STANDARD", 8, 2)));
+
+        // A tree pointing backwards is rejected and v2 stays loaded
+        Files.writeString(file, MODELS.replace("\"version\": \"v1\"", "\"version\": \"v3\"")
+            .replace("\"left\": 3", "\"left\": 0"));
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(120)));
+        evaluator.reload();
+        assertEquals("v2", evaluator.getVersion());
+    }
+}
@@ -0,0 +1,61 @@
+package com.uberclone.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PredictionBatcherTest {
+
+    @Test
+    void submit_shouldCoalesceAndAnswerInOrder() throws Exception {
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        try (PredictionBatcher<Integer, Integer> batcher = new PredictionBatcher<>("test", 8, 50, 1,
+            queries -> {
+                await(release);
+                batchSizes.add(queries.size());
+                return Optional.of(queries.stream().map(q -> q * q).toList());
+            }, new SimpleMeterRegistry())) {
+
+            // The single sender is held on the first batch, so everything after it piles up
+            List<CompletableFuture<Optional<Integer>>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(batcher.submit(i));
+            }
+            release.countDown();
+
+            for (int i = 0; i < 20; i++) {
+                assertEquals(Optional.of(i * i), results.get(i).join());
+            }
+            assertEquals(20, batchSizes.stream().mapToInt(Integer::intValue).sum());
+            assertTrue(batchSizes.stream().allMatch(size -> size <= 8));
+            assertTrue(batchSizes.size() <= 4);
+        }
+    }
+
+    @Test
+    void submit_shouldAnswerEmptyWhenBatchFails() {
+        try (PredictionBatcher<Integer, Integer> batcher = new PredictionBatcher<>("test", 4, 1, 2,
+            queries -> Optional.empty(), new SimpleMeterRegistry())) {
+
+            assertEquals(Optional.empty(), batcher.submit(1).join());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.uberclone.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PredictionCacheTest {
+
+    @Test
+    void get_shouldShareOneInFlightPredictionPerKey() throws Exception {
+        AtomicInteger predictions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        PredictionCache<String, Integer, Integer> cache = new PredictionCache<>("test", 100,
+            Duration.ofMinutes(10), Duration.ofMinutes(5), executor,
+            (key, inputs) -> {
+                predictions.incrementAndGet();
+                await(release);
+                return Optional.of(inputs * 2);
+            }, new SimpleMeterRegistry());
+
+        List<CompletableFuture<Optional<Integer>>> callers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            callers.add(CompletableFuture.supplyAsync(() -> cache.get("cell", 21)));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        for (CompletableFuture<Optional<Integer>> caller : callers) {
+            assertEquals(Optional.of(42), caller.join());
+        }
+        assertEquals(1, predictions.get());
+        executor.shutdown();
+    }
+
+    @Test
+    void get_shouldNotCacheEmptyAndKeepOldValueOnFailedRefresh() throws Exception {
+        AtomicInteger predictions = new AtomicInteger();
+        List<Optional<Integer>> answers = List.of(Optional.empty(), Optional.of(7), Optional.empty(), Optional.of(9));
+        PredictionCache<String, Integer, Integer> cache = new PredictionCache<>("test", 100,
+            Duration.ofMinutes(10), Duration.ofMillis(100), Runnable::run,
+            (key, inputs) -> answers.get(predictions.getAndIncrement()), new SimpleMeterRegistry());
+
+        assertEquals(Optional.empty(), cache.get("cell", 1));
+        assertEquals(Optional.of(7), cache.get("cell", 1));
+
+        // Past the refresh interval a hit re-predicts; an empty refresh keeps the cached value
+        Thread.sleep(150);
+        assertEquals(Optional.of(7), cache.get("cell", 1));
+        assertEquals(3, predictions.get());
+
+        Thread.sleep(150);
+        cache.get("cell", 1);
+        assertEquals(Optional.of(9), cache.get("cell", 1));
+        assertEquals(4, predictions.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.uberclone.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PricingServiceTest {
+
+    private static final List<String> VEHICLE_TYPES = List.of("STANDARD", "COMFORT", "PREMIUM", "POOL");
+
+    private final GeohashService geohashService = new GeohashService();
+    private final SurgePricingEngine surgePricingEngine =
+        new SurgePricingEngine(null, new DriverLocationIndex(), new SimpleMeterRegistry());
+    private final PricingService pricingService = new PricingService(geohashService, surgePricingEngine);
+
+    @BeforeEach
+    void publishSurge() {
+        // Surge the business district cell and one of its neighbours
+        long downtown = GeohashService.encodeBits(40.7589, -73.9851, SurgePricingEngine.SURGE_PRECISION);
+        surgePricingEngine.publish(Map.of(
+            downtown, 130,
+            GeohashService.neighbor(downtown, SurgePricingEngine.SURGE_PRECISION, 0, 1), 150));
+    }
+
+    @Test
+    void calculateFareBreakdown_shouldMatchLegacyBigDecimalChain() {
+        Random random = new Random(17);
+        for (int i = 0; i < 20_000; i++) {
+            // Around the business district so surging and calm cells are both exercised
+            double pickupLat = 40.7589 + (random.nextDouble() - 0.5) * 0.1;
+            double pickupLon = -73.9851 + (random.nextDouble() - 0.5) * 0.1;
+            double dropoffLat = pickupLat + (random.nextDouble() - 0.5) * random.nextInt(3);
+            double dropoffLon = pickupLon + (random.nextDouble() - 0.5) * random.nextInt(3);
+            String vehicleType = VEHICLE_TYPES.get(random.nextInt(VEHICLE_TYPES.size()));
+            LocalTime time = LocalTime.ofSecondOfDay(random.nextInt(24 * 60 * 60));
+
+            PricingService.FareBreakdown breakdown = pricingService.calculateFareBreakdown(
+                pickupLat, pickupLon, dropoffLat, dropoffLon, vehicleType, time);
+            LegacyQuote legacy = legacyQuote(pickupLat, pickupLon, dropoffLat, dropoffLon, vehicleType, time);
+
+            assertEquals(legacy.totalFare, breakdown.getTotalFare());
+            assertEquals(legacy.distanceFare, breakdown.getDistanceFare());
+            assertEquals(legacy.timeFare, breakdown.getTimeFare());
+            assertEquals(legacy.vehicleMultiplier, breakdown.getVehicleMultiplier());
+            assertEquals(legacy.peakHourMultiplier, breakdown.getPeakHourMultiplier());
+            assertEquals(legacy.surgeMultiplier, breakdown.getSurgeMultiplier());
+        }
+    }
+
+    @Test
+    void calculateFareBreakdowns_shouldMatchSingleVehicleQuotes() {
+        LocalTime time = LocalTime.of(8, 30);
+        Map<String, PricingService.FareBreakdown> breakdowns = pricingService.calculateFareBreakdowns(
+            40.7589, -73.9851, 40.7306, -73.9352, time);
+
+        assertEquals(VEHICLE_TYPES, List.copyOf(breakdowns.keySet()));
+        for (String vehicleType : VEHICLE_TYPES) {
+            PricingService.FareBreakdown single = pricingService.calculateFareBreakdown(
+                40.7589, -73.9851, 40.7306, -73.9352, vehicleType, time);
+            assertEquals(single.getTotalFare(), breakdowns.get(vehicleType).getTotalFare());
+            assertEquals(single.getVehicleMultiplier(), breakdowns.get(vehicleType).getVehicleMultiplier());
+            assertEquals(single.getSurgeMultiplier(), breakdowns.get(vehicleType).getSurgeMultiplier());
+        }
+    }
+
+    @Test
+    void fareQuoteCache_shouldPricePeakBoundariesLikeTheRequestTime() {
+        FareQuoteCache fareQuoteCache =
+            new FareQuoteCache(pricingService, surgePricingEngine, 1_000, 7, new SimpleMeterRegistry());
+        String[] times = {"06:59:59", "07:00:00", "07:00:01", "07:00:30", "08:59:59", "09:00:00",
+            "16:59:59", "17:00:00", "17:00:59", "18:59:59", "19:00:00"};
+        for (String text : times) {
+            LocalTime time = LocalTime.parse(text);
+            PricingService.FareBreakdown cached = fareQuoteCache.getQuote(
+                40.7589, -73.9851, 40.7306, -73.9352, "STANDARD", time);
+            PricingService.FareBreakdown direct = pricingService.calculateFareBreakdown(
+                40.7589, -73.9851, 40.7306, -73.9352, "STANDARD", time);
+
+            assertEquals(direct.getPeakHourMultiplier(), cached.getPeakHourMultiplier(), text);
+        }
+        // Windows open just after the hour, and a cached quote keeps that within the first minute
+        assertEquals(BigDecimal.ONE, fareQuoteCache.getQuote(
+            40.7589, -73.9851, 40.7306, -73.9352, "STANDARD", LocalTime.of(17, 0)).getPeakHourMultiplier());
+        assertEquals(new BigDecimal("1.2"), fareQuoteCache.getQuote(
+            40.7589, -73.9851, 40.7306, -73.9352, "STANDARD", LocalTime.of(17, 0, 30)).getPeakHourMultiplier());
+    }
+
+    @Test
+    void fareQuoteCache_shouldStayWithinOneCellOfTheChargedFare() {
+        FareQuoteCache fareQuoteCache =
+            new FareQuoteCache(pricingService, surgePricingEngine, 10_000, 7, new SimpleMeterRegistry());
+        LocalTime time = LocalTime.of(8, 0);
+        Random random = new Random(23);
+        for (int i = 0; i < 2_000; i++) {
+            double pickupLat = 40.7589 + (random.nextDouble() - 0.5) * 0.1;
+            double pickupLon = -73.9851 + (random.nextDouble() - 0.5) * 0.1;
+            double dropoffLat = pickupLat + (random.nextDouble() - 0.5) * 0.2;
+            double dropoffLon = pickupLon + (random.nextDouble() - 0.5) * 0.2;
+            String vehicleType = VEHICLE_TYPES.get(random.nextInt(VEHICLE_TYPES.size()));
+
+            PricingService.FareBreakdown quoted = fareQuoteCache.getQuote(
+                pickupLat, pickupLon, dropoffLat, dropoffLon, vehicleType, time);
+            PricingService.FareBreakdown charged = pricingService.calculateFareBreakdown(
+                pickupLat, pickupLon, dropoffLat, dropoffLon, vehicleType, time);
+
+            assertEquals(charged.getSurgeMultiplier(), quoted.getSurgeMultiplier());
+            assertEquals(charged.getEstimatedDistance(), quoted.getEstimatedDistance(), 0.22);
+            // 0.22 km at 1.50 plus one minute at 0.30, through the shared multipliers
+            BigDecimal tolerance = new BigDecimal("0.64").multiply(charged.getVehicleMultiplier())
+                .multiply(charged.getPeakHourMultiplier()).multiply(charged.getSurgeMultiplier());
+            BigDecimal difference = charged.getTotalFare().subtract(quoted.getTotalFare()).abs();
+            assertTrue(difference.compareTo(tolerance) <= 0, difference + " > " + tolerance);
+        }
+    }
+
+    @Test
+    void totalCents_shouldRoundHalfCentTiesLikeBigDecimal() {
+        long[] vehicles = {100, 130, 180, 70};
+        long[] peaks = {100, 120};
+        long[] surges = {100, 130, 150};
+
+        // Short decimal distances land exactly on half cents far more often than real trips do
+        for (int metres = 0; metres <= 30_000; metres += 7) {
+            double distanceKm = metres / 1000.0;
+            int minutes = FareEngine.estimatedMinutes(distanceKm);
+            for (long vehicle : vehicles) {
+                for (long peak : peaks) {
+                    for (long surge : surges) {
+                        assertEquals(FareEngine.exactTotalCents(distanceKm, minutes, vehicle, peak, surge),
+                            FareEngine.totalCents(distanceKm, minutes, vehicle, peak, surge));
+                    }
+                }
+            }
+        }
+    }
+
+    private record LegacyQuote(BigDecimal distanceFare, BigDecimal timeFare, BigDecimal vehicleMultiplier,
+                               BigDecimal peakHourMultiplier, BigDecimal surgeMultiplier, BigDecimal totalFare) {
+    }
+
+    /**
+     * The original BigDecimal implementation, kept as the parity oracle; surge now comes from the snapshot
+     */
+    private LegacyQuote legacyQuote(double pickupLat, double pickupLon, double dropoffLat, double dropoffLon,
+                                    String vehicleType, LocalTime time) {
+        double distanceKm = geohashService.calculateDistance(pickupLat, pickupLon, dropoffLat, dropoffLon);
+        int estimatedMinutes = (int) Math.ceil(distanceKm * 2);
+
+        BigDecimal distanceFare = new BigDecimal("1.50").multiply(BigDecimal.valueOf(distanceKm));
+        BigDecimal timeFare = new BigDecimal("0.30").multiply(BigDecimal.valueOf(estimatedMinutes));
+        BigDecimal vehicleMultiplier = switch (vehicleType) {
+            case "COMFORT" -> new BigDecimal("1.3");
+            case "PREMIUM" -> new BigDecimal("1.8");
+            case "POOL" -> new BigDecimal("0.7");
+            default -> new BigDecimal("1.0");
+        };
+
+        boolean peak = (time.isAfter(LocalTime.of(7, 0)) && time.isBefore(LocalTime.of(9, 0)))
+            || (time.isAfter(LocalTime.of(17, 0)) && time.isBefore(LocalTime.of(19, 0)));
+        BigDecimal peakHourMultiplier = peak ? new BigDecimal("1.2") : BigDecimal.ONE;
+
+        int surge = surgePricingEngine.getSnapshot().getMultiplier(
+            GeohashService.encodeBits(pickupLat, pickupLon, SurgePricingEngine.SURGE_PRECISION));
+        BigDecimal surgeMultiplier = surge == SurgeSnapshot.NO_SURGE ? BigDecimal.ONE : BigDecimal.valueOf(surge, 2);
+
+        BigDecimal totalFare = new BigDecimal("2.50").add(distanceFare).add(timeFare)
+            .multiply(vehicleMultiplier)
+            .multiply(peakHourMultiplier)
+            .multiply(surgeMultiplier)
+            .setScale(2, RoundingMode.HALF_UP);
+
+        return new LegacyQuote(distanceFare, timeFare, vehicleMultiplier, peakHourMultiplier, surgeMultiplier, totalFare);
+    }
+}
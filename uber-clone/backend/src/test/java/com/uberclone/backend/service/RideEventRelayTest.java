@@ -0,0 +1,107 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.Ride;
+import com.uberclone.backend.model.RideEvent;
+import com.uberclone.backend.model.User;
+import com.uberclone.backend.repository.RideEventRepository;
+import com.uberclone.backend.repository.RideRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RideEventRelayTest {
+
+    private final RideEventRepository rideEventRepository = mock(RideEventRepository.class);
+    private final RideRepository rideRepository = mock(RideRepository.class);
+    private final NotificationService notificationService = mock(NotificationService.class);
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    private final RideEventRelay relay = new RideEventRelay(rideEventRepository, rideRepository,
+        notificationService, messagingTemplate, transactionManager, new SimpleMeterRegistry());
+
+    private final User rider = User.builder().id(1L).build();
+    private final User driver = User.builder().id(2L).build();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(relay, "batchSize", 10);
+        ReflectionTestUtils.setField(relay, "maxAttempts", 3);
+        ReflectionTestUtils.setField(relay, "maxBackoffMillis", 60_000L);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @Test
+    void relay_shouldPushAndNotifyThenMarkPublished() {
+        RideEvent completed = RideEvent.of(10L, Ride.Status.COMPLETED);
+        Ride ride = Ride.builder().id(10L).user(rider).driver(driver).status(Ride.Status.COMPLETED).build();
+        when(rideEventRepository.lockDeliverable(eq(3), any(), eq(10))).thenReturn(List.of(completed)).thenReturn(List.of());
+        when(rideRepository.findById(10L)).thenReturn(Optional.of(ride));
+
+        relay.relay();
+
+        verify(messagingTemplate).convertAndSend("/user/1/ride", ride);
+        verify(messagingTemplate).convertAndSend("/user/2/ride", ride);
+        verify(notificationService).notifyRideCompleted(rider, driver, ride);
+        verify(notificationService).requestRideRating(rider, ride);
+        verify(notificationService).requestDriverRating(driver, ride);
+        assertNotNull(completed.getPublishedAt());
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void relay_shouldKeepFailedEventPendingWithBackoff() {
+        RideEvent failing = RideEvent.of(11L, Ride.Status.IN_PROGRESS);
+        RideEvent other = RideEvent.of(12L, Ride.Status.CANCELLED);
+        Ride otherRide = Ride.builder().id(12L).user(rider).status(Ride.Status.CANCELLED).build();
+        when(rideEventRepository.lockDeliverable(anyInt(), any(), anyInt())).thenReturn(List.of(failing, other)).thenReturn(List.of());
+        when(rideRepository.findById(11L)).thenReturn(Optional.empty());
+        when(rideRepository.findById(12L)).thenReturn(Optional.of(otherRide));
+
+        LocalDateTime before = LocalDateTime.now();
+        relay.relay();
+
+        // One ride's failure does not hold back another ride's event
+        assertNull(failing.getPublishedAt());
+        assertEquals(1, failing.getAttempts());
+        assertEquals("Ride not found", failing.getLastError());
+        assertFalse(failing.getAvailableAt().isBefore(before.plusSeconds(1)));
+        assertNotNull(other.getPublishedAt());
+        verify(notificationService).notifyRideCancelled(rider, null, otherRide);
+    }
+
+    @Test
+    void relay_shouldStopRetryingAfterMaxAttempts() {
+        RideEvent failing = RideEvent.of(11L, Ride.Status.IN_PROGRESS);
+        failing.setAttempts(2);
+        when(rideEventRepository.lockDeliverable(anyInt(), any(), anyInt())).thenReturn(List.of(failing));
+        when(rideRepository.findById(11L)).thenReturn(Optional.empty());
+
+        relay.relay();
+
+        // Nothing was delivered, so the run stops after one batch
+        assertEquals(3, failing.getAttempts());
+        assertNull(failing.getPublishedAt());
+        verify(rideEventRepository).lockDeliverable(anyInt(), any(), anyInt());
+    }
+}
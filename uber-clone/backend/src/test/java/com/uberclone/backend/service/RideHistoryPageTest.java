@@ -0,0 +1,74 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.Ride;
+import com.uberclone.backend.repository.RideRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RideHistoryPageTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 8, 30, 15, 123_456_000);
+
+    @Test
+    void page_shouldHandOutCursorOfLastRowWhenMoreRowsFollow() {
+        List<RideRepository.RideHistoryRow> rows = rows(4);
+
+        RideService.RideHistoryPage page = RideService.RideHistoryPage.of(rows, PageRequest.of(0, 4));
+
+        assertEquals(3, page.rides().size());
+        RideService.HistoryCursor cursor = RideService.HistoryCursor.decode(page.nextCursor());
+        assertEquals(rows.get(2).getCreatedAt(), cursor.createdAt());
+        assertEquals(rows.get(2).getId(), cursor.id());
+    }
+
+    @Test
+    void page_shouldEndWithoutCursorWhenNoMoreRowsFollow() {
+        RideService.RideHistoryPage page = RideService.RideHistoryPage.of(rows(3), PageRequest.of(0, 4));
+
+        assertEquals(3, page.rides().size());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void cursor_shouldRejectGarbage() {
+        assertNull(RideService.HistoryCursor.decode(null));
+        assertThrows(IllegalArgumentException.class, () -> RideService.HistoryCursor.decode("not-a-cursor"));
+    }
+
+    private static List<RideRepository.RideHistoryRow> rows(int count) {
+        List<RideRepository.RideHistoryRow> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new Row(100L - i, T0.minusMinutes(i)));
+        }
+        return rows;
+    }
+
+    private record Row(Long id, LocalDateTime createdAt) implements RideRepository.RideHistoryRow {
+        public Long getId() { return id; }
+        public Long getUserId() { return 1L; }
+        public Long getDriverId() { return 2L; }
+        public Ride.Status getStatus() { return Ride.Status.COMPLETED; }
+        public String getPickupLocation() { return "A"; }
+        public String getDropoffLocation() { return "B"; }
+        public BigDecimal getTotalFare() { return BigDecimal.TEN; }
+        public BigDecimal getDistance() { return BigDecimal.ONE; }
+        public Integer getActualDuration() { return 10; }
+        public String getPaymentMethod() { return "CARD"; }
+        public String getPaymentStatus() { return "PAID"; }
+        public Integer getUserRating() { return null; }
+        public Integer getDriverRating() { return null; }
+        public LocalDateTime getRequestedAt() { return createdAt; }
+        public LocalDateTime getCompletedAt() { return createdAt; }
+        public LocalDateTime getCancelledAt() { return null; }
+        public LocalDateTime getCreatedAt() { return createdAt; }
+    }
+}
@@ -0,0 +1,96 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.Ride;
+import com.uberclone.backend.model.RideEvent;
+import com.uberclone.backend.model.RideRequest;
+import com.uberclone.backend.model.User;
+import com.uberclone.backend.repository.RideEventRepository;
+import com.uberclone.backend.repository.RideRepository;
+import com.uberclone.backend.repository.RideRequestRepository;
+import com.uberclone.backend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RideServiceOutboxTest {
+
+    private final RideRepository rideRepository = mock(RideRepository.class);
+    private final RideRequestRepository rideRequestRepository = mock(RideRequestRepository.class);
+    private final RideEventRepository rideEventRepository = mock(RideEventRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final TransactionStatus transaction = new SimpleTransactionStatus();
+
+    private final RideService rideService = new RideService(rideRepository, rideRequestRepository,
+        rideEventRepository, mock(UserRepository.class), mock(DriverMatchingService.class),
+        mock(BatchDispatchService.class), mock(DispatchExecutor.class), mock(RideRequestTimers.class),
+        mock(PricingService.class), mock(GeohashService.class), mock(NotificationService.class),
+        mock(SimpMessagingTemplate.class), transactionManager);
+
+    @BeforeEach
+    void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(transaction);
+        when(rideRepository.save(any(Ride.class))).thenAnswer(invocation -> {
+            Ride ride = invocation.getArgument(0);
+            ride.setId(42L);
+            return ride;
+        });
+    }
+
+    @Test
+    void acceptRideRequest_shouldWriteRideAndEventInOneTransaction() {
+        Ride ride = rideService.acceptRideRequest(request(), driver());
+
+        InOrder order = inOrder(transactionManager, rideRequestRepository, rideRepository, rideEventRepository);
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(rideRequestRepository).save(any(RideRequest.class));
+        order.verify(rideRepository).save(any(Ride.class));
+        ArgumentCaptor<RideEvent> event = ArgumentCaptor.forClass(RideEvent.class);
+        order.verify(rideEventRepository).save(event.capture());
+        order.verify(transactionManager).commit(transaction);
+
+        assertEquals(ride.getId(), event.getValue().getRideId());
+        assertEquals(Ride.Status.DRIVER_ASSIGNED, event.getValue().getStatus());
+    }
+
+    @Test
+    void acceptRideRequest_shouldRollBackRideWhenEventWriteFails() {
+        when(rideEventRepository.save(any(RideEvent.class))).thenThrow(new IllegalStateException("outbox down"));
+
+        assertThrows(IllegalStateException.class, () -> rideService.acceptRideRequest(request(), driver()));
+
+        verify(rideRepository).save(any(Ride.class));
+        verify(transactionManager).rollback(transaction);
+        verify(transactionManager, never()).commit(any());
+    }
+
+    private static RideRequest request() {
+        return RideRequest.builder()
+            .id(7L)
+            .user(User.builder().id(1L).build())
+            .pickupLatitude(40.0).pickupLongitude(-74.0)
+            .dropoffLatitude(40.1).dropoffLongitude(-74.1)
+            .estimatedFare(new BigDecimal("20.00"))
+            .status(RideRequest.Status.SEARCHING_DRIVER)
+            .build();
+    }
+
+    private static User driver() {
+        return User.builder().id(2L).build();
+    }
+}
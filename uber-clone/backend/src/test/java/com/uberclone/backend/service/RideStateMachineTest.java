@@ -0,0 +1,47 @@
+package com.uberclone.backend.service;
+
+import com.uberclone.backend.model.Ride;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RideStateMachineTest {
+
+    @Test
+    void finishedRides_shouldBeFinal() {
+        for (Ride.Status to : Ride.Status.values()) {
+            assertFalse(RideStateMachine.canTransition(Ride.Status.COMPLETED, to));
+            assertFalse(RideStateMachine.canTransition(Ride.Status.CANCELLED, to));
+        }
+        assertTrue(RideStateMachine.isFinal(Ride.Status.COMPLETED));
+        assertTrue(RideStateMachine.isFinal(Ride.Status.CANCELLED));
+        assertFalse(RideStateMachine.isFinal(Ride.Status.IN_PROGRESS));
+    }
+
+    @Test
+    void happyPath_shouldBeLegalAndNotSkippable() {
+        assertTrue(RideStateMachine.canTransition(Ride.Status.DRIVER_ASSIGNED, Ride.Status.DRIVER_ARRIVING));
+        assertTrue(RideStateMachine.canTransition(Ride.Status.DRIVER_ARRIVING, Ride.Status.DRIVER_ARRIVED));
+        assertTrue(RideStateMachine.canTransition(Ride.Status.DRIVER_ARRIVED, Ride.Status.IN_PROGRESS));
+        assertTrue(RideStateMachine.canTransition(Ride.Status.IN_PROGRESS, Ride.Status.COMPLETED));
+
+        assertFalse(RideStateMachine.canTransition(Ride.Status.DRIVER_ASSIGNED, Ride.Status.COMPLETED));
+        assertFalse(RideStateMachine.canTransition(Ride.Status.IN_PROGRESS, Ride.Status.DRIVER_ARRIVED));
+    }
+
+    @Test
+    void predecessorsOf_shouldMatchTransitions() {
+        assertEquals(List.of("IN_PROGRESS"), RideStateMachine.predecessorsOf(Ride.Status.COMPLETED));
+        assertEquals(List.of(), RideStateMachine.predecessorsOf(Ride.Status.REQUESTED));
+        for (Ride.Status to : Ride.Status.values()) {
+            for (Ride.Status from : Ride.Status.values()) {
+                assertEquals(RideStateMachine.canTransition(from, to),
+                    RideStateMachine.predecessorsOf(to).contains(from.name()));
+            }
+        }
+    }
+}
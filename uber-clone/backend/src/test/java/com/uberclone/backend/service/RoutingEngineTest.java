@@ -0,0 +1,155 @@
+package com.uberclone.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RoutingEngineTest {
+
+    private static final int SIDE = 30;
+
+    @TempDir
+    Path tempDir;
+
+    private final RoutingEngine routingEngine = new RoutingEngine();
+    private RoadGraph graph;
+
+    private double[] latitudes;
+    private double[] longitudes;
+    private final List<int[]> edges = new ArrayList<>();
+
+    @BeforeEach
+    void buildGrid() throws Exception {
+        // A 30 x 30 street grid around Midtown, ~100m blocks, with mixed speeds and some one-way streets
+        Random random = new Random(21);
+        int n = SIDE * SIDE;
+        latitudes = new double[n];
+        longitudes = new double[n];
+        for (int row = 0; row < SIDE; row++) {
+            for (int col = 0; col < SIDE; col++) {
+                latitudes[row * SIDE + col] = 40.75 + row * 0.0009;
+                longitudes[row * SIDE + col] = -73.99 + col * 0.0012;
+            }
+        }
+        for (int row = 0; row < SIDE; row++) {
+            for (int col = 0; col < SIDE; col++) {
+                int node = row * SIDE + col;
+                if (col + 1 < SIDE) {
+                    addStreet(random, node, node + 1);
+                }
+                if (row + 1 < SIDE) {
+                    addStreet(random, node, node + SIDE);
+                }
+            }
+        }
+
+        Path file = tempDir.resolve("grid.graph");
+        RoadGraph.write(file, latitudes, longitudes,
+            edges.stream().mapToInt(e -> e[0]).toArray(),
+            edges.stream().mapToInt(e -> e[1]).toArray(),
+            edges.stream().mapToInt(e -> e[2]).toArray());
+        graph = RoadGraph.load(file);
+        routingEngine.setGraph(graph);
+        ReflectionTestUtils.setField(routingEngine, "accessSpeedKmh", 15.0);
+    }
+
+    @Test
+    void route_shouldMatchDijkstra() {
+        Random random = new Random(4);
+        RoutingEngine.SearchState state = routingEngine.acquire(graph);
+        for (int i = 0; i < 300; i++) {
+            int from = random.nextInt(latitudes.length);
+            int to = random.nextInt(latitudes.length);
+
+            double expected = dijkstra(from)[to];
+            double actual = routingEngine.route(graph, state,
+                graph.nearestNode(latitudes[from], longitudes[from]),
+                graph.nearestNode(latitudes[to], longitudes[to]));
+
+            assertEquals(expected, actual, 1e-6);
+        }
+    }
+
+    @Test
+    void manyToOne_shouldMatchDijkstraToTarget() {
+        Random random = new Random(8);
+        RoutingEngine.SearchState state = routingEngine.acquire(graph);
+        for (int i = 0; i < 5; i++) {
+            int to = random.nextInt(latitudes.length);
+            int[] from = random.ints(20, 0, latitudes.length).toArray();
+            int[] sources = Arrays.stream(from).map(node -> graph.nearestNode(latitudes[node], longitudes[node])).toArray();
+
+            routingEngine.manyToOne(graph, state, sources, graph.nearestNode(latitudes[to], longitudes[to]),
+                Double.POSITIVE_INFINITY);
+
+            for (int j = 0; j < from.length; j++) {
+                assertEquals(dijkstra(from[j])[to], state.reverse.distance(sources[j]), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    void nearestNode_shouldSnapToClosestIntersection() {
+        int node = graph.nearestNode(40.75 + 5 * 0.0009 + 0.0001, -73.99 + 7 * 0.0012 - 0.0001);
+
+        assertEquals(40.75 + 5 * 0.0009, graph.getLatitude(node), 1e-6);
+        assertEquals(-73.99 + 7 * 0.0012, graph.getLongitude(node), 1e-6);
+    }
+
+    @Test
+    void travelTimeSeconds_shouldOnlyAnswerWithGraph() {
+        RoutingEngine withoutGraph = new RoutingEngine();
+
+        assertTrue(Double.isNaN(withoutGraph.travelTimeSeconds(40.75, -73.99, 40.76, -73.98)));
+        assertTrue(routingEngine.travelTimeSeconds(40.75, -73.99, 40.76, -73.98) > 0);
+    }
+
+    private void addStreet(Random random, int a, int b) {
+        double metres = GeohashService.haversineKm(latitudes[a], longitudes[a], latitudes[b], longitudes[b]) * 1000;
+        double speed = 5 + random.nextDouble() * 20;
+        int millis = (int) Math.ceil(metres / speed * 1000);
+        int direction = random.nextInt(5);
+        if (direction != 0) {
+            edges.add(new int[]{a, b, millis});
+        }
+        if (direction != 1) {
+            edges.add(new int[]{b, a, millis});
+        }
+    }
+
+    /**
+     * Plain Dijkstra over the input edge list, in input node order
+     */
+    private double[] dijkstra(int source) {
+        double[] distances = new double[latitudes.length];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        distances[source] = 0;
+        PriorityQueue<double[]> queue = new PriorityQueue<>((x, y) -> Double.compare(x[0], y[0]));
+        queue.add(new double[]{0, source});
+        while (!queue.isEmpty()) {
+            double[] top = queue.poll();
+            int node = (int) top[1];
+            if (top[0] > distances[node]) {
+                continue;
+            }
+            for (int[] edge : edges) {
+                if (edge[0] == node && top[0] + edge[2] < distances[edge[1]]) {
+                    distances[edge[1]] = top[0] + edge[2];
+                    queue.add(new double[]{distances[edge[1]], edge[1]});
+                }
+            }
+        }
+        return distances;
+    }
+}
@@ -0,0 +1,65 @@
+package com.uberclone.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SurgePricingEngineTest {
+
+    private final SurgePricingEngine engine =
+        new SurgePricingEngine(null, new DriverLocationIndex(), new SimpleMeterRegistry());
+
+    @Test
+    void snapshot_shouldReturnPublishedMultipliers() {
+        Random random = new Random(9);
+        Map<Long, Integer> multipliers = new HashMap<>();
+        for (int i = 0; i < 1_000; i++) {
+            multipliers.put(GeohashService.encodeBits(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180,
+                SurgePricingEngine.SURGE_PRECISION), 110 + random.nextInt(190));
+        }
+        engine.publish(multipliers);
+
+        SurgeSnapshot snapshot = engine.getSnapshot();
+        assertEquals(multipliers.size(), snapshot.size());
+        multipliers.forEach((cell, multiplier) -> assertEquals(multiplier, snapshot.getMultiplier(cell)));
+        assertEquals(SurgeSnapshot.NO_SURGE, snapshot.getMultiplier(GeohashService.fromBase32("zzzzz")));
+    }
+
+    @Test
+    void publish_shouldOnlyAdvanceEpochOnChange() {
+        long cell = GeohashService.fromBase32("dr5ru");
+        engine.publish(Map.of(cell, 150));
+        long epoch = engine.getSnapshot().getEpoch();
+
+        engine.publish(Map.of(cell, 150));
+        assertEquals(epoch, engine.getSnapshot().getEpoch());
+
+        engine.publish(Map.of(cell, 160));
+        assertEquals(epoch + 1, engine.getSnapshot().getEpoch());
+    }
+
+    @Test
+    void recompute_shouldSmoothAndQuantizePressure() {
+        ReflectionTestUtils.setField(engine, "smoothing", 0.5);
+        ReflectionTestUtils.setField(engine, "demandThreshold", 1.0);
+        ReflectionTestUtils.setField(engine, "sensitivity", 0.5);
+        ReflectionTestUtils.setField(engine, "maxMultiplier", 3.0);
+        ReflectionTestUtils.setField(engine, "step", 0.1);
+        long cell = GeohashService.fromBase32("dr5ru");
+
+        // 9 requests, 2 drivers: pressure 3, smoothed to 1.5 then 2.25
+        assertEquals(120, engine.recompute(Map.of(cell, 9), Map.of(cell, 2)).get(cell));
+        assertEquals(160, engine.recompute(Map.of(cell, 9), Map.of(cell, 2)).get(cell));
+
+        // Pressure back at the threshold: the multiplier decays instead of dropping straight to 1x
+        assertEquals(130, engine.recompute(Map.of(cell, 3), Map.of(cell, 2)).get(cell));
+        assertTrue(engine.recompute(Map.of(), Map.of()).isEmpty());
+    }
+}
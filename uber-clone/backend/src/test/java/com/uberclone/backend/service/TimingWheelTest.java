@@ -0,0 +1,88 @@
+package com.uberclone.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimingWheelTest {
+
+    @Test
+    void wheel_shouldFireEachTaskOnTheTickOfItsDeadline() {
+        TimingWheel wheel = new TimingWheel(100, 0);
+        Random random = new Random(7);
+        long[] deadlines = new long[2_000];
+        long[] firedAt = new long[deadlines.length];
+        for (int i = 0; i < deadlines.length; i++) {
+            // Spread over levels 0 to 2, including the ticks where levels wrap
+            deadlines[i] = random.nextInt(4) == 0 ? 6_400L * (1 + random.nextInt(80)) : random.nextInt(1_000_000);
+            int index = i;
+            wheel.schedule(deadlines[i], () -> firedAt[index] = -1);
+        }
+
+        for (long now = 100; now <= 1_000_100; now += 100) {
+            List<Runnable> due = wheel.advanceTo(now);
+            due.forEach(Runnable::run);
+            for (int i = 0; i < deadlines.length; i++) {
+                if (firedAt[i] == -1) {
+                    firedAt[i] = now;
+                }
+            }
+        }
+
+        for (int i = 0; i < deadlines.length; i++) {
+            long expected = Math.max(100, (deadlines[i] + 99) / 100 * 100);
+            assertEquals(expected, firedAt[i], "deadline " + deadlines[i]);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void wheel_shouldNotFireCancelledTasks() {
+        TimingWheel wheel = new TimingWheel(1_000, 0);
+        List<String> fired = new ArrayList<>();
+        TimingWheel.Timeout kept = wheel.schedule(5_000, () -> fired.add("kept"));
+        TimingWheel.Timeout cancelled = wheel.schedule(5_000, () -> fired.add("cancelled"));
+        TimingWheel.Timeout far = wheel.schedule(500_000, () -> fired.add("far"));
+
+        assertTrue(cancelled.cancel());
+        assertTrue(far.cancel());
+        assertFalse(far.cancel());
+        assertEquals(1, wheel.size());
+
+        wheel.advanceTo(600_000).forEach(Runnable::run);
+        assertEquals(List.of("kept"), fired);
+        assertFalse(kept.cancel());
+    }
+
+    @Test
+    void wheel_shouldFirePastDeadlinesOnTheNextTick() {
+        TimingWheel wheel = new TimingWheel(1_000, 0);
+        wheel.advanceTo(10_000);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(3_000, () -> fired.add("late"));
+
+        wheel.advanceTo(10_999).forEach(Runnable::run);
+        assertTrue(fired.isEmpty());
+        wheel.advanceTo(11_000).forEach(Runnable::run);
+        assertEquals(List.of("late"), fired);
+    }
+
+    @Test
+    void wheel_shouldParkDeadlinesBeyondItsRange() {
+        TimingWheel wheel = new TimingWheel(1, 0);
+        long beyond = (1L << 24) + 12_345;
+        List<Long> fired = new ArrayList<>();
+        wheel.schedule(beyond, () -> fired.add(beyond));
+
+        wheel.advanceTo(beyond - 1).forEach(Runnable::run);
+        assertTrue(fired.isEmpty());
+        wheel.advanceTo(beyond).forEach(Runnable::run);
+        assertEquals(List.of(beyond), fired);
+    }
+}
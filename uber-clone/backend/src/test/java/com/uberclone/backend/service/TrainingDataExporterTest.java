@@ -0,0 +1,122 @@
+package com.uberclone.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uberclone.backend.model.Ride;
+import com.uberclone.backend.repository.RideRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TrainingDataExporterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TrainingDataExporter exporter =
+        new TrainingDataExporter(null, null, objectMapper, new SimpleMeterRegistry());
+
+    @Test
+    void encode_shouldWriteOneGzippedJsonLinePerRide() throws Exception {
+        LocalDateTime saturday = LocalDateTime.of(2026, 10, 17, 8, 45);
+        List<RideRepository.TrainingRow> rows = List.of(
+            new Row(7L, saturday.plusMinutes(20), saturday, 40.75, -73.99, 40.76, -73.98,
+                new BigDecimal("1.42"), 20, new BigDecimal("9.80")),
+            new Row(9L, saturday.plusMinutes(31), saturday.plusMinutes(5), 40.70, -74.01, null, null,
+                null, null, null),
+            new Row(11L, saturday.plusHours(2), null, 40.70, -74.01, 40.71, -74.00,
+                null, null, null));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.encode(rows, out);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), StandardCharsets.UTF_8))) {
+            List<String> lines = reader.lines().toList();
+            assertEquals(3, lines.size());
+
+            JsonNode first = objectMapper.readTree(lines.get(0));
+            assertEquals(7, first.get("ride_id").asLong());
+            assertEquals("2026-10-17T09:05", first.get("completed_at").asText());
+            assertEquals(1.42, first.get("distance").asDouble(), 1e-9);
+            assertEquals(8, first.get("hour_of_day").asInt());
+            assertEquals(6, first.get("day_of_week").asInt());
+            assertTrue(first.get("is_weekend").asBoolean());
+
+            JsonNode second = objectMapper.readTree(lines.get(1));
+            assertTrue(second.get("dropoff_lat").isNull());
+            assertTrue(second.get("fare").isNull());
+
+            // Without a request time the time features come from the completion time
+            JsonNode third = objectMapper.readTree(lines.get(2));
+            assertEquals(10, third.get("hour_of_day").asInt());
+            assertEquals(6, third.get("day_of_week").asInt());
+        }
+    }
+
+    @Test
+    void offset_shouldReadTheMLServiceResponse() throws Exception {
+        TrainingDataExporter.ExportOffset offset = objectMapper.readValue(
+            "{\"seq\": 4, \"completed_at\": \"2026-10-17T09:05:00\", \"ride_id\": 9, \"stream\": \"completed-rides\"}",
+            TrainingDataExporter.ExportOffset.class);
+        assertEquals(4, offset.seq());
+        assertEquals("2026-10-17T09:05:00", offset.completedAt());
+        assertEquals(9L, offset.rideId());
+
+        TrainingDataExporter.ExportOffset empty = objectMapper.readValue("{}", TrainingDataExporter.ExportOffset.class);
+        assertEquals(0, empty.seq());
+    }
+
+    @Test
+    void exportCompletedRides_shouldOnlyReadRidesOlderThanTheSettleLag() {
+        RideRepository rideRepository = mock(RideRepository.class);
+        MLServiceClient mlServiceClient = mock(MLServiceClient.class);
+        TrainingDataExporter exporter =
+            new TrainingDataExporter(rideRepository, mlServiceClient, objectMapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(exporter, "mlServiceEnabled", true);
+        ReflectionTestUtils.setField(exporter, "mlServiceUrl", "http://ml");
+        ReflectionTestUtils.setField(exporter, "stream", "completed-rides");
+        ReflectionTestUtils.setField(exporter, "chunkRows", 100);
+        ReflectionTestUtils.setField(exporter, "settleSeconds", 300L);
+        when(mlServiceClient.get(eq(MLServiceClient.Endpoint.TRAINING), anyString(),
+                eq(TrainingDataExporter.ExportOffset.class)))
+            .thenReturn(Optional.of(new TrainingDataExporter.ExportOffset(0, null, null)));
+
+        LocalDateTime before = LocalDateTime.now();
+        assertEquals(0, exporter.exportCompletedRides());
+
+        ArgumentCaptor<LocalDateTime> completedBefore = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(rideRepository).findTrainingRowsAfter(eq(Ride.Status.COMPLETED), any(), anyLong(),
+            completedBefore.capture(), any(Pageable.class));
+        assertTrue(!completedBefore.getValue().isBefore(before.minusSeconds(300)));
+        assertTrue(!completedBefore.getValue().isAfter(LocalDateTime.now().minusSeconds(300)));
+    }
+
+    private record Row(Long getId, LocalDateTime getCompletedAt, LocalDateTime getRequestedAt,
+                       Double getPickupLatitude, Double getPickupLongitude,
+                       Double getDropoffLatitude, Double getDropoffLongitude,
+                       BigDecimal getDistance, Integer getActualDuration, BigDecimal getTotalFare)
+        implements RideRepository.TrainingRow {
+    }
+}
@@ -5,6 +5,7 @@ Advanced AI-powered features for ride-sharing platform
 """
 
 import os
+import re
 import json
 import logging
 import numpy as np
@@ -13,7 +14,7 @@ from datetime import datetime, timedelta
 from typing import Dict, List, Tuple, Optional
 import asyncio
 import aiohttp
-from fastapi import FastAPI, HTTPException, BackgroundTasks
+from fastapi import FastAPI, HTTPException, BackgroundTasks, Request
 from fastapi.middleware.cors import CORSMiddleware
 from pydantic import BaseModel
 import redis
@@ -664,6 +665,71 @@ async def predict_surge(request: SurgePricingRequest):
         logger.error(f"Error predicting surge pricing: {e}")
         raise HTTPException(status_code=500, detail=str(e))
 
+def predict_or_none(predict, request, label: str):
+    """Run one prediction of a batch; a failed item is null instead of failing the batch"""
+    try:
+        return predict(request)
+    except Exception as e:
+        logger.error(f"Error in batched {label} prediction: {e}")
+        return None
+
+@app.post("/predict/eta/batch")
+async def predict_eta_batch(requests: List[ETAPredictionRequest]):
+    """Predict ETAs for a batch of rides, answers in request order"""
+    return {"predictions": [predict_or_none(eta_model.predict, r, "ETA") for r in requests]}
+
+@app.post("/forecast/demand/batch")
+async def forecast_demand_batch(requests: List[DemandForecastRequest]):
+    """Forecast demand for a batch of locations, answers in request order"""
+    return {"predictions": [predict_or_none(demand_model.predict, r, "demand") for r in requests]}
+
+@app.post("/predict/surge/batch")
+async def predict_surge_batch(requests: List[SurgePricingRequest]):
+    """Predict surge multipliers for a batch of locations, answers in request order"""
+    return {"predictions": [predict_or_none(surge_pricing_model.predict_surge, r, "surge") for r in requests]}
+
+TRAINING_DATA_DIR = os.getenv("TRAINING_DATA_DIR", "training-data")
+
+def export_stream_dir(stream: str) -> str:
+    """Directory holding one training data stream's chunks and offset"""
+    if not re.fullmatch(r"[A-Za-z0-9_-]+", stream):
+        raise HTTPException(status_code=400, detail="Invalid stream name")
+    return os.path.join(TRAINING_DATA_DIR, stream)
+
+def read_export_offset(stream: str) -> Dict:
+    """Next expected chunk and the cursor of the last stored one"""
+    path = os.path.join(export_stream_dir(stream), "offset.json")
+    if not os.path.exists(path):
+        return {"seq": 0, "completed_at": None, "ride_id": None}
+    with open(path) as f:
+        return json.load(f)
+
+@app.get("/training/ride-data/{stream}/offset")
+async def get_training_data_offset(stream: str):
+    """Where an export of this stream should resume"""
+    return read_export_offset(stream)
+
+@app.post("/training/ride-data/{stream}/chunks")
+async def upload_training_data_chunk(stream: str, seq: int, completed_at: str, ride_id: int, request: Request):
+    """Store one gzip NDJSON chunk of completed rides; chunks must arrive in sequence"""
+    offset = read_export_offset(stream)
+    if seq < offset["seq"]:
+        return {"status": "duplicate", **offset}
+    if seq > offset["seq"]:
+        raise HTTPException(status_code=409, detail=f"Expected chunk {offset['seq']}")
+
+    directory = export_stream_dir(stream)
+    os.makedirs(directory, exist_ok=True)
+    with open(os.path.join(directory, f"{seq:08d}.ndjson.gz"), "wb") as f:
+        f.write(await request.body())
+
+    offset = {"seq": seq + 1, "completed_at": completed_at, "ride_id": ride_id}
+    tmp_path = os.path.join(directory, "offset.json.tmp")
+    with open(tmp_path, "w") as f:
+        json.dump(offset, f)
+    os.replace(tmp_path, os.path.join(directory, "offset.json"))
+    return {"status": "stored", **offset}
+
 @app.post("/train/eta-model")
 async def train_eta_model(background_tasks: BackgroundTasks):
     """Train ETA prediction model with new data"""